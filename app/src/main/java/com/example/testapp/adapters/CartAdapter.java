@@ -11,23 +11,24 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.testapp.R;
-import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartSummary;
 import com.example.testapp.screens.CartDetailActivity;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /// Adapter for the cart recycler view
+/// shows the summaries of the carts, the full cart is read only by the cart detail screen
 /// @see RecyclerView
-/// @see Cart
+/// @see CartSummary
 /// @see R.layout#item_cart
 public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder> {
 
     public interface CartClickListener {
-        void onCartClick(Cart cart);
+        void onCartClick(CartSummary cart);
     }
 
-    private final List<Cart> cartList;
+    private final List<CartSummary> cartList;
     private final CartClickListener listener;
 
     public CartAdapter(CartClickListener listener) {
@@ -44,9 +45,9 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull CartViewHolder holder, int position) {
-        Cart cart = cartList.get(position);
+        CartSummary cart = cartList.get(position);
         holder.cartName.setText(cart.getTitle());
-        holder.cartDescription.setText("Total items: " + cart.getFoods().size());
+        holder.cartDescription.setText("Total items: " + cart.getItemCount());
 
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
@@ -61,21 +62,57 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder
     }
 
 
-    public List<Cart> getCartList() {
+    public List<CartSummary> getCartList() {
         return cartList;
     }
 
-    public void setCartList(List<Cart> carts) {
+    public void setCartList(List<CartSummary> carts) {
         this.cartList.clear();
         this.cartList.addAll(carts);
         notifyDataSetChanged();
     }
 
-    public void addCart(Cart cart) {
+    public void addCarts(List<CartSummary> carts) {
+        int start = cartList.size();
+        this.cartList.addAll(carts);
+        notifyItemRangeInserted(start, carts.size());
+    }
+
+    public void addCart(CartSummary cart) {
         this.cartList.add(cart);
         notifyItemInserted(cartList.size() - 1);
     }
 
+    public void updateCart(CartSummary cart) {
+        int index = cartList.indexOf(cart);
+        if (index == -1) return;
+        cartList.set(index, cart);
+        notifyItemChanged(index);
+    }
+
+    /// update the cart if it is in the list, otherwise add it to the end
+    public void addOrUpdateCart(CartSummary cart) {
+        if (cartList.contains(cart)) {
+            updateCart(cart);
+        } else {
+            addCart(cart);
+        }
+    }
+
+    public void removeCart(CartSummary cart) {
+        removeCart(cartList.indexOf(cart));
+    }
+
+    /// remove the cart with this id, if it is in the list
+    public void removeCart(String cartId) {
+        for (int i = 0; i < cartList.size(); i++) {
+            if (cartList.get(i).getId().equals(cartId)) {
+                removeCart(i);
+                return;
+            }
+        }
+    }
+
     public void removeCart(int position) {
         if (position < 0 || position >= cartList.size()) {
             return;
@@ -1,5 +1,7 @@
 package com.example.testapp.adapters;
 
+import android.graphics.Bitmap;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -11,13 +13,15 @@ import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.testapp.R;
+import com.example.testapp.models.CartItem;
 import com.example.testapp.models.Food;
+import com.example.testapp.services.DatabaseService;
 import com.example.testapp.utils.ImageUtil;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 
 /// Adapter for the foods recycler view
@@ -31,12 +35,42 @@ public class FoodsAdapter extends RecyclerView.Adapter<FoodsAdapter.ViewHolder>
         int quantity;
     }
 
+    /// loads the image of a food, the images are not part of the foods that are read from the database
+    /// @see com.example.testapp.services.DatabaseRepository#getFoodImage(String, DatabaseService.DatabaseCallback)
+    public interface FoodImageLoader {
+        void loadImage(@NonNull String foodId, @NonNull DatabaseService.DatabaseCallback<String> callback);
+    }
+
     /// list of foods
     /// @see Food
     private final List<ItemCount> foodItemCountList;
 
+    @Nullable
+    private final FoodImageLoader imageLoader;
+
+    /// the decoded images by food id, the least recently used images are evicted when they take more than
+    /// an eighth of the memory of the app, and loaded again when their rows are shown again
+    private final LruCache<String, Bitmap> images = new LruCache<String, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE)) {
+        @Override
+        protected int sizeOf(String foodId, Bitmap image) {
+            return image.getByteCount();
+        }
+    };
+
+    /// the ids of the foods that have no image
+    private final Set<String> foodsWithoutImage = new HashSet<>();
+
+    /// the ids of the foods whose image is being loaded
+    private final Set<String> loadingImages = new HashSet<>();
+
     public FoodsAdapter() {
+        this(null);
+    }
+
+    /// @param imageLoader loads the images of the foods when their rows are shown
+    public FoodsAdapter(@Nullable FoodImageLoader imageLoader) {
         foodItemCountList = new ArrayList<>();
+        this.imageLoader = imageLoader;
     }
 
     public void addFoods(@NonNull List<Food> foods) {
@@ -46,18 +80,23 @@ public class FoodsAdapter extends RecyclerView.Adapter<FoodsAdapter.ViewHolder>
     }
 
     public void addFood(@Nullable Food f) {
+        addFood(f, 1);
+    }
+
+    /// add units of a food, the row of the food is updated if the food is already in the list
+    public void addFood(@Nullable Food f, int quantity) {
         if (f == null) return;
         for (int i = 0; i < foodItemCountList.size(); i++) {
             ItemCount itemCount = foodItemCountList.get(i);
             if (itemCount.food.getId().equals(f.getId())) {
-                itemCount.quantity++;
+                itemCount.quantity += quantity;
                 notifyItemChanged(i);
                 return;
             }
         }
         foodItemCountList.add(new ItemCount() {{
             this.food = new Food(f);
-            this.quantity = 1;
+            this.quantity = quantity;
         }});
         /// notify the adapter that the data has changed
         /// this specifies that the item at selectedFoods.size() - 1 has been inserted
@@ -66,14 +105,57 @@ public class FoodsAdapter extends RecyclerView.Adapter<FoodsAdapter.ViewHolder>
         notifyItemInserted(foodItemCountList.size() - 1);
     }
 
-    public List<Food> getFoods() {
-        List<Food> foods = new ArrayList<>();
-        for (ItemCount itemCount : foodItemCountList) {
-            for (int i = 0; i < itemCount.quantity; i++) {
-                foods.add(itemCount.food);
+    /// replace a food that is in the list, keeping its quantity, its image is loaded again
+    public void updateFood(@NonNull Food f) {
+        int index = indexOf(f.getId());
+        if (index == -1) return;
+        foodItemCountList.get(index).food = new Food(f);
+        images.remove(f.getId());
+        foodsWithoutImage.remove(f.getId());
+        notifyItemChanged(index);
+    }
+
+    /// update the food if it is in the list, otherwise add it to the end
+    public void addOrUpdateFood(@NonNull Food f) {
+        if (indexOf(f.getId()) != -1) {
+            updateFood(f);
+        } else {
+            addFood(f);
+        }
+    }
+
+    /// remove the food with this id, if it is in the list
+    public void removeFood(@NonNull String foodId) {
+        int index = indexOf(foodId);
+        if (index == -1) return;
+        foodItemCountList.remove(index);
+        notifyItemRemoved(index);
+    }
+
+    private int indexOf(@NonNull String foodId) {
+        for (int i = 0; i < foodItemCountList.size(); i++) {
+            if (foodId.equals(foodItemCountList.get(i).food.getId())) {
+                return i;
             }
         }
-        return foods;
+        return -1;
+    }
+
+    /// get the foods as cart lines, a line for each food with its quantity and current price
+    /// @see CartItem
+    public List<CartItem> getItems() {
+        List<CartItem> items = new ArrayList<>(foodItemCountList.size());
+        for (ItemCount itemCount : foodItemCountList) {
+            items.add(new CartItem(itemCount.food.getId(), itemCount.quantity, itemCount.food.getPrice()));
+        }
+        return items;
+    }
+
+    /// remove all the foods
+    public void clear() {
+        int itemCount = foodItemCountList.size();
+        foodItemCountList.clear();
+        notifyItemRangeRemoved(0, itemCount);
     }
 
     /// create a view holder for the adapter
@@ -100,13 +182,62 @@ public class FoodsAdapter extends RecyclerView.Adapter<FoodsAdapter.ViewHolder>
         if (food == null) return;
 
         holder.foodNameTextView.setText(food.getName());
-        holder.foodImageView.setImageBitmap(ImageUtil.convertFrom64base(food.getImageBase64()));
+        bindImage(holder, food);
         holder.foodQuantityTextView.setText(String.valueOf(foodItemCountList.get(position).quantity));
 
         holder.foodSinglePriceTextView.setText("Single Price: " + String.format("$%.2f", food.getPrice()));
         holder.foodPriceTextView.setText(String.format("$%.2f", food.getPrice() * foodItemCountList.get(position).quantity));
     }
 
+    /// show the image of a food, the image is loaded the first time a row of the food is shown
+    private void bindImage(@NonNull ViewHolder holder, @NonNull Food food) {
+        String foodId = food.getId();
+        if (foodId == null) {
+            holder.foodImageView.setImageBitmap(food.getImageBase64() != null ? ImageUtil.convertFrom64base(food.getImageBase64()) : null);
+            return;
+        }
+        Bitmap image = images.get(foodId);
+        if (image == null && food.getImageBase64() != null) {
+            image = ImageUtil.convertFrom64base(food.getImageBase64());
+            cacheImage(foodId, image);
+        }
+        holder.foodImageView.setImageBitmap(image);
+        if (image != null || imageLoader == null || foodsWithoutImage.contains(foodId) || !loadingImages.add(foodId)) {
+            return;
+        }
+        imageLoader.loadImage(foodId, new DatabaseService.DatabaseCallback<String>() {
+            @Override
+            public void onCompleted(String imageBase64) {
+                loadingImages.remove(foodId);
+                cacheImage(foodId, imageBase64 != null ? ImageUtil.convertFrom64base(imageBase64) : null);
+                notifyFoodChanged(foodId);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                loadingImages.remove(foodId);
+            }
+        });
+    }
+
+    /// keep the decoded image of a food, or remember that the food has no image
+    private void cacheImage(@NonNull String foodId, @Nullable Bitmap image) {
+        if (image != null) {
+            images.put(foodId, image);
+        } else {
+            foodsWithoutImage.add(foodId);
+        }
+    }
+
+    /// update the rows of a food
+    private void notifyFoodChanged(@NonNull String foodId) {
+        for (int i = 0; i < foodItemCountList.size(); i++) {
+            if (foodId.equals(foodItemCountList.get(i).food.getId())) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+
     /// get the number of items in the list
     /// @return the number of items in the list
     @Override
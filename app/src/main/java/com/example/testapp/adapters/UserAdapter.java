@@ -91,6 +91,12 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.ViewHolder> {
         notifyDataSetChanged();
     }
 
+    public void addUsers(List<User> users) {
+        int start = userList.size();
+        userList.addAll(users);
+        notifyItemRangeInserted(start, users.size());
+    }
+
     public void addUser(User user) {
         userList.add(user);
         notifyItemInserted(userList.size() - 1);
@@ -102,6 +108,15 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.ViewHolder> {
         notifyItemChanged(index);
     }
 
+    /// update the user if it is in the list, otherwise add it to the end
+    public void addOrUpdateUser(User user) {
+        if (userList.contains(user)) {
+            updateUser(user);
+        } else {
+            addUser(user);
+        }
+    }
+
     public void removeUser(User user) {
         int index = userList.indexOf(user);
         if (index == -1) return;
@@ -109,6 +124,17 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.ViewHolder> {
         notifyItemRemoved(index);
     }
 
+    /// remove the user with this id, if it is in the list
+    public void removeUser(String userId) {
+        for (int i = 0; i < userList.size(); i++) {
+            if (userList.get(i).getId().equals(userId)) {
+                userList.remove(i);
+                notifyItemRemoved(i);
+                return;
+            }
+        }
+    }
+
     public static class ViewHolder extends RecyclerView.ViewHolder {
         TextView tvName, tvEmail, tvPhone, tvInitials;
         Chip chipRole;
@@ -1,10 +1,15 @@
 package com.example.testapp.models;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.database.Exclude;
+import com.google.firebase.database.ServerValue;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public class Cart implements Serializable {
@@ -14,19 +19,37 @@ public class Cart implements Serializable {
 
     private String title;
 
-    private final List<Food> foods;
+    /// the lines of the cart, one for each food
+    /// @see CartItem
+    private final List<CartItem> items;
 
     /// the user ID of the cart owner
     private String uid;
 
+    /// the time the cart was last written, set by the database server
+    /// @see #getUpdatedAtMillis()
+    private long updatedAt;
+
     public Cart() {
-        foods = new ArrayList<>();
+        items = new ArrayList<>();
+    }
+
+    /// a copy of a cart and its items, to change without changing the original
+    public Cart(Cart other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.items = new ArrayList<>(other.items.size());
+        for (CartItem item : other.items) {
+            this.items.add(new CartItem(item));
+        }
+        this.uid = other.uid;
+        this.updatedAt = other.updatedAt;
     }
 
-    public Cart(String id, String title, List<Food> foods, String uid) {
+    public Cart(String id, String title, List<CartItem> items, String uid) {
         this.id = id;
         this.title = title;
-        this.foods = foods;
+        this.items = items;
         this.uid = uid;
     }
 
@@ -46,46 +69,74 @@ public class Cart implements Serializable {
         this.title = title;
     }
 
+    /// add a unit of a food to the cart, with the current price of the food
     public void addFood(Food food) {
-        foods.add(food);
+        addFood(food, 1);
     }
 
-    public void addFoods(List<Food> foods) {
-        this.foods.addAll(foods);
+    /// add units of a food to the cart, with the current price of the food
+    public void addFood(Food food, int quantity) {
+        CartItem item = getItem(food.getId());
+        if (item != null) {
+            item.setQuantity(item.getQuantity() + quantity);
+            return;
+        }
+        items.add(new CartItem(food.getId(), quantity, food.getPrice()));
     }
 
-    public boolean removeFood(Food food) {
-        return foods.remove(food);
+    /// get the line of a food
+    /// @return the line, or null if the food is not in the cart
+    @Nullable
+    public CartItem getItem(String foodId) {
+        for (CartItem item : items) {
+            if (Objects.equals(item.getFoodId(), foodId)) {
+                return item;
+            }
+        }
+        return null;
     }
 
-    public Food removeFood(int index) {
-        if (index < 0 || index >= foods.size()) {
-            return null;
-        }
-        return foods.remove(index);
+    public boolean removeItem(String foodId) {
+        return items.remove(getItem(foodId));
+    }
+
+    public List<CartItem> getItems() {
+        return items;
     }
 
-    public Food getFood(int index) {
-        if (index < 0 || index >= foods.size()) {
-            return null;
+    /// read the foods of carts that were saved before the carts had lines </br>
+    /// those carts have a copy of the food for every unit, the copies are grouped into lines
+    /// there is no getter, so the old format is never written back
+    public void setFoods(List<Food> foods) {
+        if (foods == null) return;
+        for (Food food : foods) {
+            if (food != null) {
+                addFood(food);
+            }
         }
-        return foods.get(index);
     }
 
-    public List<Food> getFoods() {
-        return foods;
+    /// the number of units of all the foods in the cart
+    @Exclude
+    public int getItemCount() {
+        int count = 0;
+        for (CartItem item : items) {
+            count += item.getQuantity();
+        }
+        return count;
     }
 
+    @Exclude
     public double getTotalPrice() {
         double totalPrice = 0;
-        for (Food food : foods) {
-            totalPrice += food.getPrice();
+        for (CartItem item : items) {
+            totalPrice += item.getTotalPrice();
         }
         return totalPrice;
     }
 
     public void clear() {
-        foods.clear();
+        items.clear();
     }
 
     public String getUid() {
@@ -96,13 +147,30 @@ public class Cart implements Serializable {
         this.uid = uid;
     }
 
+    /// the time the cart was last written, in milliseconds since the epoch, by the clock of the database server </br>
+    /// 0 if it was not written since this field was added
+    @Exclude
+    public long getUpdatedAtMillis() {
+        return updatedAt;
+    }
+
+    /// the value that is written as updatedAt, the database server replaces it with its time
+    /// there is no getter of the long value, so the time of the client is never written
+    public Map<String, String> getUpdatedAt() {
+        return ServerValue.TIMESTAMP;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     @NonNull
     @Override
     public String toString() {
         return "Cart{" +
                 "id='" + id + '\'' +
                 ", title='" + title + '\'' +
-                ", foods=" + foods +
+                ", items=" + items +
                 ", uid='" + uid + '\'' +
                 '}';
     }
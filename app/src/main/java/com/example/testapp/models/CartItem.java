@@ -0,0 +1,94 @@
+package com.example.testapp.models;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.Exclude;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/// a line in a cart
+/// the food is referenced by its id, and the price is the price of the food when it was added
+/// so changing the price of a food doesn't change the carts that were already created
+/// @see Cart
+/// @see Food
+public class CartItem implements Serializable {
+
+    /// the id of the food
+    private String foodId;
+
+    /// how many units of the food are in the cart
+    private int quantity;
+
+    /// the price of a single unit when it was added to the cart
+    private double price;
+
+    public CartItem() {
+    }
+
+    public CartItem(CartItem other) {
+        this.foodId = other.foodId;
+        this.quantity = other.quantity;
+        this.price = other.price;
+    }
+
+    public CartItem(String foodId, int quantity, double price) {
+        this.foodId = foodId;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    public String getFoodId() {
+        return foodId;
+    }
+
+    public void setFoodId(String foodId) {
+        this.foodId = foodId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    /// the price of all the units of the line
+    @Exclude
+    public double getTotalPrice() {
+        return price * quantity;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "CartItem{" +
+                "foodId='" + foodId + '\'' +
+                ", quantity=" + quantity +
+                ", price=" + price +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (object == null || getClass() != object.getClass()) return false;
+
+        CartItem cartItem = (CartItem) object;
+        return Objects.equals(foodId, cartItem.foodId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(foodId);
+    }
+}
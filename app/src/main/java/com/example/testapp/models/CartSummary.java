@@ -0,0 +1,141 @@
+package com.example.testapp.models;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.Exclude;
+import com.google.firebase.database.ServerValue;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+
+/// the part of a cart that is shown in the lists of carts
+/// it is saved next to the cart whenever the cart is written,
+/// so the lists don't need to read the items of every cart
+/// @see Cart
+public class CartSummary implements Serializable {
+
+    /// the id of the cart
+    private String id;
+
+    private String title;
+
+    /// the user ID of the cart owner
+    private String uid;
+
+    /// the number of units of all the foods in the cart
+    private int itemCount;
+
+    private double totalPrice;
+
+    /// the time the cart was written, set by the database server
+    /// @see #getUpdatedAtMillis()
+    private long updatedAt;
+
+    public CartSummary() {
+    }
+
+    public CartSummary(String id, String title, String uid, int itemCount, double totalPrice, long updatedAt) {
+        this.id = id;
+        this.title = title;
+        this.uid = uid;
+        this.itemCount = itemCount;
+        this.totalPrice = totalPrice;
+        this.updatedAt = updatedAt;
+    }
+
+    public CartSummary(CartSummary other) {
+        this(other.id, other.title, other.uid, other.itemCount, other.totalPrice, other.updatedAt);
+    }
+
+    /// the summary of a cart
+    /// @param cart the cart to summarize
+    /// @param updatedAt the time the cart was written, the database server writes its own time instead
+    public CartSummary(Cart cart, long updatedAt) {
+        this(cart.getId(), cart.getTitle(), cart.getUid(), cart.getItemCount(), cart.getTotalPrice(), updatedAt);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public void setTotalPrice(double totalPrice) {
+        this.totalPrice = totalPrice;
+    }
+
+    /// the time the cart was written, in milliseconds since the epoch, by the clock of the database server </br>
+    /// the other backends use the time of the device
+    @Exclude
+    public long getUpdatedAtMillis() {
+        return updatedAt;
+    }
+
+    /// the value that is written as updatedAt, the database server replaces it with its time
+    /// there is no getter of the long value, so the time of the client is never written
+    public Map<String, String> getUpdatedAt() {
+        return ServerValue.TIMESTAMP;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "CartSummary{" +
+                "id='" + id + '\'' +
+                ", title='" + title + '\'' +
+                ", uid='" + uid + '\'' +
+                ", itemCount=" + itemCount +
+                ", totalPrice=" + totalPrice +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (object == null || getClass() != object.getClass()) return false;
+
+        CartSummary that = (CartSummary) object;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+}
@@ -2,7 +2,11 @@ package com.example.testapp.models;
 
 import androidx.annotation.NonNull;
 
+import com.google.firebase.database.Exclude;
+import com.google.firebase.database.ServerValue;
+
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Objects;
 
 /// single Food
@@ -22,6 +26,10 @@ public class Food implements Serializable {
 
     private String imageBase64;
 
+    /// the time the food was last written, set by the database server
+    /// @see #getUpdatedAtMillis()
+    private long updatedAt;
+
     // constructor
     public Food() {
     }
@@ -31,6 +39,7 @@ public class Food implements Serializable {
         this.name = other.name;
         this.price = other.price;
         this.imageBase64 = other.imageBase64;
+        this.updatedAt = other.updatedAt;
     }
 
     public Food(String id, String name, double price, String imageBase64) {
@@ -76,6 +85,23 @@ public class Food implements Serializable {
         this.imageBase64 = imageBase64;
     }
 
+    /// the time the food was last written, in milliseconds since the epoch, by the clock of the database server </br>
+    /// 0 if it was not written since this field was added
+    @Exclude
+    public long getUpdatedAtMillis() {
+        return updatedAt;
+    }
+
+    /// the value that is written as updatedAt, the database server replaces it with its time
+    /// there is no getter of the long value, so the time of the client is never written
+    public Map<String, String> getUpdatedAt() {
+        return ServerValue.TIMESTAMP;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -1,6 +1,11 @@
 package com.example.testapp.models;
 
+import com.google.firebase.database.Exclude;
+import com.google.firebase.database.ServerValue;
+
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 
 /// Model class for the user
 /// This class represents a user in the application
@@ -16,9 +21,29 @@ public class User implements Serializable {
     private String phone;
     private boolean isAdmin;
 
+    /// the number of times the user was updated, used to detect updates that were made at the same time
+    private long version;
+
+    /// the time the user was last written, set by the database server
+    /// @see #getUpdatedAtMillis()
+    private long updatedAt;
+
     public User() {
     }
 
+    /// a copy of a user, to change without changing the original
+    public User(User other) {
+        this.id = other.id;
+        this.email = other.email;
+        this.password = other.password;
+        this.firstName = other.firstName;
+        this.lastName = other.lastName;
+        this.phone = other.phone;
+        this.isAdmin = other.isAdmin;
+        this.version = other.version;
+        this.updatedAt = other.updatedAt;
+    }
+
     public User(String id, String email, String password, String firstName, String lastName, String phone, boolean isAdmin) {
         this.id = id;
         this.email = email;
@@ -85,6 +110,48 @@ public class User implements Serializable {
         isAdmin = admin;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /// the time the user was last written, in milliseconds since the epoch, by the clock of the database server </br>
+    /// 0 if it was not written since this field was added
+    @Exclude
+    public long getUpdatedAtMillis() {
+        return updatedAt;
+    }
+
+    /// the value that is written as updatedAt, the database server replaces it with its time
+    /// there is no getter of the long value, so the time of the client is never written
+    public Map<String, String> getUpdatedAt() {
+        return ServerValue.TIMESTAMP;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /// the fields of the user by the names they are saved with in the database
+    /// @return a map that can be compared to the map of another version of the user
+    @Exclude
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", id);
+        map.put("email", email);
+        map.put("password", password);
+        map.put("firstName", firstName);
+        map.put("lastName", lastName);
+        map.put("phone", phone);
+        map.put("admin", isAdmin);
+        map.put("fullName", getFullName());
+        map.put("version", version);
+        return map;
+    }
+
     @Override
     public String toString() {
         return "User{" +
@@ -95,6 +162,8 @@ public class User implements Serializable {
                 ", lastName='" + lastName + '\'' +
                 ", phone='" + phone + '\'' +
                 ", isAdmin=" + isAdmin +
+                ", version=" + version +
+                ", updatedAt=" + updatedAt +
                 '}';
     }
 
@@ -24,6 +24,7 @@ import com.example.testapp.R;
 import android.widget.ArrayAdapter;
 import com.example.testapp.adapters.FoodsAdapter;
 import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartItem;
 import com.example.testapp.models.Food;
 import com.example.testapp.services.DatabaseService;
 import com.example.testapp.utils.SharedPreferencesUtil;
@@ -38,6 +39,9 @@ public class AddCartActivity extends BaseActivity implements View.OnClickListene
     /// tag for logging
     private static final String TAG = "AddCartActivity";
 
+    /// number of foods added to the dropdown at a time
+    private static final int FOODS_BATCH_SIZE = 25;
+
     private AutoCompleteTextView foodSelector;
     private Button createCartButton;
     private FloatingActionButton addButton;
@@ -68,7 +72,7 @@ public class AddCartActivity extends BaseActivity implements View.OnClickListene
 
         /// Adapter for the food recycler view
         RecyclerView selectedFoodsRecyclerView = findViewById(R.id.recycler_view_selected_foods);
-        foodsAdapter = new FoodsAdapter();
+        foodsAdapter = new FoodsAdapter(this::loadFoodImage);
         selectedFoodsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         selectedFoodsRecyclerView.setAdapter(foodsAdapter);
 
@@ -137,8 +141,8 @@ public class AddCartActivity extends BaseActivity implements View.OnClickListene
 
     private void addCartToDatabase() {
         String cartName = etCartName.getText().toString().trim();
-        List<Food> selectedFoods = foodsAdapter.getFoods();
-        if (!isValid(cartName, selectedFoods)) {
+        List<CartItem> selectedItems = foodsAdapter.getItems();
+        if (!isValid(cartName, selectedItems)) {
             return;
         }
 
@@ -146,22 +150,16 @@ public class AddCartActivity extends BaseActivity implements View.OnClickListene
         String cartId = databaseService.generateCartId();
         String userId = SharedPreferencesUtil.getUserId(AddCartActivity.this);
         /// create a new cart
-        Cart cart = new Cart(cartId, cartName,  selectedFoods, userId);
+        Cart cart = new Cart(cartId, cartName, selectedItems, userId);
         /// save the cart to the database and get the result in the callback
         databaseService.createNewCart(cart, new DatabaseService.DatabaseCallback<>() {
             @Override
             public void onCompleted(Void object) {
                 Log.d(TAG, "Cart created successfully");
                 /// clear the selected foods
-                int itemCount = selectedFoods.size();
-                selectedFoods.clear();
+                /// @see FoodsAdapter#clear()
+                foodsAdapter.clear();
                 etCartName.setText("");
-                /// notify the adapter that the data has changed
-                /// this specifies that the items from 0 to itemCount have been removed
-                /// and the adapter should update the view
-                /// @see FoodsAdapter#notifyItemRangeRemoved(int, int)
-                /// @see itemCount
-                foodsAdapter.notifyItemRangeRemoved(0, itemCount);
                 Toast.makeText(AddCartActivity.this, "Cart created successfully", Toast.LENGTH_SHORT).show();
 
             }
@@ -175,36 +173,42 @@ public class AddCartActivity extends BaseActivity implements View.OnClickListene
     }
 
 
-    private boolean isValid(String cartName, List<Food> selectedFoods) {
+    private boolean isValid(String cartName, List<CartItem> selectedItems) {
         if (cartName.isEmpty()) {
             etCartName.setError("Cart name cannot be empty");
             etCartName.requestFocus();
             return false;
         }
-        if (selectedFoods.isEmpty()) {
+        if (selectedItems.isEmpty()) {
             Toast.makeText(this, "Please add some food to the cart", Toast.LENGTH_SHORT).show();
             return false;
         }
         return true;
     }
 
+    /// load the foods in batches, so the dropdown can be used before the whole menu is read
     private void loadFoodsFromDatabase() {
-        databaseService.getFoodList(new DatabaseService.DatabaseCallback<List<Food>>() {
+        allFoods.clear();
+        databaseService.streamFoodList(FOODS_BATCH_SIZE, new DatabaseService.DatabaseStreamCallback<Food>() {
             @Override
-            public void onCompleted(List<Food> foods) {
-                Log.d(TAG, "Successfully loaded " + foods.size() + " foods");
-                allFoods.clear();
+            public void onBatch(List<Food> foods) {
+                boolean isFirstBatch = allFoods.isEmpty();
                 allFoods.addAll(foods);
                 foodDropdownAdapter.notifyDataSetChanged();
-                
+
                 // Set first food as selected if available
-                if (!foods.isEmpty()) {
+                if (isFirstBatch && !foods.isEmpty()) {
                     _selectedFood = foods.get(0);
                     foodSelector.setText(foods.get(0).getName(), false);
                     Log.d(TAG, "Default food selected: " + _selectedFood.getName());
                 }
             }
 
+            @Override
+            public void onComplete(int count) {
+                Log.d(TAG, "Successfully loaded " + count + " foods");
+            }
+
             @Override
             public void onFailed(Exception e) {
                 Log.e(TAG, "Failed to load foods", e);
@@ -212,4 +216,4 @@ public class AddCartActivity extends BaseActivity implements View.OnClickListene
             }
         });
     }
-}
\ No newline at end of file
+}
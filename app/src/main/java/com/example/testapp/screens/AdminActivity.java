@@ -13,7 +13,7 @@ import com.example.testapp.R;
 
 public class AdminActivity extends BaseActivity {
 
-    LinearLayout cardUsers, cardFoods, cardCarts;
+    LinearLayout cardUsers, cardFoods, cardCarts, cardDiagnostics;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -29,6 +29,7 @@ public class AdminActivity extends BaseActivity {
         cardUsers = findViewById(R.id.card_users);
         cardFoods = findViewById(R.id.card_foods);
         cardCarts = findViewById(R.id.card_carts);
+        cardDiagnostics = findViewById(R.id.card_diagnostics);
 
         cardUsers.setOnClickListener(v -> {
             Intent intent = new Intent(this, UsersListActivity.class);
@@ -44,5 +45,10 @@ public class AdminActivity extends BaseActivity {
             Intent intent = new Intent(this, AllCartsActivity.class);
             startActivity(intent);
         });
+
+        cardDiagnostics.setOnClickListener(v -> {
+            Intent intent = new Intent(this, DiagnosticsActivity.class);
+            startActivity(intent);
+        });
     }
 }
\ No newline at end of file
@@ -14,16 +14,28 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.testapp.R;
 import com.example.testapp.adapters.CartAdapter;
-import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartSummary;
+import com.example.testapp.services.DatabaseFutures;
 import com.example.testapp.services.DatabaseService;
+import com.example.testapp.services.RequestScheduler;
+import com.example.testapp.utils.EndlessScrollListener;
 
-import java.util.List;
+import java.util.concurrent.CancellationException;
 
 public class AllCartsActivity extends BaseActivity {
 
     private static final String TAG = "AllCartsActivity";
+    /// number of carts to load in each page
+    private static final int PAGE_SIZE = 20;
     private CartAdapter cartAdapter;
 
+    /// the cursor of the next page, null before the first page is loaded
+    private String nextPageKey;
+    private boolean isLoading, hasMorePages = true;
+
+    /// the subscription to the changes in the carts
+    private DatabaseService.Subscription cartsSubscription;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -36,7 +48,23 @@ public class AllCartsActivity extends BaseActivity {
         });
 
         setupRecyclerView();
-        loadAllCarts();
+        /// the time is taken before the first page, so every change after the page was read is listened to
+        track(databaseService.futures().getServerTime()).whenComplete((now, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            if (e != null) {
+                Log.e(TAG, "Failed to get the server time", e);
+            }
+            loadAllCarts();
+            observeCarts(e == null ? now : System.currentTimeMillis());
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (cartsSubscription != null) {
+            cartsSubscription.unsubscribe();
+        }
     }
 
     private void setupRecyclerView() {
@@ -46,23 +74,69 @@ public class AllCartsActivity extends BaseActivity {
             intent.putExtra("cart_id", cart.getId());
             startActivity(intent);
         });
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
         recyclerView.setAdapter(cartAdapter);
+        recyclerView.addOnScrollListener(new EndlessScrollListener(layoutManager) {
+            @Override
+            protected void onLoadMore() {
+                loadAllCarts();
+            }
+        });
     }
 
+    /// load the next page of carts
     private void loadAllCarts() {
-        databaseService.getCartList(new DatabaseService.DatabaseCallback<List<Cart>>() {
+        if (isLoading || !hasMorePages) return;
+        isLoading = true;
+        track(databaseService.futures().withPriority(RequestScheduler.Priority.INTERACTIVE).getCartSummaryPage(nextPageKey, PAGE_SIZE)).whenComplete((page, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            isLoading = false;
+            if (e != null) {
+                Log.e(TAG, "Failed to load carts", e);
+                Toast.makeText(this, "Failed to load carts", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Log.d(TAG, "Successfully loaded " + page.getItems().size() + " carts");
+            nextPageKey = page.getNextKey();
+            hasMorePages = page.hasMore();
+            cartAdapter.addCarts(page.getItems());
+        });
+    }
+
+    /// listen to the carts that change after the first page was read, only those carts are downloaded </br>
+    /// only carts in the pages that were already loaded are applied, the rest arrive with their page
+    /// @param since the time that was taken before the first page
+    private void observeCarts(long since) {
+        if (isDestroyed()) return;
+        cartsSubscription = databaseService.observeCartSummaries(since, new DatabaseService.ChildListener<>() {
+            @Override
+            public void onChildAdded(String key, CartSummary cart) {
+                if (cart == null || !isLoaded(key)) return;
+                cartAdapter.addOrUpdateCart(cart);
+            }
+
             @Override
-            public void onCompleted(List<Cart> carts) {
-                Log.d(TAG, "Successfully loaded " + carts.size() + " carts");
-                cartAdapter.setCartList(carts);
+            public void onChildChanged(String key, CartSummary cart) {
+                if (cart == null) return;
+                cartAdapter.updateCart(cart);
+            }
+
+            @Override
+            public void onChildRemoved(String key, CartSummary cart) {
+                cartAdapter.removeCart(key);
             }
 
             @Override
             public void onFailed(Exception e) {
-                Log.e(TAG, "Failed to load carts", e);
-                Toast.makeText(AllCartsActivity.this, "Failed to load carts", Toast.LENGTH_SHORT).show();
+                Log.e(TAG, "Failed to listen to carts", e);
             }
         });
     }
-}
\ No newline at end of file
+
+    /// check if a cart is inside the pages that were already loaded
+    private boolean isLoaded(String key) {
+        if (!hasMorePages) return true;
+        return nextPageKey != null && key.compareTo(nextPageKey) <= 0;
+    }
+}
@@ -1,25 +1,49 @@
 package com.example.testapp.screens;
 
 import android.os.Bundle;
+import android.util.Log;
 import android.view.MenuItem;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
 import com.example.testapp.R;
+import com.example.testapp.services.DatabaseProvider;
+import com.example.testapp.services.DatabaseRepository;
 import com.example.testapp.services.DatabaseService;
+import com.example.testapp.services.RequestScheduler;
 import com.example.testapp.utils.SharedPreferencesUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
 public class BaseActivity extends AppCompatActivity {
 
-    protected DatabaseService databaseService;
+    private static final String TAG = "BaseActivity";
+
+    protected DatabaseRepository databaseService;
+
+    /// the futures that were started by the screen and didn't complete yet
+    /// @see #track(CompletableFuture)
+    private final List<CompletableFuture<?>> pendingFutures = new ArrayList<>();
+
+    /// the publishers the screen subscribed to
+    /// @see #observe(Flow.Publisher, Consumer)
+    private final List<ScreenSubscriber<?>> subscribers = new ArrayList<>();
+
+    /// true while the screen is visible, between onStart and onStop
+    private boolean started = false;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        /// get the instance of the database service
-        databaseService = DatabaseService.getInstance();
+        /// get the database backend that was selected for the app
+        databaseService = DatabaseProvider.getInstance(this);
     }
 
     @Override
@@ -28,6 +52,142 @@ public class BaseActivity extends AppCompatActivity {
         setupToolbar();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        for (ScreenSubscriber<?> subscriber : new ArrayList<>(subscribers)) {
+            subscriber.requestNext();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        /// the subscribers stop requesting, so the publishers keep only the latest changes until the screen is shown again
+        started = false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        /// the results are no longer needed, so don't wait for them
+        for (CompletableFuture<?> future : new ArrayList<>(pendingFutures)) {
+            future.cancel(true);
+        }
+        pendingFutures.clear();
+        for (ScreenSubscriber<?> subscriber : new ArrayList<>(subscribers)) {
+            subscriber.cancel();
+        }
+        subscribers.clear();
+    }
+
+    /// cancel a future when the screen is destroyed </br>
+    /// the stages of a cancelled future get a CancellationException instead of the result
+    /// @param future the future of an operation of the screen
+    /// @return the same future
+    protected <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        pendingFutures.add(future);
+        future.whenComplete((result, e) -> pendingFutures.remove(future));
+        return future;
+    }
+
+    /// subscribe to a publisher for as long as the screen exists </br>
+    /// the items are requested one at a time and only while the screen is visible,
+    /// and the subscription is cancelled when the screen is destroyed
+    /// @param publisher the publisher to subscribe to, like the publishers of the repository
+    /// @param onNext called on the main thread with every item
+    /// @see com.example.testapp.services.CollectionPublisher
+    protected <T> void observe(@NonNull Flow.Publisher<T> publisher, @NonNull Consumer<T> onNext) {
+        observe(publisher, onNext, e -> Log.e(TAG, "Subscription of " + getClass().getSimpleName() + " failed", e));
+    }
+
+    /// subscribe to a publisher for as long as the screen exists
+    /// @param publisher the publisher to subscribe to
+    /// @param onNext called on the main thread with every item
+    /// @param onError called on the main thread if the publisher fails, no more items are sent after it
+    /// @see #observe(Flow.Publisher, Consumer)
+    protected <T> void observe(@NonNull Flow.Publisher<T> publisher, @NonNull Consumer<T> onNext, @NonNull Consumer<Throwable> onError) {
+        /// a screen that subscribes from a late callback may already be destroyed, and would never cancel the subscription
+        if (isDestroyed()) return;
+        ScreenSubscriber<T> subscriber = new ScreenSubscriber<>(onNext, onError);
+        subscribers.add(subscriber);
+        publisher.subscribe(subscriber);
+    }
+
+    /// a subscriber that asks for the next item only after the previous item was handled and while the screen is visible
+    private class ScreenSubscriber<T> implements Flow.Subscriber<T> {
+        private final Consumer<T> onNext;
+        private final Consumer<Throwable> onError;
+
+        @Nullable
+        private Flow.Subscription subscription;
+
+        /// true when an item was requested and didn't arrive yet
+        private boolean requested = false;
+
+        private boolean done = false;
+
+        ScreenSubscriber(@NonNull Consumer<T> onNext, @NonNull Consumer<Throwable> onError) {
+            this.onNext = onNext;
+            this.onError = onError;
+        }
+
+        void requestNext() {
+            if (done || requested || !started || subscription == null) return;
+            requested = true;
+            subscription.request(1);
+        }
+
+        void cancel() {
+            done = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null || done) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            requestNext();
+        }
+
+        @Override
+        public void onNext(T item) {
+            requested = false;
+            if (done) return;
+            onNext.accept(item);
+            requestNext();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish();
+            onError.accept(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            finish();
+        }
+
+        private void finish() {
+            done = true;
+            subscribers.remove(this);
+        }
+    }
+
+    /// load the image of a food with a low priority, so the images don't delay the data of the screen </br>
+    /// can be passed to a FoodsAdapter as its image loader
+    /// @see com.example.testapp.adapters.FoodsAdapter.FoodImageLoader
+    protected void loadFoodImage(@NonNull String foodId, @NonNull DatabaseService.DatabaseCallback<String> callback) {
+        databaseService.withPriority(RequestScheduler.Priority.BACKGROUND, () -> databaseService.getFoodImage(foodId, callback));
+    }
+
     private void setupToolbar() {
         Toolbar toolbar = findViewById(R.id.toolbar);
         if (toolbar != null) {
@@ -1,12 +1,15 @@
 package com.example.testapp.screens;
 
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
@@ -16,10 +19,21 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.testapp.R;
 import com.example.testapp.adapters.FoodsAdapter;
 import com.example.testapp.models.Cart;
-import com.example.testapp.services.DatabaseService;
+import com.example.testapp.models.CartItem;
+import com.example.testapp.models.Food;
+import com.example.testapp.services.DatabaseFutures;
+import com.example.testapp.services.RequestScheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 public class CartDetailActivity extends BaseActivity {
 
+    private static final String TAG = "CartDetailActivity";
+
     private TextView tvCartTitle;
     private TextView tvCartTotalAmount, tvCartTotalPrice;
     private RecyclerView rvCartItems;
@@ -52,32 +66,60 @@ public class CartDetailActivity extends BaseActivity {
         }
         progressBar.setVisibility(View.VISIBLE);
         rvCartItems.setVisibility(View.GONE);
-        databaseService.getCart(cart_id, new DatabaseService.DatabaseCallback<>() {
-            @Override
-            public void onCompleted(Cart cart) {
-                progressBar.setVisibility(View.GONE);
-                rvCartItems.setVisibility(View.VISIBLE);
-                if (cart == null) {
-                    Toast.makeText(CartDetailActivity.this, "Cart not found", Toast.LENGTH_SHORT).show();
-                    finish();
-                    return;
-                }
-                setCartView(cart);
+        /// the user is waiting for the cart, so it is read before background work
+        track(databaseService.futures().withPriority(RequestScheduler.Priority.INTERACTIVE).getCart(cart_id)).whenComplete((cart, e) -> {
+            progressBar.setVisibility(View.GONE);
+            if (e != null) {
+                if (DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+                Log.e(TAG, "Failed to load cart", e);
+                Toast.makeText(CartDetailActivity.this, "Failed to load cart", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
             }
-
-            @Override
-            public void onFailed(Exception e) {
-
+            if (cart == null) {
+                Toast.makeText(CartDetailActivity.this, "Cart not found", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
             }
+            rvCartItems.setVisibility(View.VISIBLE);
+            setCartView(cart);
         });
     }
 
     private void setCartView(Cart cart) {
         tvCartTitle.setText(cart.getTitle());
-        tvCartTotalAmount.setText(cart.getFoods().size() + "");
+        tvCartTotalAmount.setText(cart.getItemCount() + "");
         tvCartTotalPrice.setText(String.format("₪%.2f", cart.getTotalPrice()));
-        FoodsAdapter foodsAdapter = new FoodsAdapter();
-        foodsAdapter.addFoods(cart.getFoods());
+        FoodsAdapter foodsAdapter = new FoodsAdapter(this::loadFoodImage);
         rvCartItems.setAdapter(foodsAdapter);
+
+        /// the cart only has the ids of the foods, read the names from the foods
+        List<String> foodIds = new ArrayList<>();
+        for (CartItem item : cart.getItems()) {
+            foodIds.add(item.getFoodId());
+        }
+        track(databaseService.futures().withPriority(RequestScheduler.Priority.INTERACTIVE).getFoodsByIds(foodIds)).whenComplete((foods, e) -> {
+            if (e != null) {
+                if (DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+                /// the lines are still shown, with the prices of the cart
+                Log.e(TAG, "Failed to load the foods of the cart", e);
+                foods = new ArrayList<>();
+            }
+            Map<String, Food> foodsById = new HashMap<>();
+            for (Food food : foods) {
+                foodsById.put(food.getId(), food);
+            }
+            for (CartItem item : cart.getItems()) {
+                foodsAdapter.addFood(toDisplayFood(item, foodsById.get(item.getFoodId())), item.getQuantity());
+            }
+        });
+    }
+
+    /// the food to show for a cart line, with the price the food had when it was added to the cart
+    /// @param food the food from the database, null if it was deleted or couldn't be read
+    private static Food toDisplayFood(@NonNull CartItem item, @Nullable Food food) {
+        Food displayFood = food != null ? new Food(food) : new Food(item.getFoodId(), "Unknown food", item.getPrice(), null);
+        displayFood.setPrice(item.getPrice());
+        return displayFood;
     }
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package com.example.testapp.screens;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.EdgeToEdge;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+
+import com.example.testapp.R;
+import com.example.testapp.models.User;
+import com.example.testapp.services.DatabaseFutures;
+import com.example.testapp.services.DatabaseService;
+import com.example.testapp.services.MetricsRegistry;
+import com.example.testapp.services.RequestScheduler;
+import com.example.testapp.utils.SessionStoreBenchmark;
+import com.example.testapp.utils.SharedPreferencesUtil;
+import com.example.testapp.utils.StartupTrace;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/// shows the metrics of the database operations and the startup trace, runs the data migrations of the Firebase backend
+/// and the benchmark of the session store
+/// @see MetricsRegistry
+public class DiagnosticsActivity extends BaseActivity {
+
+    private static final String TAG = "DiagnosticsActivity";
+
+    /// the number of cold reads of each store in the benchmark of the session store
+    private static final int SESSION_BENCHMARK_ITERATIONS = 50;
+
+    private TextView tvDatabaseStatus, tvMetrics;
+    private Button btnRunMigrations, btnReconcileCounters, btnBenchmarkSessionStore;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EdgeToEdge.enable(this);
+        setContentView(R.layout.activity_diagnostics);
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+            return insets;
+        });
+
+        tvDatabaseStatus = findViewById(R.id.tv_database_status);
+        tvMetrics = findViewById(R.id.tv_metrics);
+        btnRunMigrations = findViewById(R.id.btn_run_migrations);
+        btnReconcileCounters = findViewById(R.id.btn_reconcile_counters);
+        btnBenchmarkSessionStore = findViewById(R.id.btn_benchmark_session_store);
+
+        findViewById(R.id.btn_refresh_metrics).setOnClickListener(v -> showMetrics());
+        findViewById(R.id.btn_reset_metrics).setOnClickListener(v -> {
+            MetricsRegistry.getInstance().reset();
+            showMetrics();
+        });
+        btnBenchmarkSessionStore.setOnClickListener(v -> benchmarkSessionStore());
+
+        btnRunMigrations.setOnClickListener(v -> runMigrations());
+        btnReconcileCounters.setOnClickListener(v -> reconcileCounters());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        StringBuilder status = new StringBuilder("Backend: " + databaseService.getClass().getSimpleName());
+        if (databaseService instanceof DatabaseService) {
+            DatabaseService service = (DatabaseService) databaseService;
+            status.append("\nReads: ").append(service.describeScheduler());
+            status.append("\nCache: ").append(service.getCacheHitCount()).append(" hits, ")
+                    .append(service.getCacheMissCount()).append(" misses");
+            for (String path : new String[]{"users", "foods", "carts", "cartSummaries"}) {
+                if (service.isCircuitOpen(path)) {
+                    status.append("\nCircuit open: ").append(path);
+                }
+            }
+        }
+        status.append("\nStartup:\n").append(StartupTrace.report());
+        tvDatabaseStatus.setText(status);
+        tvMetrics.setText(MetricsRegistry.getInstance().report());
+    }
+
+    /// run all the migrations one after the other, every migration can be run more than once
+    private void runMigrations() {
+        btnRunMigrations.setEnabled(false);
+        /// the migrations read whole lists, they must not slow down the other screens
+        DatabaseFutures futures = databaseService.futures().withTimeout(2, TimeUnit.MINUTES).withPriority(RequestScheduler.Priority.BACKGROUND);
+        track(futures.migrateUsersByEmailIndex()
+                .thenCompose(count -> futures.migrateFoodImages())
+                .thenCompose(count -> futures.migrateUserCartsIndex())
+                .thenCompose(count -> futures.migrateCartItems())
+                .thenCompose(count -> futures.migrateCartSummaries()))
+                .whenComplete((count, e) -> {
+                    if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+                    btnRunMigrations.setEnabled(true);
+                    if (e != null) {
+                        Log.e(TAG, "Migrations failed", e);
+                        Toast.makeText(this, "Migrations failed", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(this, "Migrations completed", Toast.LENGTH_SHORT).show();
+                    }
+                    showMetrics();
+                });
+    }
+
+    /// count the records and fix the counters that drifted
+    private void reconcileCounters() {
+        btnReconcileCounters.setEnabled(false);
+        DatabaseFutures futures = databaseService.futures().withTimeout(2, TimeUnit.MINUTES).withPriority(RequestScheduler.Priority.BACKGROUND);
+        track(futures.reconcileCounters())
+                .whenComplete((count, e) -> {
+                    if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+                    btnReconcileCounters.setEnabled(true);
+                    if (e != null) {
+                        Log.e(TAG, "Reconciling the counters failed", e);
+                        Toast.makeText(this, "Reconciling the counters failed", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(this, "Fixed " + count + " counters", Toast.LENGTH_SHORT).show();
+                    }
+                    showMetrics();
+                });
+    }
+
+    /// compare the cold read of the session from shared preferences and from the session store, off the main thread
+    private void benchmarkSessionStore() {
+        btnBenchmarkSessionStore.setEnabled(false);
+        final User user = SharedPreferencesUtil.getUser(this);
+        track(CompletableFuture.supplyAsync(() -> {
+            try {
+                return SessionStoreBenchmark.run(getApplicationContext(), user, SESSION_BENCHMARK_ITERATIONS);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }))
+                .whenCompleteAsync((summary, e) -> {
+                    if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+                    btnBenchmarkSessionStore.setEnabled(true);
+                    if (e != null) {
+                        Log.e(TAG, "The session store benchmark failed", e);
+                        Toast.makeText(this, "The benchmark failed", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Log.i(TAG, summary);
+                        Toast.makeText(this, summary, Toast.LENGTH_LONG).show();
+                    }
+                    showMetrics();
+                }, getMainExecutor());
+    }
+}
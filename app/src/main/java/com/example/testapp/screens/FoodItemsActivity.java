@@ -1,10 +1,15 @@
 package com.example.testapp.screens;
 
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
@@ -14,16 +19,35 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.testapp.R;
 import com.example.testapp.adapters.FoodsAdapter;
 import com.example.testapp.models.Food;
-import com.example.testapp.services.DatabaseService;
+import com.example.testapp.services.DatabaseFutures;
+import com.example.testapp.services.FoodCatalogIO;
+import com.example.testapp.services.RequestScheduler;
+import com.example.testapp.utils.EndlessScrollListener;
 
-import java.util.List;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 public class FoodItemsActivity extends BaseActivity {
 
     private static final String TAG = "FoodItemsActivity";
+    /// number of food items to load in each page
+    private static final int PAGE_SIZE = 20;
     private RecyclerView recyclerView;
     private FoodsAdapter foodsAdapter;
 
+    /// the cursor of the next page, null before the first page is loaded
+    private String nextPageKey;
+    private boolean isLoading, hasMorePages = true;
+
+    /// pick the file to import, and create the files to export to
+    private ActivityResultLauncher<String[]> importLauncher;
+    private ActivityResultLauncher<String> exportJsonLauncher, exportCsvLauncher;
+
+    /// true while an import or an export runs, only one runs at a time
+    private boolean isTransferring;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -36,29 +60,161 @@ public class FoodItemsActivity extends BaseActivity {
         });
 
         setupRecyclerView();
-        loadFoodItems();
+
+        /// the time is taken before the first page, so every change after the page was read is listened to
+        track(databaseService.futures().getServerTime()).whenComplete((now, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            if (e != null) {
+                Log.e(TAG, "Failed to get the server time", e);
+            }
+            loadFoodItems();
+            observeFoods(e == null ? now : System.currentTimeMillis());
+        });
+
+        importLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) importFoods(uri);
+        });
+        exportJsonLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/json"), uri -> {
+            if (uri != null) exportFoods(uri, FoodCatalogIO.Format.JSON);
+        });
+        exportCsvLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("text/csv"), uri -> {
+            if (uri != null) exportFoods(uri, FoodCatalogIO.Format.CSV);
+        });
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_food_items, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_import_foods) {
+            importLauncher.launch(new String[]{"application/json", "text/csv", "text/comma-separated-values"});
+            return true;
+        }
+        if (item.getItemId() == R.id.action_export_foods_json) {
+            exportJsonLauncher.launch("foods.json");
+            return true;
+        }
+        if (item.getItemId() == R.id.action_export_foods_csv) {
+            exportCsvLauncher.launch("foods.csv");
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
     }
 
     private void setupRecyclerView() {
         recyclerView = findViewById(R.id.recycler_view_foods);
-        foodsAdapter = new FoodsAdapter();
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        foodsAdapter = new FoodsAdapter(this::loadFoodImage);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
         recyclerView.setAdapter(foodsAdapter);
+        recyclerView.addOnScrollListener(new EndlessScrollListener(layoutManager) {
+            @Override
+            protected void onLoadMore() {
+                loadFoodItems();
+            }
+        });
     }
 
+    /// load the next page of food items
     private void loadFoodItems() {
-        databaseService.getFoodList(new DatabaseService.DatabaseCallback<List<Food>>() {
-            @Override
-            public void onCompleted(List<Food> foods) {
-                Log.d(TAG, "Successfully loaded " + foods.size() + " food items");
-                foodsAdapter.addFoods(foods);
+        if (isLoading || !hasMorePages) return;
+        isLoading = true;
+        track(databaseService.futures().withPriority(RequestScheduler.Priority.INTERACTIVE).getFoodPage(nextPageKey, PAGE_SIZE)).whenComplete((page, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            isLoading = false;
+            if (e != null) {
+                Log.e(TAG, "Failed to load food items", e);
+                Toast.makeText(this, "Failed to load food items", Toast.LENGTH_SHORT).show();
+                return;
             }
+            Log.d(TAG, "Successfully loaded " + page.getItems().size() + " food items");
+            nextPageKey = page.getNextKey();
+            hasMorePages = page.hasMore();
+            foodsAdapter.addFoods(page.getItems());
+        });
+    }
 
-            @Override
-            public void onFailed(Exception e) {
-                Log.e(TAG, "Failed to load food items", e);
-                Toast.makeText(FoodItemsActivity.this, "Failed to load food items", Toast.LENGTH_SHORT).show();
+    /// listen to the foods that change after the first page was read, the imported foods arrive here too </br>
+    /// only foods in the pages that were already loaded are applied, the rest arrive with their page
+    /// @param since the time that was taken before the first page
+    private void observeFoods(long since) {
+        observe(databaseService.publishFoods(since).deltas(), delta -> {
+            switch (delta.getType()) {
+                case ADDED:
+                    if (delta.getValue() == null || !isLoaded(delta.getKey())) return;
+                    foodsAdapter.addOrUpdateFood(delta.getValue());
+                    break;
+                case CHANGED:
+                    if (delta.getValue() == null) return;
+                    foodsAdapter.updateFood(delta.getValue());
+                    break;
+                case REMOVED:
+                    foodsAdapter.removeFood(delta.getKey());
+                    break;
+            }
+        }, e -> Log.e(TAG, "Failed to listen to food items", e));
+    }
+
+    /// check if a food is inside the pages that were already loaded
+    private boolean isLoaded(String key) {
+        if (!hasMorePages) return true;
+        return nextPageKey != null && key.compareTo(nextPageKey) <= 0;
+    }
+
+    /// import the foods of a file, in chunks, and show the progress in the toolbar
+    private void importFoods(Uri uri) {
+        if (isTransferring) return;
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open " + uri, e);
+            Toast.makeText(this, "Failed to open the file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (in == null) return;
+        FoodCatalogIO.Format format = FoodCatalogIO.Format.of(getContentResolver().getType(uri) + " " + uri.getLastPathSegment());
+        transfer(new FoodCatalogIO(databaseService).importFoods(in, format, count -> showTransferProgress("Imported " + count + " foods")), true);
+    }
+
+    /// export all the foods to a file, with their images, and show the progress in the toolbar
+    private void exportFoods(Uri uri, FoodCatalogIO.Format format) {
+        if (isTransferring) return;
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open " + uri, e);
+            Toast.makeText(this, "Failed to create the file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (out == null) return;
+        transfer(new FoodCatalogIO(databaseService).exportFoods(out, format, true, count -> showTransferProgress("Exported " + count + " foods")), false);
+    }
+
+    /// wait for an import or an export, it stops when the screen is destroyed
+    private void transfer(CompletableFuture<Long> future, boolean isImport) {
+        isTransferring = true;
+        track(future).whenComplete((count, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            isTransferring = false;
+            showTransferProgress(null);
+            if (e != null) {
+                Log.e(TAG, (isImport ? "Import" : "Export") + " failed", e);
+                Toast.makeText(this, (isImport ? "Import" : "Export") + " failed", Toast.LENGTH_SHORT).show();
+                return;
             }
+            Toast.makeText(this, (isImport ? "Imported " : "Exported ") + count + " foods", Toast.LENGTH_SHORT).show();
         });
     }
+
+    private void showTransferProgress(String text) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(text);
+        }
+    }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import android.util.Log;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
+import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.core.graphics.Insets;
@@ -16,13 +17,10 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.testapp.R;
 import com.example.testapp.adapters.CartAdapter;
-import com.example.testapp.models.Cart;
-import com.example.testapp.services.DatabaseService;
+import com.example.testapp.models.CartSummary;
 import com.example.testapp.utils.SharedPreferencesUtil;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 
-import java.util.List;
-
 public class MyCartsActivity extends BaseActivity {
 
     private static final String TAG = "MyCartsActivity";
@@ -60,7 +58,7 @@ public class MyCartsActivity extends BaseActivity {
         // Initialize cart list and adapter
         cartAdapter = new CartAdapter(new CartAdapter.CartClickListener() {
             @Override
-            public void onCartClick(Cart cart) {
+            public void onCartClick(CartSummary cart) {
                 Intent intent = new Intent(MyCartsActivity.this, CartDetailActivity.class);
                 intent.putExtra("cart_id", cart.getId());
                 startActivity(intent);
@@ -69,26 +67,25 @@ public class MyCartsActivity extends BaseActivity {
         recyclerView.setAdapter(cartAdapter);
 
         // Load user carts
-        loadCarts();
+        observeCarts();
     }
 
-    private void loadCarts() {
+    /// show the carts of the current user, and again whenever they change while the screen is open </br>
+    /// the first list comes when the carts are loaded, also when there are none,
+    /// changes that arrive while the screen is hidden are merged, and only the latest list is shown
+    private void observeCarts() {
         progressBar.setVisibility(View.VISIBLE);
         String currentUserUid = SharedPreferencesUtil.getUser(this).getId();
-        databaseService.getUserCartList(currentUserUid, new DatabaseService.DatabaseCallback<>() {
-            @Override
-            public void onCompleted(List<Cart> carts) {
-                Log.d(TAG, "onCompleted: " + carts);
-                cartAdapter.setCartList(carts);
-                progressBar.setVisibility(View.GONE);
-                updateEmptyState();
-            }
-
-            @Override
-            public void onFailed(Exception e) {
-                progressBar.setVisibility(View.GONE);
-                updateEmptyState();
-            }
+        observe(databaseService.publishUserCarts(currentUserUid).snapshots(), carts -> {
+            Log.d(TAG, "onNext: " + carts.size() + " carts");
+            progressBar.setVisibility(View.GONE);
+            cartAdapter.setCartList(carts);
+            updateEmptyState();
+        }, e -> {
+            Log.e(TAG, "Failed to listen to carts", e);
+            progressBar.setVisibility(View.GONE);
+            Toast.makeText(MyCartsActivity.this, "Failed to load carts", Toast.LENGTH_SHORT).show();
+            updateEmptyState();
         });
     }
 
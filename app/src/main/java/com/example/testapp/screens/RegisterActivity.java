@@ -16,10 +16,14 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.testapp.R;
 import com.example.testapp.models.User;
-import com.example.testapp.services.DatabaseService;
+import com.example.testapp.services.DatabaseFutures;
+import com.example.testapp.services.DatabaseRepository;
 import com.example.testapp.utils.SharedPreferencesUtil;
 import com.example.testapp.utils.Validator;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
 /// Activity for registering the user
 /// This activity is used to register the user
 /// It contains fields for the user to enter their information
@@ -33,6 +37,9 @@ public class RegisterActivity extends BaseActivity implements View.OnClickListen
     private Button btnRegister;
     private TextView tvLogin;
 
+    /// the id of the user that is registered, kept for the retries
+    private String uid;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -154,56 +161,45 @@ public class RegisterActivity extends BaseActivity implements View.OnClickListen
     private void registerUser(String email, String password, String fName, String lName, String phone) {
         Log.d(TAG, "registerUser: Registering user...");
 
-        String uid = databaseService.generateUserId();
+        /// the id is kept for the retries, so a retry after a failure that was reported late finds its own user and email
+        if (uid == null) {
+            uid = databaseService.generateUserId();
+        }
 
         /// create a new user object
         User user = new User(uid, email, password, fName,lName, phone, false);
 
-        databaseService.checkIfEmailExists(email, new DatabaseService.DatabaseCallback<>() {
-            @Override
-            public void onCompleted(Boolean exists) {
-                if (exists) {
-                    Log.e(TAG, "onCompleted: Email already exists");
-                    /// show error message to user
-                    Toast.makeText(RegisterActivity.this, "Email already exists", Toast.LENGTH_SHORT).show();
-                } else {
-                    /// proceed to create the user
-                    createUserInDatabase(user);
-                }
-            }
-
-            @Override
-            public void onFailed(Exception e) {
-                Log.e(TAG, "onFailed: Failed to check if email exists", e);
-                /// show error message to user
-                Toast.makeText(RegisterActivity.this, "Failed to register user", Toast.LENGTH_SHORT).show();
-            }
-        });
-    }
-
-    private void createUserInDatabase(User user) {
-        databaseService.createNewUser(user, new DatabaseService.DatabaseCallback<Void>() {
-            @Override
-            public void onCompleted(Void object) {
-                Log.d(TAG, "createUserInDatabase: User created successfully");
-                /// save the user to shared preferences
-                SharedPreferencesUtil.saveUser(RegisterActivity.this, user);
-                Log.d(TAG, "createUserInDatabase: Redirecting to MainActivity");
-                /// Redirect to MainActivity and clear back stack to prevent user from going back to register screen
-                Intent mainIntent = new Intent(RegisterActivity.this, MainActivity.class);
-                /// clear the back stack (clear history) and start the MainActivity
-                mainIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                startActivity(mainIntent);
-            }
-
-            @Override
-            public void onFailed(Exception e) {
-                Log.e(TAG, "createUserInDatabase: Failed to create user", e);
-                /// show error message to user
-                Toast.makeText(RegisterActivity.this, "Failed to register user", Toast.LENGTH_SHORT).show();
-                /// sign out the user if failed to register
-                SharedPreferencesUtil.signOutUser(RegisterActivity.this);
-            }
-        });
+        /// the email is checked and taken together with the creation of the user,
+        /// so two users that register the same email at the same time can't both get it
+        track(databaseService.futures().createNewUser(user))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        Throwable cause = DatabaseFutures.unwrap(e);
+                        if (cause instanceof CancellationException) return;
+                        if (cause instanceof DatabaseRepository.EmailExistsException) {
+                            Log.e(TAG, "registerUser: Email already exists");
+                            /// show error message to user
+                            Toast.makeText(RegisterActivity.this, "Email already exists", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        Log.e(TAG, "registerUser: Failed to register user", e);
+                        /// show error message to user
+                        Toast.makeText(RegisterActivity.this, "Failed to register user", Toast.LENGTH_SHORT).show();
+                        /// a write that timed out may still be saved, the user can try again with the same id
+                        if (cause instanceof TimeoutException) return;
+                        /// sign out the user if failed to register
+                        SharedPreferencesUtil.signOutUser(RegisterActivity.this);
+                        return;
+                    }
+                    Log.d(TAG, "registerUser: User created successfully");
+                    /// save the user to shared preferences
+                    SharedPreferencesUtil.saveUser(RegisterActivity.this, user);
+                    Log.d(TAG, "registerUser: Redirecting to MainActivity");
+                    /// Redirect to MainActivity and clear back stack to prevent user from going back to register screen
+                    Intent mainIntent = new Intent(RegisterActivity.this, MainActivity.class);
+                    /// clear the back stack (clear history) and start the MainActivity
+                    mainIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                    startActivity(mainIntent);
+                });
     }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.example.testapp.screens;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.activity.EdgeToEdge;
@@ -11,16 +14,42 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import com.example.testapp.R;
+import com.example.testapp.models.User;
+import com.example.testapp.services.DatabaseFutures;
+import com.example.testapp.services.DatabaseProvider;
+import com.example.testapp.services.DatabaseRepository;
+import com.example.testapp.services.RequestScheduler;
 import com.example.testapp.utils.SharedPreferencesUtil;
+import com.example.testapp.utils.StartupTrace;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/// the first screen, shown while the app warms up </br>
+/// the warm-up loads the session and the database at the same time, and then prefetches the data
+/// of the first screen of a signed in user, so the splash is shown only until the app is ready,
+/// and not longer than WARM_UP_TIMEOUT_MILLIS
+/// @see StartupTrace
 public class SplashActivity extends AppCompatActivity {
 
     private static final String TAG = "SplashActivity";
-    private static final int SPLASH_DISPLAY_TIME = 3000; // 3 seconds
+
+    /// the longest time the splash waits for the warm-up, after it the app continues without the rest of the warm-up
+    private static final long WARM_UP_TIMEOUT_MILLIS = 2000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /// run the stages of the warm-up that call the database on the main thread, like the screens do
+    private final Executor mainExecutor = handler::post;
+
+    /// true after the app moved to the next screen, or the splash was closed
+    private boolean routed = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin("splash");
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_splash);
         ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
@@ -29,26 +58,73 @@ public class SplashActivity extends AppCompatActivity {
             return insets;
         });
 
-
-        Thread splashThread = new Thread(() -> {
-            try {
-                Thread.sleep(SPLASH_DISPLAY_TIME); // SPLASH_DISPLAY_TIME delay
-            } catch (InterruptedException ignored) {
-            } finally {
-                // go to the correct activity after the delay
-                Intent intent;
-                /// Check if user is signed in or not and redirect to LandingActivity if not signed in
-                if (SharedPreferencesUtil.isUserLoggedIn(this)) {
-                    Log.d(TAG, "User signed in, redirecting to MainActivity");
-                    intent = new Intent(SplashActivity.this, MainActivity.class);
-                } else {
-                    Log.d(TAG, "User not signed in, redirecting to LandingActivity");
-                    intent = new Intent(SplashActivity.this, LandingActivity.class);
-                }
-                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                startActivity(intent);
+        handler.postDelayed(() -> route(true), WARM_UP_TIMEOUT_MILLIS);
+        warmUp().whenCompleteAsync((ignored, e) -> {
+            if (e != null) {
+                Log.w(TAG, "Warm-up failed, continuing without it", e);
             }
-        });
-        splashThread.start();
+            route(false);
+        }, mainExecutor);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        routed = true;
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    /// load the session and the database at the same time, and then prefetch the data of the signed in user
+    /// @return a future that completes when the warm-up is done
+    private CompletableFuture<Void> warmUp() {
+        StartupTrace.begin("warm-up");
+        final Context context = getApplicationContext();
+        CompletableFuture<User> session = CompletableFuture.supplyAsync(() ->
+                StartupTrace.trace("session", () -> SharedPreferencesUtil.getUser(context)));
+        CompletableFuture<DatabaseRepository> database = CompletableFuture.supplyAsync(() ->
+                StartupTrace.trace("database", () -> DatabaseProvider.getInstance(context)));
+        return session.thenCombineAsync(database, this::prefetch, mainExecutor)
+                .thenCompose(prefetch -> prefetch)
+                .whenComplete((ignored, e) -> StartupTrace.end("warm-up"));
+    }
+
+    /// read the user and the summaries of their carts, the first screens show them
+    /// the reads are cached by the repository, so the screens get them without waiting
+    /// @param user the signed in user, null if no user is signed in
+    /// @param repository the repository of the database
+    private CompletableFuture<Void> prefetch(User user, DatabaseRepository repository) {
+        if (user == null || user.getId() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        StartupTrace.begin("prefetch");
+        DatabaseFutures futures = repository.futures().withTimeout(WARM_UP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .withPriority(RequestScheduler.Priority.INTERACTIVE);
+        return DatabaseFutures.allOf(futures.getUser(user.getId()), futures.getUserCartSummaryList(user.getId()))
+                .whenComplete((ignored, e) -> StartupTrace.end("prefetch"));
+    }
+
+    /// move to the next screen, once
+    /// @param timedOut true if the warm-up didn't finish in time
+    private void route(boolean timedOut) {
+        if (routed) return;
+        routed = true;
+        handler.removeCallbacksAndMessages(null);
+        if (timedOut) {
+            Log.w(TAG, "Warm-up did not finish in " + WARM_UP_TIMEOUT_MILLIS + " ms, continuing");
+        }
+        StartupTrace.end("splash");
+        Log.i(TAG, "Startup:\n" + StartupTrace.report());
+
+        Intent intent;
+        /// Check if user is signed in or not and redirect to LandingActivity if not signed in
+        if (SharedPreferencesUtil.isUserLoggedIn(this)) {
+            Log.d(TAG, "User signed in, redirecting to MainActivity");
+            intent = new Intent(SplashActivity.this, MainActivity.class);
+        } else {
+            Log.d(TAG, "User not signed in, redirecting to LandingActivity");
+            intent = new Intent(SplashActivity.this, LandingActivity.class);
+        }
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        startActivity(intent);
     }
-}
\ No newline at end of file
+}
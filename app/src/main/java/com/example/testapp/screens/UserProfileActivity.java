@@ -17,6 +17,7 @@ import androidx.core.view.WindowInsetsCompat;
 import com.example.testapp.R;
 import com.example.testapp.models.User;
 import com.example.testapp.services.DatabaseService;
+import com.example.testapp.services.RequestScheduler;
 import com.example.testapp.utils.SharedPreferencesUtil;
 import com.example.testapp.utils.Validator;
 
@@ -97,38 +98,19 @@ public class UserProfileActivity extends BaseActivity implements View.OnClickLis
     }
 
     private void showUserProfile() {
-        // Get the user data from database
-        databaseService.getUser(selectedUid, new DatabaseService.DatabaseCallback<User>() {
+        // Get the user data from database, the user is waiting for it
+        databaseService.withPriority(RequestScheduler.Priority.INTERACTIVE, () -> databaseService.getUser(selectedUid, new DatabaseService.DatabaseCallback<User>() {
             @Override
             public void onCompleted(User user) {
-                selectedUser = user;
-                // Set the user data to the EditText fields
-                etUserFirstName.setText(user.getFirstName());
-                etUserLastName.setText(user.getLastName());
-                etUserEmail.setText(user.getEmail());
-                etUserPhone.setText(user.getPhone());
-                etUserPassword.setText(user.getPassword());
-                
-                // Update display fields
-                String displayName = user.getFirstName() + " " + user.getLastName();
-                tvUserDisplayName.setText(displayName);
-                tvUserDisplayEmail.setText(user.getEmail());
-
-                // Show/hide admin badge based on user's admin status
-                if (user.isAdmin()) {
-                    adminBadge.setVisibility(View.VISIBLE);
-                    Log.d(TAG, "User is admin, showing admin badge");
-                } else {
-                    adminBadge.setVisibility(View.GONE);
-                    Log.d(TAG, "User is not admin, hiding admin badge");
-                }
+                showUser(user);
             }
 
             @Override
             public void onFailed(Exception e) {
                 Log.e(TAG, "Error getting user profile", e);
+                Toast.makeText(UserProfileActivity.this, "Failed to load profile", Toast.LENGTH_SHORT).show();
             }
-        });
+        }));
 
         // disable the EditText fields if the user is not the current user
         if (!isCurrentUser) {
@@ -141,6 +123,30 @@ public class UserProfileActivity extends BaseActivity implements View.OnClickLis
         }
     }
 
+    private void showUser(User user) {
+        selectedUser = user;
+        // Set the user data to the EditText fields
+        etUserFirstName.setText(user.getFirstName());
+        etUserLastName.setText(user.getLastName());
+        etUserEmail.setText(user.getEmail());
+        etUserPhone.setText(user.getPhone());
+        etUserPassword.setText(user.getPassword());
+
+        // Update display fields
+        String displayName = user.getFirstName() + " " + user.getLastName();
+        tvUserDisplayName.setText(displayName);
+        tvUserDisplayEmail.setText(user.getEmail());
+
+        // Show/hide admin badge based on user's admin status
+        if (user.isAdmin()) {
+            adminBadge.setVisibility(View.VISIBLE);
+            Log.d(TAG, "User is admin, showing admin badge");
+        } else {
+            adminBadge.setVisibility(View.GONE);
+            Log.d(TAG, "User is not admin, hiding admin badge");
+        }
+    }
+
     private void updateUserProfile() {
         if (selectedUser == null) {
             Log.e(TAG, "User not found");
@@ -159,33 +165,34 @@ public class UserProfileActivity extends BaseActivity implements View.OnClickLis
             return;
         }
 
-        // Update the user object
-        selectedUser.setFirstName(firstName);
-        selectedUser.setLastName(lastName);
-        selectedUser.setPhone(phone);
-        selectedUser.setEmail(email);
-        selectedUser.setPassword(password);
+        // Update a copy of the user object, the loaded user stays as it is in the database until the update succeeds
+        User updatedUser = new User(selectedUser);
+        updatedUser.setFirstName(firstName);
+        updatedUser.setLastName(lastName);
+        updatedUser.setPhone(phone);
+        updatedUser.setEmail(email);
+        updatedUser.setPassword(password);
 
         // Update the user data in the authentication
         Log.d(TAG, "Updating user profile");
-        Log.d(TAG, "Selected user UID: " + selectedUser.getId());
+        Log.d(TAG, "Selected user UID: " + updatedUser.getId());
         Log.d(TAG, "Is current user: " + isCurrentUser);
-        Log.d(TAG, "User email: " + selectedUser.getEmail());
-        Log.d(TAG, "User password: " + selectedUser.getPassword());
+        Log.d(TAG, "User email: " + updatedUser.getEmail());
+        Log.d(TAG, "User password: " + updatedUser.getPassword());
 
 
 
-        if (!isCurrentUser && !selectedUser.isAdmin()) {
+        if (!isCurrentUser && !updatedUser.isAdmin()) {
             Log.e(TAG, "Only the current user can update their profile");
             Toast.makeText(this, "You can only update your own profile", Toast.LENGTH_SHORT).show();
             return;
         }
         else if (isCurrentUser) {
-            updateUserInDatabase(selectedUser);
+            updateUserInDatabase(updatedUser);
         }
-        else if (selectedUser.isAdmin()) {
+        else if (updatedUser.isAdmin()) {
             // update the user in the database
-            updateUserInDatabase(selectedUser);
+            updateUserInDatabase(updatedUser);
         }
     }
 
@@ -196,7 +203,7 @@ public class UserProfileActivity extends BaseActivity implements View.OnClickLis
             public void onCompleted(Void result) {
                 Log.d(TAG, "User profile updated successfully");
                 Toast.makeText(UserProfileActivity.this, "Profile updated successfully", Toast.LENGTH_SHORT).show();
-                showUserProfile(); // Refresh the profile view
+                showUser(user); // Refresh the profile view, only the changed fields were written
             }
 
             @Override
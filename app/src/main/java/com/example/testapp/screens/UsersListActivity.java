@@ -15,16 +15,24 @@ import android.widget.TextView;
 import com.example.testapp.R;
 import com.example.testapp.adapters.UserAdapter;
 import com.example.testapp.models.User;
-import com.example.testapp.services.DatabaseService;
+import com.example.testapp.services.DatabaseFutures;
+import com.example.testapp.services.RequestScheduler;
+import com.example.testapp.utils.EndlessScrollListener;
 
-import java.util.List;
+import java.util.concurrent.CancellationException;
 
 public class UsersListActivity extends BaseActivity {
 
     private static final String TAG = "UsersListActivity";
+    /// number of users to load in each page
+    private static final int PAGE_SIZE = 20;
     private UserAdapter userAdapter;
     private TextView tvUserCount;
 
+    /// the cursor of the next page, null before the first page is loaded
+    private String nextPageKey;
+    private boolean isLoading, hasMorePages = true;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -38,7 +46,8 @@ public class UsersListActivity extends BaseActivity {
 
         RecyclerView usersList = findViewById(R.id.rv_users_list);
         tvUserCount = findViewById(R.id.tv_user_count);
-        usersList.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        usersList.setLayoutManager(layoutManager);
         userAdapter = new UserAdapter(new UserAdapter.OnUserClickListener() {
             @Override
             public void onUserClick(User user) {
@@ -56,23 +65,84 @@ public class UsersListActivity extends BaseActivity {
             }
         });
         usersList.setAdapter(userAdapter);
-    }
+        usersList.addOnScrollListener(new EndlessScrollListener(layoutManager) {
+            @Override
+            protected void onLoadMore() {
+                loadNextPage();
+            }
+        });
 
+        /// the time is taken before the first page, so every change after the page was read is listened to
+        track(databaseService.futures().getServerTime()).whenComplete((now, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            if (e != null) {
+                Log.e(TAG, "Failed to get the server time", e);
+            }
+            loadNextPage();
+            observeUsers(e == null ? now : System.currentTimeMillis());
+        });
+    }
 
     @Override
     protected void onResume() {
         super.onResume();
-        databaseService.getUserList(new DatabaseService.DatabaseCallback<>() {
-            @Override
-            public void onCompleted(List<User> users) {
-                userAdapter.setUserList(users);
-                tvUserCount.setText("Total users: " + users.size());
+        loadUserCount();
+    }
+
+    /// the number of users is read from its counter, without reading the users
+    private void loadUserCount() {
+        track(databaseService.futures().getUserCount()).whenComplete((count, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            if (e != null) {
+                Log.e(TAG, "Failed to get the number of users", e);
+                return;
             }
+            tvUserCount.setText("Total users: " + count);
+        });
+    }
 
-            @Override
-            public void onFailed(Exception e) {
-                Log.e(TAG, "Failed to get users list", e);
+    /// listen to the users that change after the first page was read, instead of reloading the list every time the screen is shown </br>
+    /// only users in the pages that were already loaded are applied, the rest arrive with their page
+    /// @param since the time that was taken before the first page
+    private void observeUsers(long since) {
+        observe(databaseService.publishUsers(since).deltas(), delta -> {
+            switch (delta.getType()) {
+                case ADDED:
+                    if (delta.getValue() == null || !isLoaded(delta.getKey())) return;
+                    userAdapter.addOrUpdateUser(delta.getValue());
+                    loadUserCount();
+                    break;
+                case CHANGED:
+                    if (delta.getValue() == null) return;
+                    userAdapter.updateUser(delta.getValue());
+                    break;
+                case REMOVED:
+                    userAdapter.removeUser(delta.getKey());
+                    loadUserCount();
+                    break;
+            }
+        }, e -> Log.e(TAG, "Failed to listen to users", e));
+    }
+
+    /// check if a user is inside the pages that were already loaded
+    private boolean isLoaded(String key) {
+        if (!hasMorePages) return true;
+        return nextPageKey != null && key.compareTo(nextPageKey) <= 0;
+    }
+
+    private void loadNextPage() {
+        if (isLoading || !hasMorePages) return;
+        isLoading = true;
+        track(databaseService.futures().withPriority(RequestScheduler.Priority.INTERACTIVE).getUserPage(nextPageKey, PAGE_SIZE)).whenComplete((page, e) -> {
+            if (e != null && DatabaseFutures.unwrap(e) instanceof CancellationException) return;
+            isLoading = false;
+            if (e != null) {
+                Log.e(TAG, "Failed to get users page", e);
+                return;
             }
+            nextPageKey = page.getNextKey();
+            hasMorePages = page.hasMore();
+            userAdapter.addUsers(page.getItems());
         });
     }
 
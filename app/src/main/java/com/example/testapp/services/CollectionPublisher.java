@@ -0,0 +1,378 @@
+package com.example.testapp.services;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.testapp.services.DatabaseService.ChildListener;
+import com.example.testapp.services.DatabaseService.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+
+/// a list of data in the database as Flow publishers, of the whole list or of its changes </br>
+/// all the subscribers of a publisher share a single listener of the list, so N screens that
+/// show the same list cost one listener and one conversion of every change, not N.
+/// the listener is added with the first subscriber and removed when the last subscriber cancels.
+/// <p>
+/// the subscribers get the items only as they request them (backpressure):
+/// - a subscriber of the snapshots that is behind gets only the latest snapshot, never the ones in between
+/// - a subscriber of the deltas that is behind gets one change for every item that changed,
+///   so the number of waiting changes is never more than the number of items
+/// <p>
+/// changes that arrive together (like the items of the first read) are sent as one snapshot.
+/// everything is sent on the main thread
+/// @param <T> the type of the items in the list
+/// @see DatabaseRepository#publishUsers(long)
+public class CollectionPublisher<T> {
+
+    /// starts listening to the list, like the observe methods of DatabaseRepository
+    /// @param <T> the type of the items in the list
+    public interface Source<T> {
+        Subscription observe(@NonNull ChildListener<T> listener);
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Source<T> source;
+
+    /// the current items, by key, in the order they were reported
+    private final Map<String, T> children = new LinkedHashMap<>();
+
+    /// the subscribers of the snapshots and of the deltas
+    private final List<FlowSubscription<?>> subscriptions = new ArrayList<>();
+
+    /// the listener that is added to the source, null when no one is subscribed
+    @Nullable
+    private ChildListener<T> listener;
+
+    @Nullable
+    private Subscription sourceSubscription;
+
+    /// true after the source reported the items that existed when it was attached, even if there were none,
+    /// there is no snapshot to send before that
+    private boolean received = false;
+
+    /// the latest snapshot, shared by all the subscribers, null if it has to be built again
+    @Nullable
+    private List<T> snapshot;
+
+    /// true when sending the changes to the subscribers is already posted
+    private boolean emitScheduled = false;
+
+    /// @param source the list to publish
+    public CollectionPublisher(@NonNull Source<T> source) {
+        this.source = source;
+    }
+
+    /// the whole list, every time it changes
+    /// @return a publisher of unmodifiable snapshots of the list
+    public Flow.Publisher<List<T>> snapshots() {
+        return subscriber -> runOnMain(() -> subscribe(new SnapshotSubscription(Objects.requireNonNull(subscriber))));
+    }
+
+    /// every change in the list, starting with an ADDED change for every item in the list
+    /// @return a publisher of the changes of the list
+    public Flow.Publisher<Delta<T>> deltas() {
+        return subscriber -> runOnMain(() -> subscribe(new DeltaSubscription(Objects.requireNonNull(subscriber))));
+    }
+
+    // region private helpers
+
+    private static void runOnMain(@NonNull Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            mainHandler.post(runnable);
+        }
+    }
+
+    private void subscribe(@NonNull FlowSubscription<?> subscription) {
+        subscriptions.add(subscription);
+        subscription.subscriber.onSubscribe(subscription);
+        if (subscription.cancelled) return;
+        if (listener == null) {
+            /// the source reports the current items to the new listener, and they are sent to this subscriber
+            attach();
+        } else {
+            subscription.start();
+            scheduleEmit();
+        }
+    }
+
+    private void attach() {
+        final ChildListener<T> attached = new ChildListener<T>() {
+            @Override
+            public void onChildAdded(String key, T object) {
+                if (listener != this) return;
+                change(new Delta<>(Delta.Type.ADDED, key, object));
+            }
+
+            @Override
+            public void onChildChanged(String key, T object) {
+                if (listener != this) return;
+                change(new Delta<>(Delta.Type.CHANGED, key, object));
+            }
+
+            @Override
+            public void onChildRemoved(String key, T object) {
+                if (listener != this) return;
+                change(new Delta<>(Delta.Type.REMOVED, key, object));
+            }
+
+            @Override
+            public void onLoaded() {
+                if (listener != this) return;
+                loaded();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (listener != this) return;
+                fail(e);
+            }
+        };
+        listener = attached;
+        Subscription subscription = source.observe(attached);
+        if (listener == attached) {
+            sourceSubscription = subscription;
+        } else {
+            /// the source failed while it was added
+            subscription.unsubscribe();
+        }
+    }
+
+    private void detach() {
+        Subscription subscription = sourceSubscription;
+        listener = null;
+        sourceSubscription = null;
+        children.clear();
+        received = false;
+        snapshot = null;
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+    }
+
+    private void change(@NonNull Delta<T> delta) {
+        if (delta.getType() == Delta.Type.REMOVED) {
+            children.remove(delta.getKey());
+        } else {
+            children.put(delta.getKey(), delta.getValue());
+        }
+        snapshot = null;
+        for (FlowSubscription<?> subscription : new ArrayList<>(subscriptions)) {
+            subscription.onChange(delta);
+        }
+        scheduleEmit();
+    }
+
+    /// the first items are all reported, the first snapshot can be sent, even if it is empty
+    private void loaded() {
+        if (received) return;
+        received = true;
+        for (FlowSubscription<?> subscription : new ArrayList<>(subscriptions)) {
+            subscription.onLoaded();
+        }
+        scheduleEmit();
+    }
+
+    private void fail(@NonNull Exception e) {
+        List<FlowSubscription<?>> failed = new ArrayList<>(subscriptions);
+        subscriptions.clear();
+        detach();
+        for (FlowSubscription<?> subscription : failed) {
+            subscription.cancelled = true;
+            subscription.subscriber.onError(e);
+        }
+    }
+
+    /// send the waiting changes after the current changes are handled,
+    /// so changes that arrive together are sent together
+    private void scheduleEmit() {
+        if (emitScheduled) return;
+        emitScheduled = true;
+        mainHandler.post(() -> {
+            emitScheduled = false;
+            for (FlowSubscription<?> subscription : new ArrayList<>(subscriptions)) {
+                subscription.drain();
+            }
+        });
+    }
+
+    @NonNull
+    private List<T> currentSnapshot() {
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(new ArrayList<>(children.values()));
+        }
+        return snapshot;
+    }
+
+    // endregion private helpers
+
+    /// a subscriber of this publisher, with the items it requested and did not get yet
+    /// @param <R> the type of the items that are sent to the subscriber
+    private abstract class FlowSubscription<R> implements Flow.Subscription {
+        final Flow.Subscriber<? super R> subscriber;
+
+        /// the number of items the subscriber requested and did not get yet
+        private long demand = 0;
+
+        boolean cancelled = false;
+
+        /// true while sending, so a request from onNext doesn't send recursively
+        private boolean draining = false;
+
+        FlowSubscription(@NonNull Flow.Subscriber<? super R> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /// called when the subscriber joins a list that is already listened to
+        abstract void start();
+
+        /// called when the first items of the list were all reported
+        void onLoaded() {
+        }
+
+        abstract void onChange(@NonNull Delta<T> delta);
+
+        abstract boolean hasNext();
+
+        abstract R next();
+
+        @Override
+        public void request(long n) {
+            runOnMain(() -> {
+                if (cancelled) return;
+                if (n <= 0) {
+                    cancel();
+                    subscriber.onError(new IllegalArgumentException("request must be positive, was " + n));
+                    return;
+                }
+                demand += n;
+                if (demand < 0) {
+                    /// the demand overflowed, it is unbounded
+                    demand = Long.MAX_VALUE;
+                }
+                drain();
+            });
+        }
+
+        @Override
+        public void cancel() {
+            runOnMain(() -> {
+                if (cancelled) return;
+                cancelled = true;
+                subscriptions.remove(this);
+                if (subscriptions.isEmpty()) {
+                    detach();
+                }
+            });
+        }
+
+        void drain() {
+            if (draining) return;
+            draining = true;
+            try {
+                while (!cancelled && demand > 0 && hasNext()) {
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                    subscriber.onNext(next());
+                }
+            } finally {
+                draining = false;
+            }
+        }
+    }
+
+    /// sends the latest snapshot of the list when the subscriber requests it
+    private class SnapshotSubscription extends FlowSubscription<List<T>> {
+        /// true when the list changed since the last snapshot that was sent
+        private boolean pending = false;
+
+        SnapshotSubscription(@NonNull Flow.Subscriber<? super List<T>> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        void start() {
+            pending = received;
+        }
+
+        @Override
+        void onLoaded() {
+            pending = true;
+        }
+
+        @Override
+        void onChange(@NonNull Delta<T> delta) {
+            pending = true;
+        }
+
+        /// the first snapshot waits until the first items were all reported
+        @Override
+        boolean hasNext() {
+            return received && pending;
+        }
+
+        @Override
+        List<T> next() {
+            pending = false;
+            return currentSnapshot();
+        }
+    }
+
+    /// sends the changes of the list when the subscriber requests them,
+    /// the changes of an item that wait are merged into one change
+    private class DeltaSubscription extends FlowSubscription<Delta<T>> {
+        private final LinkedHashMap<String, Delta<T>> pending = new LinkedHashMap<>();
+
+        DeltaSubscription(@NonNull Flow.Subscriber<? super Delta<T>> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        void start() {
+            for (Map.Entry<String, T> child : children.entrySet()) {
+                pending.put(child.getKey(), new Delta<>(Delta.Type.ADDED, child.getKey(), child.getValue()));
+            }
+        }
+
+        @Override
+        void onChange(@NonNull Delta<T> delta) {
+            Delta<T> waiting = pending.get(delta.getKey());
+            if (waiting == null) {
+                pending.put(delta.getKey(), delta);
+                return;
+            }
+            Delta<T> merged = waiting.merge(delta);
+            if (merged == null) {
+                pending.remove(delta.getKey());
+            } else {
+                pending.put(delta.getKey(), merged);
+            }
+        }
+
+        @Override
+        boolean hasNext() {
+            return !pending.isEmpty();
+        }
+
+        @Override
+        Delta<T> next() {
+            Iterator<Delta<T>> iterator = pending.values().iterator();
+            Delta<T> delta = iterator.next();
+            iterator.remove();
+            return delta;
+        }
+    }
+}
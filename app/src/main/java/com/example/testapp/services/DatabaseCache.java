@@ -0,0 +1,173 @@
+package com.example.testapp.services;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartSummary;
+import com.example.testapp.models.Food;
+import com.example.testapp.models.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/// in-memory cache of data read from the database, keyed by the path of the data </br>
+/// the least recently used entry is evicted when the cache is full,
+/// and every entry expires after the time to live of its type.
+/// the models and the lists are copied when they are put and when they are returned,
+/// so the callers can change them without changing the cache
+/// @see DatabaseService
+class DatabaseCache {
+
+    /// the maximum number of entries kept in the cache
+    private static final int MAX_ENTRIES = 500;
+
+    /// time to live of types that don't have their own
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /// time to live of each type of data
+    /// lists use the time to live of their items
+    private static final Map<Class<?>, Long> TTL_MILLIS_BY_TYPE = new HashMap<>();
+
+    static {
+        TTL_MILLIS_BY_TYPE.put(User.class, TimeUnit.MINUTES.toMillis(5));
+        TTL_MILLIS_BY_TYPE.put(Food.class, TimeUnit.MINUTES.toMillis(10));
+        TTL_MILLIS_BY_TYPE.put(Cart.class, TimeUnit.MINUTES.toMillis(2));
+        TTL_MILLIS_BY_TYPE.put(CartSummary.class, TimeUnit.MINUTES.toMillis(2));
+        TTL_MILLIS_BY_TYPE.put(String.class, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    private static class Entry {
+        final Object value;
+        final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /// the entries in access order, the first entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private long hitCount, missCount;
+
+    /// the time in milliseconds that the entries expire by, it doesn't change with the clock of the device
+    private final LongSupplier clock;
+
+    DatabaseCache() {
+        this(SystemClock::elapsedRealtime);
+    }
+
+    /// @param clock the time in milliseconds that the entries expire by
+    @VisibleForTesting
+    DatabaseCache(@NonNull LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /// get the cached value of a path
+    /// @param path the path of the data
+    /// @param clazz the expected class of the value
+    /// @return the cached value, or null if the path is not cached, expired or holds another type
+    @Nullable
+    synchronized <T> T get(@NonNull String path, @NonNull Class<T> clazz) {
+        Entry entry = entries.get(path);
+        if (entry == null || !clazz.isInstance(entry.value)) {
+            missCount++;
+            return null;
+        }
+        if (entry.expiresAt <= clock.getAsLong()) {
+            /// the entry is kept for getStale, until it is evicted or invalidated
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return clazz.cast(copyOf(entry.value));
+    }
+
+    /// get the cached value of a path, even if it expired </br>
+    /// used when the database can't be reached, old data is better than no data
+    /// @param path the path of the data
+    /// @param clazz the expected class of the value
+    /// @return the cached value, or null if the path is not cached or holds another type
+    @Nullable
+    synchronized <T> T getStale(@NonNull String path, @NonNull Class<T> clazz) {
+        Entry entry = entries.get(path);
+        if (entry == null || !clazz.isInstance(entry.value)) {
+            return null;
+        }
+        return clazz.cast(copyOf(entry.value));
+    }
+
+    /// cache the value of a path
+    /// @param path the path of the data
+    /// @param value the value to cache, null values are not cached
+    /// @param type the type that decides the time to live of the entry
+    synchronized void put(@NonNull String path, @Nullable Object value, @NonNull Class<?> type) {
+        if (value == null) {
+            entries.remove(path);
+            return;
+        }
+        Long ttl = TTL_MILLIS_BY_TYPE.get(type);
+        long expiresAt = clock.getAsLong() + (ttl != null ? ttl : DEFAULT_TTL_MILLIS);
+        entries.put(path, new Entry(copyOf(value), expiresAt));
+    }
+
+    /// remove a path from the cache, together with all the paths under it and above it </br>
+    /// the paths above it are lists or index nodes that contain the changed data
+    /// @param path the path of the data that changed
+    synchronized void invalidate(@NonNull String path) {
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (DatabasePaths.overlaps(path, key)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /// remove all the entries, the hit and miss counters are kept
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /// a copy of a value, the lists are copied together with their items </br>
+    /// strings, numbers and booleans can't be changed, so they are not copied
+    @NonNull
+    private static Object copyOf(@NonNull Object value) {
+        if (value instanceof User) return new User((User) value);
+        if (value instanceof Food) return new Food((Food) value);
+        if (value instanceof Cart) return new Cart((Cart) value);
+        if (value instanceof CartSummary) return new CartSummary((CartSummary) value);
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<?>) value).size());
+            for (Object item : (List<?>) value) {
+                copy.add(item != null ? copyOf(item) : null);
+            }
+            return copy;
+        }
+        return value;
+    }
+}
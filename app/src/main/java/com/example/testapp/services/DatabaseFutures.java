@@ -0,0 +1,323 @@
+package com.example.testapp.services;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartSummary;
+import com.example.testapp.models.Food;
+import com.example.testapp.models.User;
+import com.example.testapp.services.DatabaseService.DatabaseCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/// the operations of a DatabaseRepository as CompletableFutures instead of callbacks </br>
+/// every future is completed on the main thread, like the callbacks, so the stages of the future
+/// (thenAccept, exceptionally, ...) can update the views.
+/// a future that takes longer than its deadline fails with a TimeoutException,
+/// and a cancelled future ignores the result when it arrives.
+/// the deadline only stops the waiting, the operation keeps going, so the writes that create or delete
+/// records have no deadline: a create that fails late would be retried as a second record
+/// the streams and the listeners are not here, they report more than one result
+/// @see DatabaseRepository#futures()
+/// @see CompletableFuture
+public class DatabaseFutures {
+
+    /// the deadline of every operation, unless another one is set with withTimeout
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final DatabaseRepository repository;
+
+    /// the deadline of every operation in milliseconds, 0 for no deadline
+    private final long timeoutMillis;
+
+    /// the priority of the reads of the operations
+    private final RequestScheduler.Priority priority;
+
+    /// @param repository the repository to run the operations on
+    public DatabaseFutures(@NonNull DatabaseRepository repository) {
+        this(repository, DEFAULT_TIMEOUT_MILLIS, RequestScheduler.Priority.NORMAL);
+    }
+
+    private DatabaseFutures(@NonNull DatabaseRepository repository, long timeoutMillis, @NonNull RequestScheduler.Priority priority) {
+        this.repository = repository;
+        this.timeoutMillis = timeoutMillis;
+        this.priority = priority;
+    }
+
+    /// get a copy of this object with another deadline for the operations
+    /// @param timeout the deadline, 0 for no deadline
+    /// @param unit the unit of the deadline
+    /// @return the copy, this object is not changed
+    public DatabaseFutures withTimeout(long timeout, @NonNull TimeUnit unit) {
+        return new DatabaseFutures(repository, unit.toMillis(timeout), priority);
+    }
+
+    /// get a copy of this object whose operations read with another priority
+    /// @param priority the priority of the reads
+    /// @return the copy, this object is not changed
+    /// @see DatabaseRepository#withPriority(RequestScheduler.Priority, Runnable)
+    public DatabaseFutures withPriority(@NonNull RequestScheduler.Priority priority) {
+        return new DatabaseFutures(repository, timeoutMillis, priority);
+    }
+
+    // region helpers
+
+    /// run an operation and complete the future with the result of its callback </br>
+    /// operations that are not in this class can use it too, for example the batches of DatabaseService:
+    /// `futures.call("commit", batch::commit)`
+    /// @param name the name of the operation, for the timeout message
+    /// @param operation the operation to run with the callback
+    /// @return a future of the result of the operation, with the deadline of this object
+    public <T> CompletableFuture<T> call(@NonNull String name, @NonNull Consumer<DatabaseCallback<T>> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if (timeoutMillis > 0) {
+            Runnable timeout = () -> future.completeExceptionally(
+                    new TimeoutException(name + " did not complete in " + timeoutMillis + "ms"));
+            mainHandler.postDelayed(timeout, timeoutMillis);
+            /// also removes the timeout when the future is cancelled
+            future.whenComplete((result, e) -> mainHandler.removeCallbacks(timeout));
+        }
+        try {
+            repository.withPriority(priority, () -> operation.accept(new DatabaseCallback<T>() {
+                @Override
+                public void onCompleted(T object) {
+                    future.complete(object);
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /// run an operation that must not be reported as failed while it may still succeed, without the deadline of this object
+    /// @see #call(String, Consumer)
+    private <T> CompletableFuture<T> callWithoutDeadline(@NonNull String name, @NonNull Consumer<DatabaseCallback<T>> operation) {
+        return withTimeout(0, TimeUnit.MILLISECONDS).call(name, operation);
+    }
+
+    /// wait for all the futures, and fail as soon as one of them fails </br>
+    /// when one future fails the others are cancelled, unlike CompletableFuture#allOf that waits for all of them
+    /// @param futures the futures to wait for
+    /// @return a future that completes when all the futures complete
+    public static CompletableFuture<Void> allOf(@NonNull CompletableFuture<?>... futures) {
+        final CompletableFuture<Void> result = CompletableFuture.allOf(futures);
+        for (CompletableFuture<?> future : futures) {
+            future.whenComplete((value, e) -> {
+                if (e == null) return;
+                result.completeExceptionally(e);
+                for (CompletableFuture<?> other : futures) {
+                    other.cancel(true);
+                }
+            });
+        }
+        /// cancelling the result cancels all the futures
+        result.whenComplete((value, e) -> {
+            if (e instanceof CancellationException) {
+                for (CompletableFuture<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    /// wait for all the futures and collect their results, and fail as soon as one of them fails
+    /// @param futures the futures to wait for
+    /// @return a future of the results, in the order of the futures
+    /// @see #allOf(CompletableFuture[])
+    public static <T> CompletableFuture<List<T>> allAsList(@NonNull List<CompletableFuture<T>> futures) {
+        return allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    /// get the cause of a failure of a future, without the CompletionException that wraps it
+    @NonNull
+    public static Throwable unwrap(@NonNull Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    // endregion helpers
+
+    public CompletableFuture<Long> getServerTime() {
+        return call("getServerTime", repository::getServerTime);
+    }
+
+    // region User Section
+
+    public CompletableFuture<Void> createNewUser(@NonNull User user) {
+        return callWithoutDeadline("createNewUser", callback -> repository.createNewUser(user, callback));
+    }
+
+    public CompletableFuture<User> getUser(@NonNull String uid) {
+        return call("getUser", callback -> repository.getUser(uid, callback));
+    }
+
+    public CompletableFuture<List<User>> getUserList() {
+        return call("getUserList", repository::getUserList);
+    }
+
+    public CompletableFuture<Page<User>> getUserPage(@Nullable String afterKey, int pageSize) {
+        return call("getUserPage", callback -> repository.getUserPage(afterKey, pageSize, callback));
+    }
+
+    public CompletableFuture<Void> deleteUser(@NonNull String uid) {
+        return callWithoutDeadline("deleteUser", callback -> repository.deleteUser(uid, callback));
+    }
+
+    public CompletableFuture<User> getUserByEmailAndPassword(@NonNull String email, @NonNull String password) {
+        return call("getUserByEmailAndPassword", callback -> repository.getUserByEmailAndPassword(email, password, callback));
+    }
+
+    public CompletableFuture<Boolean> checkIfEmailExists(@NonNull String email) {
+        return call("checkIfEmailExists", callback -> repository.checkIfEmailExists(email, callback));
+    }
+
+    public CompletableFuture<Void> updateUser(@NonNull User user) {
+        return call("updateUser", callback -> repository.updateUser(user, callback));
+    }
+
+    // endregion User Section
+
+    // region food section
+
+    public CompletableFuture<Void> createNewFood(@NonNull Food food) {
+        return call("createNewFood", callback -> repository.createNewFood(food, callback));
+    }
+
+    public CompletableFuture<Void> createNewFoods(@NonNull List<Food> foods) {
+        return call("createNewFoods", callback -> repository.createNewFoods(foods, callback));
+    }
+
+    public CompletableFuture<Food> getFood(@NonNull String foodId) {
+        return call("getFood", callback -> repository.getFood(foodId, callback));
+    }
+
+    public CompletableFuture<List<Food>> getFoodList() {
+        return call("getFoodList", repository::getFoodList);
+    }
+
+    public CompletableFuture<List<Food>> getFoodsByIds(@NonNull List<String> foodIds) {
+        return call("getFoodsByIds", callback -> repository.getFoodsByIds(foodIds, callback));
+    }
+
+    public CompletableFuture<Page<Food>> getFoodPage(@Nullable String afterKey, int pageSize) {
+        return call("getFoodPage", callback -> repository.getFoodPage(afterKey, pageSize, callback));
+    }
+
+    public CompletableFuture<Void> deleteFood(@NonNull String foodId) {
+        return callWithoutDeadline("deleteFood", callback -> repository.deleteFood(foodId, callback));
+    }
+
+    public CompletableFuture<String> getFoodImage(@NonNull String foodId) {
+        return call("getFoodImage", callback -> repository.getFoodImage(foodId, callback));
+    }
+
+    // endregion food section
+
+    // region cart section
+
+    public CompletableFuture<Void> createNewCart(@NonNull Cart cart) {
+        return callWithoutDeadline("createNewCart", callback -> repository.createNewCart(cart, callback));
+    }
+
+    public CompletableFuture<Cart> getCart(@NonNull String cartId) {
+        return call("getCart", callback -> repository.getCart(cartId, callback));
+    }
+
+    public CompletableFuture<List<Cart>> getCartList() {
+        return call("getCartList", repository::getCartList);
+    }
+
+    public CompletableFuture<Void> deleteCart(@NonNull String cartId) {
+        return callWithoutDeadline("deleteCart", callback -> repository.deleteCart(cartId, callback));
+    }
+
+    public CompletableFuture<List<CartSummary>> getCartSummaryList() {
+        return call("getCartSummaryList", repository::getCartSummaryList);
+    }
+
+    public CompletableFuture<Page<CartSummary>> getCartSummaryPage(@Nullable String afterKey, int pageSize) {
+        return call("getCartSummaryPage", callback -> repository.getCartSummaryPage(afterKey, pageSize, callback));
+    }
+
+    public CompletableFuture<List<CartSummary>> getUserCartSummaryList(@NonNull String uid) {
+        return call("getUserCartSummaryList", callback -> repository.getUserCartSummaryList(uid, callback));
+    }
+
+    // endregion cart section
+
+    // region counters
+
+    public CompletableFuture<Long> getUserCount() {
+        return call("getUserCount", repository::getUserCount);
+    }
+
+    public CompletableFuture<Long> getFoodCount() {
+        return call("getFoodCount", repository::getFoodCount);
+    }
+
+    public CompletableFuture<Long> getCartCount() {
+        return call("getCartCount", repository::getCartCount);
+    }
+
+    public CompletableFuture<Long> getUserCartCount(@NonNull String uid) {
+        return call("getUserCartCount", callback -> repository.getUserCartCount(uid, callback));
+    }
+
+    public CompletableFuture<Integer> reconcileCounters() {
+        return call("reconcileCounters", repository::reconcileCounters);
+    }
+
+    // endregion counters
+
+    // region migrations
+
+    public CompletableFuture<Integer> migrateUsersByEmailIndex() {
+        return call("migrateUsersByEmailIndex", repository::migrateUsersByEmailIndex);
+    }
+
+    public CompletableFuture<Integer> migrateFoodImages() {
+        return call("migrateFoodImages", repository::migrateFoodImages);
+    }
+
+    public CompletableFuture<Integer> migrateUserCartsIndex() {
+        return call("migrateUserCartsIndex", repository::migrateUserCartsIndex);
+    }
+
+    public CompletableFuture<Integer> migrateCartItems() {
+        return call("migrateCartItems", repository::migrateCartItems);
+    }
+
+    public CompletableFuture<Integer> migrateCartSummaries() {
+        return call("migrateCartSummaries", repository::migrateCartSummaries);
+    }
+
+    // endregion migrations
+}
@@ -0,0 +1,19 @@
+package com.example.testapp.services;
+
+import androidx.annotation.NonNull;
+
+/// helpers of the paths of the database, the paths are relative to the root and separated by "/"
+final class DatabasePaths {
+
+    private DatabasePaths() {
+    }
+
+    /// check if two paths are the same data, or one of them is inside the other </br>
+    /// "carts/c1" overlaps "carts" and "carts/c1/title", but not "carts/c10"
+    /// @param path a path
+    /// @param other another path
+    /// @return true if a write to one of the paths changes the data of the other
+    static boolean overlaps(@NonNull String path, @NonNull String other) {
+        return path.equals(other) || path.startsWith(other + "/") || other.startsWith(path + "/");
+    }
+}
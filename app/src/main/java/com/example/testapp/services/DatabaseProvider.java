@@ -0,0 +1,79 @@
+package com.example.testapp.services;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.testapp.R;
+
+import java.util.Locale;
+
+/// selects the backend of the database when the app starts </br>
+/// the backend is read from the database_backend string resource
+/// @see DatabaseRepository
+/// @see R.string#database_backend
+public class DatabaseProvider {
+
+    /// tag for logging
+    private static final String TAG = "DatabaseProvider";
+
+    /// the available backends
+    public enum Backend {
+        /// the Firebase Realtime Database
+        /// @see DatabaseService
+        FIREBASE,
+        /// an on-device SQLite database, works offline
+        /// @see SqliteRepository
+        SQLITE,
+        /// data kept in memory only, for tests and load generation
+        /// @see InMemoryRepository
+        IN_MEMORY;
+
+        /// get a backend by its name, FIREBASE if the name is unknown
+        @NonNull
+        public static Backend fromName(@NonNull String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown database backend " + name + ", using Firebase");
+                return FIREBASE;
+            }
+        }
+    }
+
+    /// the repository of the selected backend
+    private static DatabaseRepository instance;
+
+    /// get the repository of the selected backend, creating it on the first call
+    /// @param context any context, the application context is kept
+    /// @return the repository to use for all the database operations
+    @NonNull
+    public static synchronized DatabaseRepository getInstance(@NonNull Context context) {
+        if (instance == null) {
+            Backend backend = Backend.fromName(context.getString(R.string.database_backend));
+            Log.d(TAG, "Using database backend " + backend);
+            instance = create(context.getApplicationContext(), backend);
+        }
+        return instance;
+    }
+
+    /// replace the repository, for example with an InMemoryRepository in tests or load generation
+    /// @param repository the repository to use from now on
+    public static synchronized void setInstance(@NonNull DatabaseRepository repository) {
+        instance = repository;
+    }
+
+    @NonNull
+    private static DatabaseRepository create(@NonNull Context context, @NonNull Backend backend) {
+        switch (backend) {
+            case SQLITE:
+                return new SqliteRepository(context);
+            case IN_MEMORY:
+                return new InMemoryRepository();
+            case FIREBASE:
+            default:
+                return DatabaseService.getInstance();
+        }
+    }
+}
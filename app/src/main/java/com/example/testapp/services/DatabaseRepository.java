@@ -0,0 +1,455 @@
+package com.example.testapp.services;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartSummary;
+import com.example.testapp.models.Food;
+import com.example.testapp.models.User;
+import com.example.testapp.services.DatabaseService.ChildListener;
+import com.example.testapp.services.DatabaseService.DatabaseCallback;
+import com.example.testapp.services.DatabaseService.DatabaseStreamCallback;
+import com.example.testapp.services.DatabaseService.Subscription;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/// the user, food and cart operations of the app, independent of where the data is stored </br>
+/// the screens only use this interface, and the backend is selected at startup
+/// @see DatabaseProvider
+/// @see DatabaseService the Firebase backend
+/// @see InMemoryRepository
+/// @see SqliteRepository
+public interface DatabaseRepository {
+
+    /// get the operations of this repository as CompletableFutures
+    /// @see DatabaseFutures
+    default DatabaseFutures futures() {
+        return new DatabaseFutures(this);
+    }
+
+    /// run database calls with a priority, the reads they start wait for the reads of higher priorities </br>
+    /// only the reads that are started while the calls run get the priority, not the reads started later by their callbacks.
+    /// by default the priority is ignored
+    /// @param priority the priority of the reads
+    /// @param calls the calls to the repository
+    /// @see RequestScheduler
+    default void withPriority(@NonNull RequestScheduler.Priority priority, @NonNull Runnable calls) {
+        calls.run();
+    }
+
+    /// get the current time by the clock of the backend, in milliseconds since the epoch </br>
+    /// the lists take it before their first page, and listen to the changes after it.
+    /// by default the time of the device is used
+    /// @param callback the callback to call with the time
+    /// @see #observeUsers(long, ChildListener)
+    default void getServerTime(@NonNull DatabaseCallback<Long> callback) {
+        callback.onCompleted(System.currentTimeMillis());
+    }
+
+    // region User Section
+
+    /// the failure of creating a user whose email already belongs to another user
+    /// @see #createNewUser(User, DatabaseCallback)
+    class EmailExistsException extends Exception {
+        public EmailExistsException(@NonNull String email) {
+            super("Email " + email + " already exists");
+        }
+    }
+
+    /// generate a new id for a new user
+    String generateUserId();
+
+    /// create a new user </br>
+    /// fails with an EmailExistsException if the email already belongs to another user,
+    /// the email is checked and taken in one step, so two users can't register the same email
+    /// @param user the user object to create
+    /// @param callback the callback to call when the operation is completed
+    void createNewUser(@NonNull User user, @Nullable DatabaseCallback<Void> callback);
+
+    /// get a user
+    /// @param uid the id of the user to get
+    /// @param callback the callback to call with the user, or null if there is no such user
+    void getUser(@NonNull String uid, @NonNull DatabaseCallback<User> callback);
+
+    /// get all the users
+    /// @param callback the callback to call with the list of users
+    void getUserList(@NonNull DatabaseCallback<List<User>> callback);
+
+    /// get a page of the users, ordered by id
+    /// @param afterKey the cursor of the previous page, null to get the first page
+    /// @param pageSize the maximum number of users in the page
+    /// @param callback the callback to call with the page of users
+    void getUserPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<User>> callback);
+
+    /// delete a user
+    /// @param uid the user id to delete
+    /// @param callback the callback to call when the operation is completed
+    void deleteUser(@NonNull String uid, @Nullable DatabaseCallback<Void> callback);
+
+    /// get a user by email and password
+    /// @param callback the callback to call with the user, or null if the email or password is wrong
+    void getUserByEmailAndPassword(@NonNull String email, @NonNull String password, @NonNull DatabaseCallback<User> callback);
+
+    /// check if an email already belongs to a user
+    /// @param callback the callback to call with true if the email exists
+    void checkIfEmailExists(@NonNull String email, @NonNull DatabaseCallback<Boolean> callback);
+
+    /// update a user
+    /// @param user the user object with the new data
+    /// @param callback the callback to call when the operation is completed,
+    ///              it fails with an EmailExistsException if the new email belongs to another user
+    void updateUser(@NonNull User user, @Nullable DatabaseCallback<Void> callback);
+
+    /// listen to the users that are written or deleted at or after a time </br>
+    /// a paged list takes the time before its first page and applies these changes to the pages it loaded,
+    /// so the users that didn't change are not read again.
+    /// by default the current users that were written since the time are reported once and later changes are not reported
+    /// @param since the time to listen from, by the clock of the backend
+    /// @param listener the listener to call with the users, a deleted user may be reported without its value
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    /// @see #getServerTime(DatabaseCallback)
+    default Subscription observeUsers(long since, @NonNull ChildListener<User> listener) {
+        getUserList(observeFromList(listener, User::getId, user -> user.getUpdatedAtMillis() >= since));
+        return () -> {
+        };
+    }
+
+    /// the users that are written or deleted at or after a time as Flow publishers </br>
+    /// by default every call creates a new publisher over observeUsers, a backend that listens to its database shares one
+    /// @param since the time to listen from, by the clock of the backend
+    /// @see CollectionPublisher
+    default CollectionPublisher<User> publishUsers(long since) {
+        return new CollectionPublisher<>(listener -> observeUsers(since, listener));
+    }
+
+    // endregion User Section
+
+    // region food section
+
+    /// generate a new id for a new food
+    String generateFoodId();
+
+    /// create a new food
+    /// @param food the food object to create
+    /// @param callback the callback to call when the operation is completed
+    void createNewFood(@NonNull Food food, @Nullable DatabaseCallback<Void> callback);
+
+    /// create many foods, for example when a catalog is imported </br>
+    /// by default every food is created on its own, and the callback is called when all of them are created
+    /// or as soon as one of them fails
+    /// @param foods the foods to create
+    /// @param callback the callback to call when the operation is completed
+    default void createNewFoods(@NonNull List<Food> foods, @Nullable DatabaseCallback<Void> callback) {
+        if (foods.isEmpty()) {
+            if (callback != null) callback.onCompleted(null);
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(foods.size());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        for (Food food : foods) {
+            createNewFood(food, new DatabaseCallback<Void>() {
+                @Override
+                public void onCompleted(Void object) {
+                    if (remaining.decrementAndGet() == 0 && !failed.get() && callback != null) {
+                        callback.onCompleted(null);
+                    }
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    if (failed.compareAndSet(false, true) && callback != null) {
+                        callback.onFailed(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /// get a food, without its image
+    /// @param foodId the id of the food to get
+    /// @param callback the callback to call with the food, or null if there is no such food
+    /// @see #getFoodImage(String, DatabaseCallback)
+    void getFood(@NonNull String foodId, @NonNull DatabaseCallback<Food> callback);
+
+    /// get all the foods, without their images
+    /// @param callback the callback to call with the list of foods
+    void getFoodList(@NonNull DatabaseCallback<List<Food>> callback);
+
+    /// get some foods by their ids, without their images
+    /// @param foodIds the ids of the foods to get
+    /// @param callback the callback to call with the foods that exist, in the order of the ids
+    void getFoodsByIds(@NonNull List<String> foodIds, @NonNull DatabaseCallback<List<Food>> callback);
+
+    /// get a page of the foods, ordered by id
+    /// @param afterKey the cursor of the previous page, null to get the first page
+    /// @param pageSize the maximum number of foods in the page
+    /// @param callback the callback to call with the page of foods
+    void getFoodPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<Food>> callback);
+
+    /// delete a food
+    /// @param foodId the id of the food to delete
+    /// @param callback the callback to call when the operation is completed
+    void deleteFood(@NonNull String foodId, @Nullable DatabaseCallback<Void> callback);
+
+    /// get the image of a food </br>
+    /// the images are stored apart from the foods, read them only when a food is shown
+    /// @param foodId the id of the food
+    /// @param callback the callback to call with the base64 image, or null if the food has no image
+    void getFoodImage(@NonNull String foodId, @NonNull DatabaseCallback<String> callback);
+
+    /// get all the foods in batches </br>
+    /// by default the whole list is read and then split into batches
+    /// @param batchSize the number of foods in each batch
+    /// @param callback the callback to call with every batch of foods
+    default void streamFoodList(int batchSize, @NonNull DatabaseStreamCallback<Food> callback) {
+        getFoodList(streamFromList(batchSize, callback));
+    }
+
+    /// listen to the foods that are written or deleted at or after a time, without their images </br>
+    /// by default the current foods that were written since the time are reported once and later changes are not reported
+    /// @param since the time to listen from, by the clock of the backend
+    /// @param listener the listener to call with the foods, a deleted food may be reported without its value
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    /// @see #observeUsers(long, ChildListener)
+    default Subscription observeFoods(long since, @NonNull ChildListener<Food> listener) {
+        getFoodList(observeFromList(listener, Food::getId, food -> food.getUpdatedAtMillis() >= since));
+        return () -> {
+        };
+    }
+
+    /// the foods that are written or deleted at or after a time as Flow publishers </br>
+    /// by default every call creates a new publisher over observeFoods, a backend that listens to its database shares one
+    /// @param since the time to listen from, by the clock of the backend
+    /// @see CollectionPublisher
+    default CollectionPublisher<Food> publishFoods(long since) {
+        return new CollectionPublisher<>(listener -> observeFoods(since, listener));
+    }
+
+    // endregion food section
+
+    // region cart section
+
+    /// generate a new id for a new cart
+    String generateCartId();
+
+    /// create a new cart
+    /// @param cart the cart object to create
+    /// @param callback the callback to call when the operation is completed
+    void createNewCart(@NonNull Cart cart, @Nullable DatabaseCallback<Void> callback);
+
+    /// get a cart
+    /// @param cartId the id of the cart to get
+    /// @param callback the callback to call with the cart, or null if there is no such cart
+    void getCart(@NonNull String cartId, @NonNull DatabaseCallback<Cart> callback);
+
+    /// get all the carts
+    /// @param callback the callback to call with the list of carts
+    void getCartList(@NonNull DatabaseCallback<List<Cart>> callback);
+
+    /// delete a cart
+    /// @param cartId the id of the cart to delete
+    /// @param callback the callback to call when the operation is completed
+    void deleteCart(@NonNull String cartId, @Nullable DatabaseCallback<Void> callback);
+
+    /// get the summaries of all the carts, the lists of carts only need the summaries
+    /// @param callback the callback to call with the list of cart summaries
+    /// @see CartSummary
+    void getCartSummaryList(@NonNull DatabaseCallback<List<CartSummary>> callback);
+
+    /// get a page of the cart summaries, ordered by cart id
+    /// @param afterKey the cursor of the previous page, null to get the first page
+    /// @param pageSize the maximum number of carts in the page
+    /// @param callback the callback to call with the page of cart summaries
+    void getCartSummaryPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<CartSummary>> callback);
+
+    /// get the summaries of the carts of a specific user
+    /// @param uid the id of the user to get the carts for
+    /// @param callback the callback to call with the list of cart summaries
+    void getUserCartSummaryList(@NonNull String uid, @NonNull DatabaseCallback<List<CartSummary>> callback);
+
+    /// listen to the summaries of the carts that are written or deleted at or after a time </br>
+    /// by default the current summaries that were written since the time are reported once and later changes are not reported
+    /// @param since the time to listen from, by the clock of the backend
+    /// @param listener the listener to call with the cart summaries, a deleted cart may be reported without its summary
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    /// @see #observeUsers(long, ChildListener)
+    default Subscription observeCartSummaries(long since, @NonNull ChildListener<CartSummary> listener) {
+        getCartSummaryList(observeFromList(listener, CartSummary::getId, summary -> summary.getUpdatedAtMillis() >= since));
+        return () -> {
+        };
+    }
+
+    /// listen to the carts of a specific user being added and removed </br>
+    /// by default the current summaries are reported once and later changes are not reported
+    /// @param uid the id of the user to listen to the carts of
+    /// @param listener the listener to call with the cart summaries
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    default Subscription observeUserCartSummaries(@NonNull String uid, @NonNull ChildListener<CartSummary> listener) {
+        getUserCartSummaryList(uid, observeFromList(listener, CartSummary::getId));
+        return () -> {
+        };
+    }
+
+    /// the summaries of the carts of a specific user as Flow publishers of the whole list and of its changes </br>
+    /// by default every call creates a new publisher over observeUserCartSummaries
+    /// @param uid the id of the user to publish the carts of
+    /// @see CollectionPublisher
+    default CollectionPublisher<CartSummary> publishUserCarts(@NonNull String uid) {
+        return new CollectionPublisher<>(listener -> observeUserCartSummaries(uid, listener));
+    }
+
+    // endregion cart section
+
+    // region counters
+
+    /// get the number of users </br>
+    /// by default the whole list is read to count it
+    /// @param callback the callback to call with the number of users
+    default void getUserCount(@NonNull DatabaseCallback<Long> callback) {
+        getUserList(countOfList(callback));
+    }
+
+    /// get the number of foods </br>
+    /// by default the whole list is read to count it
+    /// @param callback the callback to call with the number of foods
+    default void getFoodCount(@NonNull DatabaseCallback<Long> callback) {
+        getFoodList(countOfList(callback));
+    }
+
+    /// get the number of carts </br>
+    /// by default the whole list of summaries is read to count it
+    /// @param callback the callback to call with the number of carts
+    default void getCartCount(@NonNull DatabaseCallback<Long> callback) {
+        getCartSummaryList(countOfList(callback));
+    }
+
+    /// get the number of carts of a user </br>
+    /// by default the summaries of the carts of the user are read to count them
+    /// @param uid the id of the user
+    /// @param callback the callback to call with the number of carts of the user
+    default void getUserCartCount(@NonNull String uid, @NonNull DatabaseCallback<Long> callback) {
+        getUserCartSummaryList(uid, countOfList(callback));
+    }
+
+    /// fix the counters that drifted from the real number of records </br>
+    /// by default the counters are counted from the lists, so they never drift
+    /// @param callback the callback to call with the number of counters that were fixed
+    default void reconcileCounters(@Nullable DatabaseCallback<Integer> callback) {
+        if (callback != null) {
+            callback.onCompleted(0);
+        }
+    }
+
+    // endregion counters
+
+    // region migrations
+    // every migration can run more than once, and by default there is nothing to migrate
+
+    /// build the email index for the users that were created before it existed
+    /// @param callback the callback to call with the number of users that were indexed
+    default void migrateUsersByEmailIndex(@Nullable DatabaseCallback<Integer> callback) {
+        if (callback != null) {
+            callback.onCompleted(0);
+        }
+    }
+
+    /// move the images of the foods that were saved inside the foods to their own path
+    /// @param callback the callback to call with the number of images that were moved
+    default void migrateFoodImages(@Nullable DatabaseCallback<Integer> callback) {
+        if (callback != null) {
+            callback.onCompleted(0);
+        }
+    }
+
+    /// build the user carts index for the carts that were created before it existed
+    /// @param callback the callback to call with the number of carts that were indexed
+    default void migrateUserCartsIndex(@Nullable DatabaseCallback<Integer> callback) {
+        if (callback != null) {
+            callback.onCompleted(0);
+        }
+    }
+
+    /// rewrite the carts that were saved with a copy of the food for every unit as cart lines
+    /// @param callback the callback to call with the number of carts that were rewritten
+    default void migrateCartItems(@Nullable DatabaseCallback<Integer> callback) {
+        if (callback != null) {
+            callback.onCompleted(0);
+        }
+    }
+
+    /// write the summaries of the carts that were created before the summaries existed
+    /// @param callback the callback to call with the number of summaries that were written
+    default void migrateCartSummaries(@Nullable DatabaseCallback<Integer> callback) {
+        if (callback != null) {
+            callback.onCompleted(0);
+        }
+    }
+
+    // endregion migrations
+
+    /// adapt a count callback to a list callback, counting the items of the list
+    private static <T> DatabaseCallback<List<T>> countOfList(@NonNull final DatabaseCallback<Long> callback) {
+        return new DatabaseCallback<List<T>>() {
+            @Override
+            public void onCompleted(List<T> list) {
+                callback.onCompleted((long) list.size());
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        };
+    }
+
+    /// adapt a stream callback to a list callback, splitting the list into batches
+    private static <T> DatabaseCallback<List<T>> streamFromList(final int batchSize, @NonNull final DatabaseStreamCallback<T> callback) {
+        return new DatabaseCallback<List<T>>() {
+            @Override
+            public void onCompleted(List<T> list) {
+                for (int start = 0; start < list.size(); start += batchSize) {
+                    List<T> batch = list.subList(start, Math.min(start + batchSize, list.size()));
+                    for (T t : batch) {
+                        callback.onItem(t);
+                    }
+                    callback.onBatch(batch);
+                }
+                callback.onComplete(list.size());
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        };
+    }
+
+    /// adapt a child listener to a list callback, reporting every item of the list as added
+    private static <T> DatabaseCallback<List<T>> observeFromList(@NonNull final ChildListener<T> listener, @NonNull final Function<T, String> keyOf) {
+        return observeFromList(listener, keyOf, t -> true);
+    }
+
+    /// adapt a child listener to a list callback, reporting the items of the list that match a filter as added
+    private static <T> DatabaseCallback<List<T>> observeFromList(@NonNull final ChildListener<T> listener, @NonNull final Function<T, String> keyOf, @NonNull final Predicate<T> filter) {
+        return new DatabaseCallback<List<T>>() {
+            @Override
+            public void onCompleted(List<T> list) {
+                for (T t : list) {
+                    if (!filter.test(t)) continue;
+                    listener.onChildAdded(keyOf.apply(t), t);
+                }
+                listener.onLoaded();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                listener.onFailed(e);
+            }
+        };
+    }
+}
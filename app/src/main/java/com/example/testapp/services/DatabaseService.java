@@ -1,33 +1,64 @@
 package com.example.testapp.services;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartSummary;
 import com.example.testapp.models.Food;
 import com.example.testapp.models.User;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseException;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ServerValue;
 import com.google.firebase.database.Transaction;
+import com.google.firebase.database.ValueEventListener;
+import com.google.gson.Gson;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 
 /// a service to interact with the Firebase Realtime Database.
 /// this class is a singleton, use getInstance() to get an instance of this class
+/// this is the Firebase backend of DatabaseRepository
 /// @see #getInstance()
+/// @see DatabaseRepository
 /// @see FirebaseDatabase
-public class DatabaseService {
+public class DatabaseService implements DatabaseRepository {
 
     /// tag for logging
     /// @see Log
@@ -39,6 +70,63 @@ public class DatabaseService {
                                 FOODS_PATH = "foods",
                                 CARTS_PATH = "carts";
 
+    /// path of the email index, maps an encoded email to the id of the user that owns it </br>
+    /// the database rules (database.rules.json) don't let an entry move to another user, it has to be deleted first
+    /// @see #encodeEmailKey(String)
+    private static final String USERS_BY_EMAIL_PATH = "usersByEmail";
+
+    /// path of the migrations that already ran, migrations/{name} is true after the migration of that name ran once
+    /// @see #migrateUsersByEmailIndex(DatabaseCallback)
+    private static final String MIGRATIONS_PATH = "migrations";
+
+    /// path of the user carts index, userCarts/{uid}/{cartId} is set for every cart a user owns
+    private static final String USER_CARTS_PATH = "userCarts";
+
+    /// path of the food images, foodImages/{foodId} is the base64 image of the food </br>
+    /// the images are kept out of foods/ so reading the food list doesn't download every image
+    /// @see #getFoodImage(String, DatabaseCallback)
+    private static final String FOOD_IMAGES_PATH = "foodImages";
+
+    /// path of the cart summaries, cartSummaries/{cartId} is written together with every cart </br>
+    /// the lists of carts read only the summaries, and listen to them by updatedAt,
+    /// the database rules (database.rules.json) have ".indexOn": "updatedAt" on it
+    /// @see CartSummary
+    private static final String CART_SUMMARIES_PATH = "cartSummaries";
+
+    /// path of the tombstones, tombstones/{path}/{id} is the server time a record of a collection was deleted </br>
+    /// the syncs read the tombstones to remove the deleted records from their local copy,
+    /// the database rules (database.rules.json) have ".indexOn": ".value" on every tombstones/{path}, and ".indexOn": "updatedAt" on the collections
+    /// @see #syncSince(String, long, Class, DatabaseCallback)
+    private static final String TOMBSTONES_PATH = "tombstones";
+
+    /// path of the difference between the clock of the device and the clock of the server, kept by the client
+    /// @see #getServerTime(DatabaseCallback)
+    private static final String SERVER_TIME_OFFSET_PATH = ".info/serverTimeOffset";
+
+    /// how long before their time the changes of a collection are listened to </br>
+    /// the time that the lists take is an estimate of the clock of the server, the changes in this margin are reported again
+    /// @see #observeSince(String, long, Class, ChildListener)
+    private static final long SERVER_TIME_MARGIN_MILLIS = 60_000;
+
+    /// how much older than the time of a screen the time of a shared publisher of changes may be
+    /// @see #publisherSince(String, long, LongFunction)
+    private static final long SHARED_CHECKPOINT_MILLIS = 5 * 60_000;
+
+    /// path of the counters, stats/{counter}/{shard} is a part of the count </br>
+    /// a counter is split into shards so concurrent writes rarely change the same node,
+    /// every write adds to a random shard and the value of the counter is the sum of its shards
+    /// @see #getCounter(String, DatabaseCallback)
+    private static final String STATS_PATH = "stats";
+
+    /// the counters, stats/userCartCount/{uid} is the number of carts of a user
+    private static final String USER_COUNT = "userCount",
+                                FOOD_COUNT = "foodCount",
+                                CART_COUNT = "cartCount",
+                                USER_CART_COUNT = "userCartCount";
+
+    /// the number of shards of every counter
+    private static final int COUNTER_SHARDS = 8;
+
     /// callback interface for database operations
     /// @param <T> the type of the object to return
     /// @see DatabaseCallback#onCompleted(Object)
@@ -51,6 +139,56 @@ public class DatabaseService {
         public void onFailed(Exception e);
     }
 
+    /// callback interface for reading a list in parts </br>
+    /// the items are converted in batches, and every batch is delivered on the main thread as soon as it is ready
+    /// @param <T> the type of the objects in the list
+    /// @see #streamFoodList(int, DatabaseStreamCallback)
+    public interface DatabaseStreamCallback<T> {
+        /// called for every item, in order, just before the batch that contains it is delivered
+        public default void onItem(T object) {
+        }
+
+        /// called with every batch of items, in order
+        public default void onBatch(List<T> objects) {
+        }
+
+        /// called after the last batch
+        /// @param count the total number of items that were delivered
+        public void onComplete(int count);
+
+        /// called when the operation fails with an exception, no more batches will be delivered
+        public void onFailed(Exception e);
+    }
+
+    /// listener for the changes in a list of data in the database
+    /// @param <T> the type of the objects in the list
+    /// @see #observeUsers(long, ChildListener)
+    public interface ChildListener<T> {
+        /// called for every child that exists when listening starts, and for every child added later
+        public void onChildAdded(String key, T object);
+
+        /// called when a child changes
+        public void onChildChanged(String key, T object);
+
+        /// called when a child is removed, with its last value
+        public void onChildRemoved(String key, T object);
+
+        /// called once, after the children that existed when listening started were all reported to onChildAdded,
+        /// also when there were no children
+        public default void onLoaded() {
+        }
+
+        /// called when listening fails, no more changes will be received
+        public void onFailed(Exception e);
+    }
+
+    /// handle of a listener that was added with one of the observe methods
+    /// @see #observeUsers(long, ChildListener)
+    public interface Subscription {
+        /// stop receiving changes
+        public void unsubscribe();
+    }
+
     /// the instance of this class
     /// @see #getInstance()
     private static DatabaseService instance;
@@ -60,6 +198,73 @@ public class DatabaseService {
     /// @see FirebaseDatabase#getReference()
     private final DatabaseReference databaseReference;
 
+    /// the cache of data that was read from or written to the database
+    /// @see DatabaseCache
+    private final DatabaseCache cache = new DatabaseCache();
+
+    /// the listeners that are attached to the database, by path
+    /// @see SharedChildListener
+    private final Map<String, SharedChildListener<?>> childListeners = new HashMap<>();
+
+    /// the Flow publishers of the lists, by path, so all the subscribers of a list share one publisher
+    /// @see #publisher(String, CollectionPublisher.Source)
+    private final Map<String, CollectionPublisher<?>> publishers = new HashMap<>();
+
+    /// the times the shared publishers of changes listen from, by path
+    /// @see #publisherSince(String, long, LongFunction)
+    private final Map<String, Long> publisherCheckpoints = new HashMap<>();
+
+    /// the reads that were sent and didn't complete yet, by path (or query)
+    /// @see #fetch(String, Query)
+    private final Map<String, Task<DataSnapshot>> inFlightReads = new HashMap<>();
+
+    /// the number of threads that convert snapshots to model objects
+    private static final int MAPPING_THREADS = 2;
+
+    /// the threads that convert snapshots to model objects, so the main thread doesn't do the mapping
+    /// @see #mapSnapshot(Task, MetricsRegistry.Sample, boolean, Function, Supplier, DatabaseCallback)
+    private final ExecutorService mappingExecutor = Executors.newFixedThreadPool(MAPPING_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "DatabaseService-mapping");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    /// handler to deliver the results on the main thread
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /// the latencies, sizes and failures of the reads and the writes
+    /// @see MetricsRegistry
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+    /// converts the written objects to JSON, only to estimate their size for the metrics
+    /// @see #estimateSize(Object)
+    private static final Gson gson = new Gson();
+
+    /// decides when the reads start, by their priority
+    /// @see #withPriority(RequestScheduler.Priority, Runnable)
+    private final RequestScheduler scheduler = new RequestScheduler();
+
+    /// a copy of the last version of every user that was read or written, by id </br>
+    /// an update of a user only writes the fields that are different from this copy
+    /// @see #updateUser(User, DatabaseCallback)
+    private final Map<String, User> lastKnownUsers = new HashMap<>();
+
+    /// the migration of the email index that is running, the lookups that need it wait for the same migration
+    /// @see #ensureEmailIndex(DatabaseCallback)
+    @Nullable
+    private Task<Integer> emailIndexMigration;
+
+    /// the local copy of the foods, the first stream of the foods fills it and the next ones sync only the changes into it
+    /// @see #streamFoodList(int, DatabaseStreamCallback)
+    private final SyncStore<Food> foodStore = new SyncStore<>();
+
+    /// the priority of the reads that the current thread starts
+    private static final ThreadLocal<RequestScheduler.Priority> currentPriority = ThreadLocal.withInitial(() -> RequestScheduler.Priority.NORMAL);
+
+    /// the retries and the circuit breakers of the reads and the writes
+    /// @see #setResiliencePolicy(Resilience.Policy)
+    private Resilience resilience = new Resilience(Resilience.Policy.DEFAULT);
+
     /// use getInstance() to get an instance of this class
     /// @see DatabaseService#getInstance()
     private DatabaseService() {
@@ -87,15 +292,26 @@ public class DatabaseService {
     /// @param callback the callback to call when the operation is completed
     /// @see DatabaseCallback
     private void writeData(@NotNull final String path, @NotNull final Object data, final @Nullable DatabaseCallback<Void> callback) {
-        readData(path).setValue(data, (error, ref) -> {
-            if (error != null) {
-                if (callback == null) return;
-                callback.onFailed(error.toException());
-            } else {
+        final MetricsRegistry.Sample sample = metrics.start("write", path);
+        /// setting a value is idempotent, so it is safe to retry
+        resilience.write(path, true, attempt -> readData(path).setValue(data, (error, ref) -> completeWrite(error, attempt)), new DatabaseCallback<Void>() {
+            @Override
+            public void onCompleted(Void object) {
+                sample.finish(0, estimateSize(data));
+                cache.invalidate(path);
+                cache.put(path, data, data.getClass());
                 if (callback == null) return;
                 callback.onCompleted(null);
-        }
-    });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                sample.fail();
+                cache.invalidate(path);
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
     }
 
     /// remove data from the database at a specific path
@@ -103,15 +319,130 @@ public class DatabaseService {
     /// @param callback the callback to call when the operation is completed
     /// @see DatabaseCallback
     private void deleteData(@NotNull final String path, @Nullable final DatabaseCallback<Void> callback) {
-        readData(path).removeValue((error, ref) -> {
-            if (error != null) {
+        final MetricsRegistry.Sample sample = metrics.start("delete", path);
+        resilience.write(path, true, attempt -> readData(path).removeValue((error, ref) -> completeWrite(error, attempt)), new DatabaseCallback<Void>() {
+            @Override
+            public void onCompleted(Void object) {
+                sample.finish(0, 0);
+                cache.invalidate(path);
                 if (callback == null) return;
-                callback.onFailed(error.toException());
-            } else {
+                callback.onCompleted(null);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                sample.fail();
+                cache.invalidate(path);
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// write several paths to the database in a single atomic multi-path update </br>
+    /// a null value removes the data at that path
+    /// @param updates a map of paths (relative to the root) to the data to write
+    /// @param callback the callback to call when the operation is completed
+    /// @see DatabaseReference#updateChildren(Map, DatabaseReference.CompletionListener)
+    private void updateData(@NotNull final Map<String, Object> updates, @Nullable final DatabaseCallback<Void> callback) {
+        /// the update is retried under the path of its first entry, the paths of a batch are usually under the same top level path
+        final String retryPath = updates.isEmpty() ? "" : updates.keySet().iterator().next();
+        final MetricsRegistry.Sample sample = metrics.start("update", retryPath);
+        resilience.write(retryPath, isIdempotent(updates), attempt -> databaseReference.updateChildren(updates, (error, ref) -> completeWrite(error, attempt)), new DatabaseCallback<Void>() {
+            @Override
+            public void onCompleted(Void object) {
+                sample.finish(updates.size(), estimateSize(updates));
+                for (String path : updates.keySet()) {
+                    cache.invalidate(path);
+                }
+                for (Map.Entry<String, Object> update : updates.entrySet()) {
+                    /// the value of a server value (a timestamp or an increment) is only known to the server
+                    if (update.getValue() != null && !isServerValue(update.getValue())) {
+                        cache.put(update.getKey(), update.getValue(), update.getValue().getClass());
+                    }
+                }
                 if (callback == null) return;
                 callback.onCompleted(null);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                sample.fail();
+                for (String path : updates.keySet()) {
+                    cache.invalidate(path);
+                }
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// check if writing the updates twice has the same result as writing them once </br>
+    /// server increments (ServerValue#increment) add again every time they are written, so they are not retried
+    /// @param updates the paths to write and their values
+    /// @return false if one of the values is a server increment
+    private static boolean isIdempotent(@NotNull final Map<String, Object> updates) {
+        for (Object value : updates.values()) {
+            if (value instanceof Map && ((Map<?, ?>) value).get(".sv") instanceof Map) {
+                return false;
+            }
         }
-    });
+        return true;
+    }
+
+    /// check if a value is replaced by the server when it is written, like ServerValue#TIMESTAMP
+    private static boolean isServerValue(@Nullable final Object value) {
+        return value instanceof Map && ((Map<?, ?>) value).containsKey(".sv");
+    }
+
+    /// complete an attempt of a write with its error </br>
+    /// errors of the connection are reported as IOExceptions, so the write is retried
+    /// @param error the error of the write, null if it succeeded
+    /// @param attempt the callback of the attempt
+    /// @see Resilience#isTransient(Exception)
+    private static void completeWrite(@Nullable final DatabaseError error, @NotNull final DatabaseCallback<Void> attempt) {
+        if (error == null) {
+            attempt.onCompleted(null);
+            return;
+        }
+        switch (error.getCode()) {
+            case DatabaseError.DISCONNECTED:
+            case DatabaseError.NETWORK_ERROR:
+            case DatabaseError.UNAVAILABLE:
+            case DatabaseError.MAX_RETRIES:
+            case DatabaseError.WRITE_CANCELED:
+                attempt.onFailed(new IOException(error.getMessage(), error.toException()));
+                break;
+            default:
+                attempt.onFailed(error.toException());
+                break;
+        }
+    }
+
+    /// the messages of the errors of the connection, the failed reads report them without their error code
+    private static final List<String> CONNECTION_ERROR_MESSAGES = Arrays.asList(
+            DatabaseError.fromCode(DatabaseError.DISCONNECTED).getMessage(),
+            DatabaseError.fromCode(DatabaseError.NETWORK_ERROR).getMessage(),
+            DatabaseError.fromCode(DatabaseError.UNAVAILABLE).getMessage());
+
+    /// the failure of a read as the resilience layer sees it </br>
+    /// the failed reads don't have an error code, so the errors of the connection are found by their message
+    /// (or the client being offline) and reported as IOExceptions so the read is retried.
+    /// the other errors, like permissions and invalid queries, are reported as they are and not retried
+    /// @param e the exception of the failed read
+    /// @see Resilience#isTransient(Exception)
+    private static Exception toReadFailure(@Nullable final Exception e) {
+        if (e == null) {
+            return new IOException("Read failed");
+        }
+        if (!(e instanceof DatabaseException) || e.getMessage() == null) {
+            return e;
+        }
+        if (CONNECTION_ERROR_MESSAGES.contains(e.getMessage())
+                || e.getMessage().toLowerCase(Locale.ROOT).contains("offline")) {
+            return new IOException(e.getMessage(), e);
+        }
+        return e;
     }
 
     /// read data from the database at a specific path
@@ -124,42 +455,413 @@ public class DatabaseService {
     }
 
 
+    /// read a path (or query) once from the database </br>
+    /// concurrent reads of the same key share one request: while a read is in flight,
+    /// the same pending task is returned and every caller gets its result
+    /// @param key the key to coalesce on, the path itself or a description of the query
+    /// @param query the query to read if no read of the key is in flight
+    /// @return the task that completes with the snapshot
+    /// @see Query#get()
+    private Task<DataSnapshot> fetch(@NotNull final String key, @NotNull final Query query) {
+        synchronized (inFlightReads) {
+            Task<DataSnapshot> pending = inFlightReads.get(key);
+            if (pending != null) {
+                Log.d(TAG, "Joining in-flight read of " + key);
+                return pending;
+            }
+            Task<DataSnapshot> task = readWithRetry(key, query);
+            inFlightReads.put(key, task);
+            task.addOnCompleteListener(t -> {
+                synchronized (inFlightReads) {
+                    inFlightReads.remove(key);
+                }
+            });
+            return task;
+        }
+    }
+
+    /// read a query once, with the retries and the circuit breaker of its path </br>
+    /// every attempt waits for its turn in the lane of the current priority
+    /// @param key the path of the query, or a description of the query that starts with the path
+    /// @param query the query to read
+    /// @return the task that completes with the snapshot, or with the last failure
+    /// @see Resilience#read(String, java.util.function.Consumer, DatabaseCallback)
+    /// @see RequestScheduler
+    private Task<DataSnapshot> readWithRetry(@NotNull final String key, @NotNull final Query query) {
+        final TaskCompletionSource<DataSnapshot> source = new TaskCompletionSource<>();
+        final RequestScheduler.Priority priority = currentPriority.get();
+        resilience.read(key, attempt -> scheduler.submit(priority, done -> query.get().addOnCompleteListener(t -> {
+            done.run();
+            if (t.isSuccessful()) {
+                attempt.onCompleted(t.getResult());
+            } else {
+                attempt.onFailed(toReadFailure(t.getException()));
+            }
+        })), new DatabaseCallback<DataSnapshot>() {
+            @Override
+            public void onCompleted(DataSnapshot snapshot) {
+                source.setResult(snapshot);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                source.setException(e);
+            }
+        });
+        return source.getTask();
+    }
+
+    /// read a path once from the database, sharing the request with concurrent reads of the same path
+    /// @see #fetch(String, Query)
+    private Task<DataSnapshot> fetch(@NotNull final String path) {
+        return fetch(path, readData(path));
+    }
+
+    /// convert the snapshot of a read to the result of the read and deliver it on the main thread </br>
+    /// the conversion (DataSnapshot#getValue) uses reflection and is slow for big objects such as carts with images,
+    /// so by default it runs on the mapping threads and only the finished result is posted to the main thread.
+    /// any exception of the conversion is delivered to onFailed
+    /// @see Mapping
+    /// @param task the read to convert the result of
+    /// @param sample the metrics sample of the read, finished with the number of children and the size of the snapshot
+    /// @param inBackground true to convert on the mapping threads, false to convert on the main thread (for small values)
+    /// @param mapper the function that converts the snapshot
+    /// @param stale gets the cached data to use if the database can't be reached, null if the read has no cached data
+    /// @param callback the callback to call on the main thread with the result
+    /// @see #mappingExecutor
+    /// @see #staleAfter(Exception, Supplier)
+    private <R> void mapSnapshot(@NotNull final Task<DataSnapshot> task, @NotNull final MetricsRegistry.Sample sample, final boolean inBackground, @NotNull final Function<DataSnapshot, R> mapper, @Nullable final Supplier<R> stale, @NotNull final DatabaseCallback<R> callback) {
+        OnCompleteListener<DataSnapshot> listener = t -> {
+            if (!t.isSuccessful()) {
+                final R cached = staleAfter(t.getException(), stale);
+                if (cached != null) {
+                    Log.w(TAG, "Using cached data after a failed read", t.getException());
+                    sample.servedStale();
+                    runOnMainThread(() -> callback.onCompleted(cached));
+                    return;
+                }
+                Log.e(TAG, "Error getting data", t.getException());
+                sample.fail();
+                runOnMainThread(() -> callback.onFailed(t.getException()));
+                return;
+            }
+            final Mapping<R> mapping = Mapping.apply(t.getResult(), mapper);
+            if (!mapping.isSuccessful()) {
+                Log.e(TAG, "Error converting data", mapping.getFailure());
+                sample.fail();
+                runOnMainThread(() -> callback.onFailed(mapping.getFailure()));
+                return;
+            }
+            sample.finish(t.getResult().getChildrenCount(), estimateSize(t.getResult()));
+            runOnMainThread(() -> callback.onCompleted(mapping.getResult()));
+        };
+        if (inBackground) {
+            task.addOnCompleteListener(mappingExecutor, listener);
+        } else {
+            task.addOnCompleteListener(listener);
+        }
+    }
+
+    /// the approximate size of the data of a snapshot in bytes, the length of the keys and the values without the JSON punctuation
+    /// @param snapshot the snapshot to measure
+    /// @see MetricsRegistry
+    private static long estimateSize(@NotNull final DataSnapshot snapshot) {
+        if (!snapshot.hasChildren()) {
+            return estimateSize(snapshot.getValue());
+        }
+        long size = 0;
+        for (DataSnapshot child : snapshot.getChildren()) {
+            size += (child.getKey() != null ? child.getKey().length() : 0) + estimateSize(child);
+        }
+        return size;
+    }
+
+    /// the approximate size of data that is written in bytes </br>
+    /// model objects are converted to JSON to measure them
+    /// @param value the value to measure, a model object, a map of updates or a plain value
+    private static long estimateSize(@Nullable final Object value) {
+        if (value == null) return 0;
+        if (value instanceof String) return ((String) value).length();
+        if (value instanceof Number || value instanceof Boolean) return 8;
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 0;
+            for (Object item : (Collection<?>) value) {
+                size += estimateSize(item);
+            }
+            return size;
+        }
+        return gson.toJson(value).length();
+    }
+
+    /// run an action on the main thread, directly if already on it
+    /// @param action the action to run
+    private void runOnMainThread(@NotNull final Runnable action) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            action.run();
+        } else {
+            mainHandler.post(action);
+        }
+    }
+
+    /// the cached data to use, even if it expired, when a read fails because the database can't be reached </br>
+    /// this is what the reads of a path get while its circuit is open
+    /// @param e the failure of the read
+    /// @param stale gets the cached data, or null if there is none, null for the reads without cached data
+    /// @return the cached data, or null if the read fails
+    /// @see DatabaseCache#getStale(String, Class)
+    @Nullable
+    private static <T> T staleAfter(@Nullable final Exception e, @Nullable final Supplier<T> stale) {
+        if (stale == null || !(e instanceof Resilience.CircuitOpenException || (e != null && Resilience.isTransient(e)))) {
+            return null;
+        }
+        return stale.get();
+    }
+
     /// get data from the database at a specific path
+    /// the data is converted on the mapping threads
     /// @param path the path to get the data from
     /// @param clazz the class of the object to return
     /// @param callback the callback to call when the operation is completed
     /// @see DatabaseCallback
     /// @see Class
     private <T> void getData(@NotNull final String path, @NotNull final Class<T> clazz, @NotNull final DatabaseCallback<T> callback) {
-        readData(path).get().addOnCompleteListener(task -> {
-            if (!task.isSuccessful()) {
-                Log.e(TAG, "Error getting data", task.getException());
-                callback.onFailed(task.getException());
-                return;
-            }
-            T data = task.getResult().getValue(clazz);
-            callback.onCompleted(data);
-        });
+        getData(path, clazz, true, callback);
+    }
+
+    /// get data from the database at a specific path
+    /// @param path the path to get the data from
+    /// @param clazz the class of the object to return
+    /// @param inBackground true to convert the data on the mapping threads, false for small values that are cheaper to convert on the main thread
+    /// @param callback the callback to call when the operation is completed
+    /// @see #mapSnapshot(Task, MetricsRegistry.Sample, boolean, Function, Supplier, DatabaseCallback)
+    private <T> void getData(@NotNull final String path, @NotNull final Class<T> clazz, final boolean inBackground, @NotNull final DatabaseCallback<T> callback) {
+        T cached = cache.get(path, clazz);
+        if (cached != null) {
+            metrics.recordCacheHit("get", path);
+            callback.onCompleted(cached);
+            return;
+        }
+        mapSnapshot(fetch(path), metrics.start("get", path), inBackground, snapshot -> {
+            T data = snapshot.getValue(clazz);
+            cache.put(path, data, clazz);
+            return data;
+        }, () -> cache.getStale(path, clazz), callback);
     }
 
     /// get a list of data from the database at a specific path
+    /// the data is converted on the mapping threads
     /// @param path the path to get the data from
     /// @param clazz the class of the objects to return
     /// @param callback the callback to call when the operation is completed
+    @SuppressWarnings("unchecked")
     private <T> void getDataList(@NotNull final String path, @NotNull final Class<T> clazz, @NotNull final DatabaseCallback<List<T>> callback) {
-        readData(path).get().addOnCompleteListener(task -> {
+        List<T> cached = cache.get(path, List.class);
+        if (cached != null) {
+            metrics.recordCacheHit("list", path);
+            callback.onCompleted(cached);
+            return;
+        }
+        mapSnapshot(fetch(path), metrics.start("list", path), true, snapshot -> {
+            List<T> tList = new ArrayList<>();
+            for (DataSnapshot dataSnapshot : snapshot.getChildren()) {
+                T t = dataSnapshot.getValue(clazz);
+                tList.add(t);
+                cache.put(path + "/" + dataSnapshot.getKey(), t, clazz);
+            }
+            cache.put(path, tList, clazz);
+            return tList;
+        }, () -> cache.getStale(path, List.class), callback);
+    }
+
+    /// get a page of a list of data from the database at a specific path, ordered by key
+    /// the data is converted on the mapping threads
+    /// @param path the path to get the data from
+    /// @param clazz the class of the objects to return
+    /// @param afterKey the key to start after, null to get the first page
+    /// @param pageSize the maximum number of items in the page
+    /// @param callback the callback to call when the operation is completed
+    /// @see Page
+    private <T> void getDataPage(@NotNull final String path, @NotNull final Class<T> clazz, @Nullable final String afterKey, final int pageSize, @NotNull final DatabaseCallback<Page<T>> callback) {
+        Query query = readData(path).orderByKey();
+        if (afterKey != null) {
+            query = query.startAfter(afterKey);
+        }
+        /// one extra item is read to know if there is a next page
+        Task<DataSnapshot> task = fetch(path + "?startAfter=" + afterKey + "&limitToFirst=" + (pageSize + 1), query.limitToFirst(pageSize + 1));
+        mapSnapshot(task, metrics.start("page", path), true, snapshot -> {
+            List<T> tList = new ArrayList<>();
+            String lastKey = null;
+            boolean hasMore = false;
+            for (DataSnapshot dataSnapshot : snapshot.getChildren()) {
+                if (tList.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+                T t = dataSnapshot.getValue(clazz);
+                tList.add(t);
+                lastKey = dataSnapshot.getKey();
+                cache.put(path + "/" + lastKey, t, clazz);
+            }
+            return new Page<>(tList, hasMore ? lastKey : null);
+        }, null, callback);
+    }
+
+    /// get a list of data from the database at a specific path, delivered in batches </br>
+    /// the children are converted on the mapping threads, and every full batch is posted to the main thread
+    /// while the rest is still being converted, so the first rows can be shown early
+    /// @param path the path to get the data from
+    /// @param clazz the class of the objects to return
+    /// @param batchSize the number of items in each batch
+    /// @param callback the callback to call with every batch
+    /// @see DatabaseStreamCallback
+    @SuppressWarnings("unchecked")
+    private <T> void getDataListStream(@NotNull final String path, @NotNull final Class<T> clazz, final int batchSize, @NotNull final DatabaseStreamCallback<T> callback) {
+        List<T> cached = cache.get(path, List.class);
+        if (cached != null) {
+            metrics.recordCacheHit("stream", path);
+            deliverBatch(cached, callback);
+            callback.onComplete(cached.size());
+            return;
+        }
+        final MetricsRegistry.Sample sample = metrics.start("stream", path);
+        fetch(path).addOnCompleteListener(mappingExecutor, task -> {
             if (!task.isSuccessful()) {
                 Log.e(TAG, "Error getting data", task.getException());
-                callback.onFailed(task.getException());
+                sample.fail();
+                runOnMainThread(() -> callback.onFailed(task.getException()));
                 return;
             }
             List<T> tList = new ArrayList<>();
-            task.getResult().getChildren().forEach(dataSnapshot -> {
-                T t = dataSnapshot.getValue(clazz);
-                tList.add(t);
+            List<T> batch = new ArrayList<>(batchSize);
+            try {
+                for (DataSnapshot dataSnapshot : task.getResult().getChildren()) {
+                    T t = dataSnapshot.getValue(clazz);
+                    tList.add(t);
+                    batch.add(t);
+                    cache.put(path + "/" + dataSnapshot.getKey(), t, clazz);
+                    if (batch.size() == batchSize) {
+                        final List<T> fullBatch = batch;
+                        runOnMainThread(() -> deliverBatch(fullBatch, callback));
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error converting data", e);
+                sample.fail();
+                runOnMainThread(() -> callback.onFailed(e));
+                return;
+            }
+            sample.finish(task.getResult().getChildrenCount(), estimateSize(task.getResult()));
+            final List<T> lastBatch = batch;
+            cache.put(path, tList, clazz);
+            runOnMainThread(() -> {
+                if (!lastBatch.isEmpty()) {
+                    deliverBatch(lastBatch, callback);
+                }
+                callback.onComplete(tList.size());
+            });
+        });
+    }
+
+    /// deliver a batch of items to a stream callback
+    private <T> void deliverBatch(@NotNull final List<T> batch, @NotNull final DatabaseStreamCallback<T> callback) {
+        for (T t : batch) {
+            callback.onItem(t);
+        }
+        callback.onBatch(batch);
+    }
+
+    /// get the keys of the children at a specific path, without their values
+    /// used to read index nodes such as userCarts/{uid}, the keys are read on the main thread
+    /// @param path the path to get the keys from
+    /// @param callback the callback to call when the operation is completed
+    @SuppressWarnings("unchecked")
+    private void getKeys(@NotNull final String path, @NotNull final DatabaseCallback<List<String>> callback) {
+        List<String> cached = cache.get(path, List.class);
+        if (cached != null) {
+            metrics.recordCacheHit("keys", path);
+            callback.onCompleted(cached);
+            return;
+        }
+        mapSnapshot(fetch(path), metrics.start("keys", path), false, snapshot -> {
+            List<String> keys = new ArrayList<>();
+            for (DataSnapshot dataSnapshot : snapshot.getChildren()) {
+                keys.add(dataSnapshot.getKey());
+            }
+            cache.put(path, keys, String.class);
+            return keys;
+        }, () -> cache.getStale(path, List.class), callback);
+    }
+
+    /// get the data of several children of a path in parallel </br>
+    /// the results are in the same order as the ids, missing children are skipped
+    /// @param path the parent path of the children
+    /// @param ids the keys of the children to get
+    /// @param clazz the class of the objects to return
+    /// @param callback the callback to call when all the children were read, or when the first read fails
+    private <T> void getDataByIds(@NotNull final String path, @NotNull final List<String> ids, @NotNull final Class<T> clazz, @NotNull final DatabaseCallback<List<T>> callback) {
+        if (ids.isEmpty()) {
+            callback.onCompleted(new ArrayList<>());
+            return;
+        }
+        final List<T> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            results.add(null);
+        }
+        final int[] remaining = {ids.size()};
+        final boolean[] failed = {false};
+        for (int i = 0; i < ids.size(); i++) {
+            final int index = i;
+            getData(path + "/" + ids.get(i), clazz, new DatabaseCallback<T>() {
+                @Override
+                public void onCompleted(T object) {
+                    if (failed[0]) return;
+                    results.set(index, object);
+                    if (--remaining[0] == 0) {
+                        results.removeIf(Objects::isNull);
+                        callback.onCompleted(results);
+                    }
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    if (failed[0]) return;
+                    failed[0] = true;
+                    callback.onFailed(e);
+                }
             });
+        }
+    }
 
-            callback.onCompleted(tList);
+    /// find which records of a collection already exist </br>
+    /// only the id field of every record is read, in parallel, so the records themselves are not downloaded
+    /// @param path the path of the collection
+    /// @param ids the ids of the records
+    /// @param callback the callback to call with the ids of the records that exist
+    private void getExistingIds(@NotNull final String path, @NotNull final Collection<String> ids, @NotNull final DatabaseCallback<Set<String>> callback) {
+        final Map<String, Task<DataSnapshot>> reads = new LinkedHashMap<>();
+        for (String id : ids) {
+            reads.put(id, fetch(path + "/" + id + "/id"));
+        }
+        Tasks.whenAllComplete(reads.values()).addOnCompleteListener(t -> {
+            Set<String> existing = new HashSet<>();
+            for (Map.Entry<String, Task<DataSnapshot>> read : reads.entrySet()) {
+                if (!read.getValue().isSuccessful()) {
+                    callback.onFailed(read.getValue().getException());
+                    return;
+                }
+                if (read.getValue().getResult().exists()) {
+                    existing.add(read.getKey());
+                }
+            }
+            callback.onCompleted(existing);
         });
     }
 
@@ -180,8 +882,11 @@ public class DatabaseService {
     /// @param clazz the class of the object to return
     /// @param function the function to apply to the current value of the data
     /// @param callback the callback to call when the operation is completed
+    /// transactions are not retried on failures, the function depends on the current value,
+    /// and Firebase already runs it again when the value changed under it
     /// @see DatabaseReference#runTransaction(Transaction.Handler)
     private <T> void runTransaction(@NotNull final String path, @NotNull final Class<T> clazz, @NotNull UnaryOperator<T> function, @NotNull final DatabaseCallback<T> callback) {
+        final MetricsRegistry.Sample sample = metrics.start("transaction", path);
         readData(path).runTransaction(new Transaction.Handler() {
             @NonNull
             @Override
@@ -198,12 +903,16 @@ public class DatabaseService {
 
             @Override
             public void onComplete(@Nullable DatabaseError error, boolean committed, @Nullable DataSnapshot currentData) {
+                cache.invalidate(path);
                 if (error != null) {
                     Log.e(TAG, "Transaction failed", error.toException());
+                    sample.fail();
                     callback.onFailed(error.toException());
                     return;
                 }
                 T result = currentData != null ? currentData.getValue(clazz) : null;
+                sample.finish(0, currentData != null ? estimateSize(currentData) : 0);
+                cache.put(path, result, clazz);
                 callback.onCompleted(result);
             }
         });
@@ -212,127 +921,1610 @@ public class DatabaseService {
 
     // endregion of private methods for reading and writing data
 
-    // public methods to interact with the database
-
-    // region User Section
+    // region cache
 
-    /// generate a new id for a new user in the database
-    /// @return a new id for the user
-    /// @see #generateNewId(String)
-    /// @see User
-    public String generateUserId() {
-        return generateNewId(USERS_PATH);
+    /// get the number of reads that were answered from the cache
+    /// @return the number of cache hits since the app started
+    /// @see DatabaseCache
+    public long getCacheHitCount() {
+        return cache.getHitCount();
     }
 
-    /// create a new user in the database
-    /// @param user the user object to create
-    /// @param callback the callback to call when the operation is completed
-    ///              the callback will receive void
-    ///            if the operation fails, the callback will receive an exception
-    /// @see DatabaseCallback
-    /// @see User
-    public void createNewUser(@NotNull final User user, @Nullable final DatabaseCallback<Void> callback) {
-        writeData(USERS_PATH + "/" + user.getId(), user, callback);
+    /// get the number of reads that had to go to the database
+    /// @return the number of cache misses since the app started
+    /// @see DatabaseCache
+    public long getCacheMissCount() {
+        return cache.getMissCount();
     }
 
-    /// get a user from the database
-    /// @param uid the id of the user to get
-    /// @param callback the callback to call when the operation is completed
-    ///               the callback will receive the user object
-    ///             if the operation fails, the callback will receive an exception
-    /// @see DatabaseCallback
-    /// @see User
-    public void getUser(@NotNull final String uid, @NotNull final DatabaseCallback<User> callback) {
-        getData(USERS_PATH + "/" + uid, User.class, callback);
+    /// remove all the cached data, the next reads will go to the database
+    public void clearCache() {
+        cache.clear();
+        foodStore.clear();
     }
 
-    /// get all the users from the database
-    /// @param callback the callback to call when the operation is completed
-    ///              the callback will receive a list of user objects
-    ///            if the operation fails, the callback will receive an exception
-    /// @see DatabaseCallback
-    /// @see List
-    /// @see User
-    public void getUserList(@NotNull final DatabaseCallback<List<User>> callback) {
-        getDataList(USERS_PATH, User.class, callback);
-    }
+    // endregion cache
 
-    /// delete a user from the database
-    /// @param uid the user id to delete
-    /// @param callback the callback to call when the operation is completed
-    public void deleteUser(@NotNull final String uid, @Nullable final DatabaseCallback<Void> callback) {
-        deleteData(USERS_PATH + "/" + uid, callback);
-    }
+    // region sync
 
-    /// get a user by email and password
-    /// @param email the email of the user
-    /// @param password the password of the user
-    /// @param callback the callback to call when the operation is completed
-    ///            the callback will receive the user object
-    ///          if the operation fails, the callback will receive an exception
-    /// @see DatabaseCallback
-    /// @see User
-    public void getUserByEmailAndPassword(@NotNull final String email, @NotNull final String password, @NotNull final DatabaseCallback<User> callback) {
-        getUserList(new DatabaseCallback<List<User>>() {
+    /// get the current time by the clock of the database server </br>
+    /// it is the time of the device with the offset that the client measured when it connected,
+    /// the time of the device is used if the offset can't be read
+    /// @param callback the callback to call with the time, in milliseconds since the epoch
+    @Override
+    public void getServerTime(@NotNull final DatabaseCallback<Long> callback) {
+        readData(SERVER_TIME_OFFSET_PATH).addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
-            public void onCompleted(List<User> users) {
-                for (User user : users) {
-                    if (Objects.equals(user.getEmail(), email) && Objects.equals(user.getPassword(), password)) {
-                        callback.onCompleted(user);
-                        return;
-                    }
-                }
-                callback.onCompleted(null);
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Long offset = snapshot.getValue(Long.class);
+                callback.onCompleted(System.currentTimeMillis() + (offset != null ? offset : 0));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.w(TAG, "Failed to read the server time offset", error.toException());
+                callback.onCompleted(System.currentTimeMillis());
+            }
+        });
+    }
+
+    /// read the records of a collection that changed after a checkpoint </br>
+    /// the records are found by their updatedAt, and the deleted records by their tombstones,
+    /// both are times of the database server so the clock of the device doesn't matter.
+    /// the records written exactly at the checkpoint are read again, merging them twice has no effect
+    /// @param path the path of the collection, like users or foods
+    /// @param lastSyncTime the checkpoint of the previous sync, -1 to read the whole collection
+    /// @param clazz the class of the records
+    /// @param callback the callback to call with the changes and the next checkpoint
+    /// @see SyncStore
+    /// @see #TOMBSTONES_PATH
+    public <T> void syncSince(@NotNull final String path, final long lastSyncTime, @NotNull final Class<T> clazz, @NotNull final DatabaseCallback<SyncResult<T>> callback) {
+        syncSince(path, lastSyncTime, clazz, null, callback);
+    }
+
+    /// read the records of a collection that changed after a checkpoint, or use a result without changes
+    /// when the database can't be reached
+    /// @param stale gets the result to use if the database can't be reached, null if there is none
+    /// @see #syncSince(String, long, Class, DatabaseCallback)
+    private <T> void syncSince(@NotNull final String path, final long lastSyncTime, @NotNull final Class<T> clazz, @Nullable final Supplier<SyncResult<T>> stale, @NotNull final DatabaseCallback<SyncResult<T>> callback) {
+        final MetricsRegistry.Sample sample = metrics.start("sync", path);
+        if (lastSyncTime < 0) {
+            mapSnapshot(fetch(path), sample, true, snapshot -> {
+                Map<String, T> changed = new LinkedHashMap<>();
+                long checkpoint = readChanges(snapshot, clazz, changed, 0);
+                return new SyncResult<>(changed, new HashSet<>(), checkpoint, true);
+            }, stale, callback);
+            return;
+        }
+        final Task<DataSnapshot> changedTask = fetch(path + "?updatedAt>=" + lastSyncTime,
+                readData(path).orderByChild("updatedAt").startAt(lastSyncTime));
+        final Task<DataSnapshot> removedTask = fetch(TOMBSTONES_PATH + "/" + path + "?since=" + lastSyncTime,
+                readData(TOMBSTONES_PATH + "/" + path).orderByValue().startAt(lastSyncTime));
+        Tasks.whenAllComplete(changedTask, removedTask).addOnCompleteListener(mappingExecutor, t -> {
+            Exception failure = changedTask.getException() != null ? changedTask.getException() : removedTask.getException();
+            if (failure != null) {
+                final SyncResult<T> cached = staleAfter(failure, stale);
+                if (cached != null) {
+                    Log.w(TAG, "Sync of " + path + " failed, using the records of the last sync", failure);
+                    sample.servedStale();
+                    runOnMainThread(() -> callback.onCompleted(cached));
+                    return;
+                }
+                Log.e(TAG, "Error syncing " + path, failure);
+                sample.fail();
+                runOnMainThread(() -> callback.onFailed(failure));
+                return;
+            }
+            Map<String, T> changed = new LinkedHashMap<>();
+            Set<String> removed = new HashSet<>();
+            long checkpoint;
+            try {
+                checkpoint = readChanges(changedTask.getResult(), clazz, changed, lastSyncTime);
+                for (DataSnapshot tombstone : removedTask.getResult().getChildren()) {
+                    removed.add(tombstone.getKey());
+                    Long removedAt = tombstone.getValue(Long.class);
+                    if (removedAt != null) checkpoint = Math.max(checkpoint, removedAt);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error converting data", e);
+                sample.fail();
+                runOnMainThread(() -> callback.onFailed(e));
+                return;
+            }
+            for (String key : changed.keySet()) {
+                cache.invalidate(path + "/" + key);
+            }
+            for (String key : removed) {
+                cache.invalidate(path + "/" + key);
+            }
+            sample.finish(changed.size() + removed.size(), estimateSize(changedTask.getResult()) + estimateSize(removedTask.getResult()));
+            SyncResult<T> result = new SyncResult<>(changed, removed, checkpoint, false);
+            runOnMainThread(() -> callback.onCompleted(result));
+        });
+    }
+
+    /// convert the records of a snapshot of a collection
+    /// @param snapshot the snapshot of the collection or of a query on it
+    /// @param clazz the class of the records
+    /// @param changed the map to add the records to, by key
+    /// @param checkpoint the checkpoint so far
+    /// @return the latest updatedAt of the records, or the checkpoint if it is later
+    private static <T> long readChanges(@NotNull final DataSnapshot snapshot, @NotNull final Class<T> clazz, @NotNull final Map<String, T> changed, long checkpoint) {
+        for (DataSnapshot child : snapshot.getChildren()) {
+            T value = child.getValue(clazz);
+            if (value == null) continue;
+            changed.put(child.getKey(), value);
+            Long updatedAt = child.child("updatedAt").getValue(Long.class);
+            if (updatedAt != null) checkpoint = Math.max(checkpoint, updatedAt);
+        }
+        return checkpoint;
+    }
+
+    /// sync a local copy of a collection, and get all its records </br>
+    /// when the sync fails because of the connection, the records of the last sync are returned
+    /// @param path the path of the collection
+    /// @param clazz the class of the records
+    /// @param store the local copy of the collection
+    /// @param callback the callback to call with all the records, ordered by key
+    private <T> void syncList(@NotNull final String path, @NotNull final Class<T> clazz, @NotNull final SyncStore<T> store, @NotNull final DatabaseCallback<List<T>> callback) {
+        /// a result without changes keeps the records and the checkpoint of the last sync
+        final Supplier<SyncResult<T>> lastSync = () -> store.isSynced()
+                ? new SyncResult<>(new LinkedHashMap<>(), new HashSet<>(), store.getLastSyncTime(), false)
+                : null;
+        syncSince(path, store.getLastSyncTime(), clazz, lastSync, new DatabaseCallback<SyncResult<T>>() {
+            @Override
+            public void onCompleted(SyncResult<T> result) {
+                Log.d(TAG, "Synced " + path + ": " + result.getChanged().size() + " changed, " + result.getRemoved().size() + " removed");
+                store.apply(result);
+                callback.onCompleted(store.getRecords());
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    // endregion sync
+
+    // region resilience
+
+    /// change the retries and the circuit breakers of the reads and the writes
+    /// @param policy the new settings, Resilience.Policy.NONE to turn them off
+    /// @see Resilience
+    public void setResiliencePolicy(@NotNull final Resilience.Policy policy) {
+        resilience = new Resilience(policy);
+    }
+
+    /// check if the reads of a path fail at once because it failed too many times in a row
+    /// @param path the path, or its top level path
+    /// @return true if the reads of the path get cached data or fail without going to the database
+    public boolean isCircuitOpen(@NotNull final String path) {
+        return resilience.isOpen(path);
+    }
+
+    // endregion resilience
+
+    // region scheduling
+
+    /// run database calls with a priority, the reads they start wait for the reads of higher priorities
+    /// @param priority the priority of the reads
+    /// @param calls the calls to this service
+    /// @see RequestScheduler
+    @Override
+    public void withPriority(@NotNull final RequestScheduler.Priority priority, @NotNull final Runnable calls) {
+        RequestScheduler.Priority previous = currentPriority.get();
+        currentPriority.set(priority);
+        try {
+            calls.run();
+        } finally {
+            currentPriority.set(previous);
+        }
+    }
+
+    /// the state of the lanes of the reads, for the diagnostics
+    /// @see RequestScheduler#describe()
+    public String describeScheduler() {
+        return scheduler.describe();
+    }
+
+    // endregion scheduling
+
+    // region batch writes
+
+    /// a set of writes and deletes that are committed together in a single atomic multi-path update </br>
+    /// either all the writes are applied or none of them, and the commit costs a single round-trip.
+    /// the changes of the counters follow in a second update
+    /// @see #newBatch()
+    /// @see DatabaseReference#updateChildren(Map)
+    public class WriteBatch {
+
+        /// the paths (relative to the root) to write, a null value deletes the path
+        private final Map<String, Object> updates = new LinkedHashMap<>();
+
+        /// the changes of the counters, by the path of the counter, added to a random shard on commit
+        private final Map<String, Long> counterDeltas = new LinkedHashMap<>();
+
+        private WriteBatch() {
+        }
+
+        /// write data at a path
+        /// @throws IllegalArgumentException if a path above or below this one is already in the batch
+        private WriteBatch put(@NotNull final String path, @Nullable final Object data) {
+            for (String other : updates.keySet()) {
+                if (!other.equals(path) && DatabasePaths.overlaps(path, other)) {
+                    throw new IllegalArgumentException("Path " + path + " overlaps with " + other + " in the same batch");
+                }
+            }
+            updates.put(path, data);
+            return this;
+        }
+
+        /// delete the data at a path
+        private WriteBatch delete(@NotNull final String path) {
+            return put(path, null);
+        }
+
+        /// mark a record as deleted at the time of the server, for the syncs of its collection
+        private WriteBatch tombstone(@NotNull final String path, @NotNull final String id) {
+            return put(TOMBSTONES_PATH + "/" + path + "/" + id, ServerValue.TIMESTAMP);
+        }
+
+        /// add to a counter, the changes of the same counter in the batch are added together
+        /// @param counter the path of the counter under stats
+        /// @param delta the number to add, negative to subtract
+        private WriteBatch increment(@NotNull final String counter, final long delta) {
+            String path = STATS_PATH + "/" + counter;
+            Long current = counterDeltas.get(path);
+            counterDeltas.put(path, (current != null ? current : 0) + delta);
+            return this;
+        }
+
+        /// remove the deleted mark of a record that is written again
+        private WriteBatch clearTombstone(@NotNull final String path, @NotNull final String id) {
+            return delete(TOMBSTONES_PATH + "/" + path + "/" + id);
+        }
+
+        /// write a user and its email index entry
+        /// @param isNew true if there is no user with this id yet, only new users are added to the counter
+        public WriteBatch createUser(@NotNull final User user, final boolean isNew) {
+            put(USERS_PATH + "/" + user.getId(), user);
+            clearTombstone(USERS_PATH, user.getId());
+            if (isNew) {
+                increment(USER_COUNT, 1);
+            }
+            if (user.getEmail() != null) {
+                put(USERS_BY_EMAIL_PATH + "/" + encodeEmailKey(user.getEmail()), user.getId());
+            }
+            return this;
+        }
+
+        /// delete a user and its email index entry
+        public WriteBatch deleteUser(@NotNull final User user) {
+            delete(USERS_PATH + "/" + user.getId());
+            tombstone(USERS_PATH, user.getId());
+            increment(USER_COUNT, -1);
+            if (user.getEmail() != null) {
+                delete(USERS_BY_EMAIL_PATH + "/" + encodeEmailKey(user.getEmail()));
+            }
+            return this;
+        }
+
+        /// write some of the fields of a user and its new version
+        /// @param uid the id of the user
+        /// @param changes the fields to write, by their names in the database
+        /// @param version the new version of the user
+        public WriteBatch patchUser(@NotNull final String uid, @NotNull final Map<String, Object> changes, final long version) {
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                put(USERS_PATH + "/" + uid + "/" + change.getKey(), change.getValue());
+            }
+            put(USERS_PATH + "/" + uid + "/updatedAt", ServerValue.TIMESTAMP);
+            return put(USERS_PATH + "/" + uid + "/version", version);
+        }
+
+        /// write a food, the image is written to the food images path
+        /// @param isNew true if there is no food with this id yet, only new foods are added to the counter
+        public WriteBatch createFood(@NotNull final Food food, final boolean isNew) {
+            put(FOODS_PATH + "/" + food.getId(), withoutImage(food));
+            clearTombstone(FOODS_PATH, food.getId());
+            if (isNew) {
+                increment(FOOD_COUNT, 1);
+            }
+            if (food.getImageBase64() != null) {
+                put(FOOD_IMAGES_PATH + "/" + food.getId(), food.getImageBase64());
+            }
+            return this;
+        }
+
+        /// delete a food and its image
+        public WriteBatch deleteFood(@NotNull final String foodId) {
+            delete(FOODS_PATH + "/" + foodId);
+            tombstone(FOODS_PATH, foodId);
+            increment(FOOD_COUNT, -1);
+            return delete(FOOD_IMAGES_PATH + "/" + foodId);
+        }
+
+        /// write a cart, its summary and its entry in the user carts index
+        /// @param isNew true if there is no cart with this id yet, only new carts are added to the counters
+        public WriteBatch createCart(@NotNull final Cart cart, final boolean isNew) {
+            put(CARTS_PATH + "/" + cart.getId(), cart);
+            clearTombstone(CARTS_PATH, cart.getId());
+            put(CART_SUMMARIES_PATH + "/" + cart.getId(), new CartSummary(cart, System.currentTimeMillis()));
+            if (isNew) {
+                increment(CART_COUNT, 1);
+            }
+            if (cart.getUid() != null) {
+                put(USER_CARTS_PATH + "/" + cart.getUid() + "/" + cart.getId(), true);
+                if (isNew) {
+                    increment(USER_CART_COUNT + "/" + cart.getUid(), 1);
+                }
+            }
+            return this;
+        }
+
+        /// delete a cart, its summary and its entry in the user carts index
+        public WriteBatch deleteCart(@NotNull final Cart cart) {
+            delete(CARTS_PATH + "/" + cart.getId());
+            delete(CART_SUMMARIES_PATH + "/" + cart.getId());
+            tombstone(CARTS_PATH, cart.getId());
+            increment(CART_COUNT, -1);
+            if (cart.getUid() != null) {
+                delete(USER_CARTS_PATH + "/" + cart.getUid() + "/" + cart.getId());
+                increment(USER_CART_COUNT + "/" + cart.getUid(), -1);
+            }
+            return this;
+        }
+
+        /// @return the number of paths in the batch
+        public int size() {
+            return updates.size();
+        }
+
+        public boolean isEmpty() {
+            return updates.isEmpty() && counterDeltas.isEmpty();
+        }
+
+        /// apply all the writes of the batch in a single update, and then the changes of the counters in another update </br>
+        /// the writes are idempotent, so they are retried like any write. the counters are not retried,
+        /// a retry could add to them twice, so a counter update that fails is only logged and left to reconcileCounters
+        /// @param callback the callback to call when the writes are applied, or when the counters are if there are no writes
+        /// @see #reconcileCounters(DatabaseCallback)
+        public void commit(@Nullable final DatabaseCallback<Void> callback) {
+            final Map<String, Object> counters = new HashMap<>();
+            for (Map.Entry<String, Long> counter : counterDeltas.entrySet()) {
+                if (counter.getValue() == 0) continue;
+                int shard = ThreadLocalRandom.current().nextInt(COUNTER_SHARDS);
+                counters.put(counter.getKey() + "/" + shard, ServerValue.increment(counter.getValue()));
+            }
+            if (updates.isEmpty()) {
+                if (counters.isEmpty()) {
+                    if (callback != null) {
+                        callback.onCompleted(null);
+                    }
+                    return;
+                }
+                updateData(counters, callback);
+                return;
+            }
+            updateData(new HashMap<>(updates), new DatabaseCallback<Void>() {
+                @Override
+                public void onCompleted(Void object) {
+                    if (!counters.isEmpty()) {
+                        updateData(counters, new DatabaseCallback<Void>() {
+                            @Override
+                            public void onCompleted(Void object) {
+                            }
+
+                            @Override
+                            public void onFailed(Exception e) {
+                                Log.w(TAG, "Failed to update the counters " + counters.keySet() + ", reconcileCounters will fix them", e);
+                            }
+                        });
+                    }
+                    if (callback != null) {
+                        callback.onCompleted(null);
+                    }
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    if (callback != null) {
+                        callback.onFailed(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /// a copy of a food without the image
+    private static Food withoutImage(@NotNull final Food food) {
+        Food copy = new Food(food);
+        copy.setImageBase64(null);
+        return copy;
+    }
+
+    /// start a new batch of writes
+    /// @return an empty batch, call commit on it to apply the writes
+    /// @see WriteBatch
+    public WriteBatch newBatch() {
+        return new WriteBatch();
+    }
+
+    // endregion batch writes
+
+    // region counters
+
+    /// get the number of users, a single small read of the shards of the counter
+    /// @param callback the callback to call with the number of users
+    @Override
+    public void getUserCount(@NotNull final DatabaseCallback<Long> callback) {
+        getCounter(USER_COUNT, callback);
+    }
+
+    /// get the number of foods, a single small read of the shards of the counter
+    /// @param callback the callback to call with the number of foods
+    @Override
+    public void getFoodCount(@NotNull final DatabaseCallback<Long> callback) {
+        getCounter(FOOD_COUNT, callback);
+    }
+
+    /// get the number of carts, a single small read of the shards of the counter
+    /// @param callback the callback to call with the number of carts
+    @Override
+    public void getCartCount(@NotNull final DatabaseCallback<Long> callback) {
+        getCounter(CART_COUNT, callback);
+    }
+
+    /// get the number of carts of a user, a single small read of the shards of the counter
+    /// @param uid the id of the user
+    /// @param callback the callback to call with the number of carts of the user
+    @Override
+    public void getUserCartCount(@NotNull final String uid, @NotNull final DatabaseCallback<Long> callback) {
+        getCounter(USER_CART_COUNT + "/" + uid, callback);
+    }
+
+    /// read a counter, the sum of its shards
+    /// @param counter the path of the counter under stats
+    /// @param callback the callback to call with the value of the counter, 0 if it was never written
+    /// @see #STATS_PATH
+    private void getCounter(@NotNull final String counter, @NotNull final DatabaseCallback<Long> callback) {
+        final String path = STATS_PATH + "/" + counter;
+        mapSnapshot(fetch(path), metrics.start("count", path), false, DatabaseService::sumShards, null, callback);
+    }
+
+    /// the value of a counter from the snapshot of its shards
+    private static long sumShards(@NotNull final DataSnapshot counter) {
+        long sum = 0;
+        for (DataSnapshot shard : counter.getChildren()) {
+            Long value = shard.getValue(Long.class);
+            if (value != null) sum += value;
+        }
+        return sum;
+    }
+
+    /// fix the counters that drifted from the real number of records </br>
+    /// a counter drifts when its update fails after the records of a batch were written, or when records are written without the batches.
+    /// the records are counted and the difference is added to the counter, so writes that happen at the same time are not lost.
+    /// reads the users, foods, cart summaries and the user carts index, so it should run rarely, with a background priority
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the number of counters that were fixed
+    @Override
+    public void reconcileCounters(@Nullable final DatabaseCallback<Integer> callback) {
+        final Task<DataSnapshot> stats = fetch(STATS_PATH), users = fetch(USERS_PATH), foods = fetch(FOODS_PATH),
+                summaries = fetch(CART_SUMMARIES_PATH), userCarts = fetch(USER_CARTS_PATH);
+        Tasks.whenAllSuccess(stats, users, foods, summaries, userCarts).addOnCompleteListener(mappingExecutor, t -> {
+            if (!t.isSuccessful()) {
+                Log.e(TAG, "Error reading the counters", t.getException());
+                runOnMainThread(() -> {
+                    if (callback != null) {
+                        callback.onFailed(t.getException());
+                    }
+                });
+                return;
+            }
+            /// the real number of records, by counter
+            Map<String, Long> actual = new LinkedHashMap<>();
+            actual.put(USER_COUNT, users.getResult().getChildrenCount());
+            actual.put(FOOD_COUNT, foods.getResult().getChildrenCount());
+            actual.put(CART_COUNT, summaries.getResult().getChildrenCount());
+            for (DataSnapshot userCartsOfUser : userCarts.getResult().getChildren()) {
+                actual.put(USER_CART_COUNT + "/" + userCartsOfUser.getKey(), userCartsOfUser.getChildrenCount());
+            }
+            /// the users that have a counter but no carts anymore
+            for (DataSnapshot counter : stats.getResult().child(USER_CART_COUNT).getChildren()) {
+                String key = USER_CART_COUNT + "/" + counter.getKey();
+                if (!actual.containsKey(key)) {
+                    actual.put(key, 0L);
+                }
+            }
+            WriteBatch batch = newBatch();
+            int fixed = 0;
+            for (Map.Entry<String, Long> counter : actual.entrySet()) {
+                long drift = counter.getValue() - sumShards(stats.getResult().child(counter.getKey()));
+                if (drift == 0) continue;
+                Log.d(TAG, "Counter " + counter.getKey() + " is off by " + (-drift));
+                batch.increment(counter.getKey(), drift);
+                fixed++;
+            }
+            final int fixedCount = fixed;
+            runOnMainThread(() -> batch.commit(new DatabaseCallback<Void>() {
+                @Override
+                public void onCompleted(Void object) {
+                    if (callback != null) {
+                        callback.onCompleted(fixedCount);
+                    }
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    if (callback != null) {
+                        callback.onFailed(e);
+                    }
+                }
+            }));
+        });
+    }
+
+    // endregion counters
+
+    // region live updates
+
+    /// a single ChildEventListener attached to a path (or a query on it), shared by all the screens that observe it </br>
+    /// the listener keeps the current children so a screen that observes later gets them too,
+    /// and it is detached when the last screen unsubscribes
+    private class SharedChildListener<T> implements ChildEventListener {
+        /// the key of the listener in childListeners, the path itself or a description of the query
+        private final String key;
+        private final String path;
+        private final Query query;
+        private final Class<T> clazz;
+        private final Map<String, T> children = new LinkedHashMap<>();
+        private final List<ChildListener<T>> listeners = new ArrayList<>();
+
+        /// true after the children that existed when the listener was attached were all reported
+        private boolean loaded = false;
+
+        SharedChildListener(String key, String path, Query query, Class<T> clazz) {
+            this.key = key;
+            this.path = path;
+            this.query = query;
+            this.clazz = clazz;
+        }
+
+        void addListener(ChildListener<T> listener) {
+            listeners.add(listener);
+            for (Map.Entry<String, T> child : children.entrySet()) {
+                listener.onChildAdded(child.getKey(), child.getValue());
+            }
+            if (loaded) {
+                listener.onLoaded();
+            }
+        }
+
+        /// the children that existed when the listener was attached were all reported
+        void onLoaded() {
+            if (loaded) return;
+            loaded = true;
+            for (ChildListener<T> listener : new ArrayList<>(listeners)) {
+                listener.onLoaded();
+            }
+        }
+
+        /// @return true if no listeners are left
+        boolean removeListener(ChildListener<T> listener) {
+            listeners.remove(listener);
+            return listeners.isEmpty();
+        }
+
+        @Override
+        public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            T t = snapshot.getValue(clazz);
+            children.put(snapshot.getKey(), t);
+            cache.invalidate(path + "/" + snapshot.getKey());
+            cache.put(path + "/" + snapshot.getKey(), t, clazz);
+            for (ChildListener<T> listener : new ArrayList<>(listeners)) {
+                listener.onChildAdded(snapshot.getKey(), t);
+            }
+        }
+
+        @Override
+        public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            T t = snapshot.getValue(clazz);
+            children.put(snapshot.getKey(), t);
+            cache.invalidate(path + "/" + snapshot.getKey());
+            cache.put(path + "/" + snapshot.getKey(), t, clazz);
+            for (ChildListener<T> listener : new ArrayList<>(listeners)) {
+                listener.onChildChanged(snapshot.getKey(), t);
+            }
+        }
+
+        @Override
+        public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+            T t = snapshot.getValue(clazz);
+            children.remove(snapshot.getKey());
+            cache.invalidate(path + "/" + snapshot.getKey());
+            for (ChildListener<T> listener : new ArrayList<>(listeners)) {
+                listener.onChildRemoved(snapshot.getKey(), t);
+            }
+        }
+
+        @Override
+        public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            /// the listeners don't show the order of the query, so a move is not a change
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            Log.e(TAG, "Listening to " + key + " was cancelled", error.toException());
+            childListeners.remove(key);
+            for (ChildListener<T> listener : new ArrayList<>(listeners)) {
+                listener.onFailed(error.toException());
+            }
+        }
+    }
+
+    /// listen to the children of a path </br>
+    /// the first subscription of a path attaches a ChildEventListener, the next ones share it,
+    /// and the listener is detached when the last subscription is removed
+    /// @param path the path of the list to listen to
+    /// @param clazz the class of the children
+    /// @param listener the listener to call on every change
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    /// @see SharedChildListener
+    private <T> Subscription subscribe(@NotNull final String path, @NotNull final Class<T> clazz, @NotNull final ChildListener<T> listener) {
+        return subscribe(path, path, readData(path), clazz, listener);
+    }
+
+    /// listen to the children of a query on a path </br>
+    /// the subscriptions of the same key share one ChildEventListener, like the subscriptions of a path
+    /// @param key the key to share the listener on, a description of the query
+    /// @param path the path of the list, the children are cached under it
+    /// @param query the query to listen to
+    /// @param clazz the class of the children
+    /// @param listener the listener to call on every change
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    /// @see SharedChildListener
+    @SuppressWarnings("unchecked")
+    private <T> Subscription subscribe(@NotNull final String key, @NotNull final String path, @NotNull final Query query, @NotNull final Class<T> clazz, @NotNull final ChildListener<T> listener) {
+        SharedChildListener<T> shared = (SharedChildListener<T>) childListeners.get(key);
+        if (shared == null) {
+            shared = new SharedChildListener<>(key, path, query, clazz);
+            childListeners.put(key, shared);
+            Log.d(TAG, "Attaching listener to " + key);
+            query.addChildEventListener(shared);
+            /// the value event comes after the child events of the same data, so it marks the end of the first children.
+            /// the query is already listened to, so the value is taken from the synced data and not downloaded again
+            final SharedChildListener<T> attached = shared;
+            query.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    attached.onLoaded();
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    /// the child listener is cancelled too, and reports the failure
+                }
+            });
+        }
+        shared.addListener(listener);
+        final SharedChildListener<T> subscribed = shared;
+        return new Subscription() {
+            private boolean unsubscribed = false;
+
+            @Override
+            public void unsubscribe() {
+                if (unsubscribed) return;
+                unsubscribed = true;
+                if (subscribed.removeListener(listener) && childListeners.get(key) == subscribed) {
+                    Log.d(TAG, "Detaching listener from " + key);
+                    childListeners.remove(key);
+                    subscribed.query.removeEventListener(subscribed);
+                }
+            }
+        };
+    }
+
+    /// listen to the records of a collection that are written or deleted at or after a time </br>
+    /// the records are found by their updatedAt and the deleted records by their tombstones, like in syncSince,
+    /// so the records that didn't change since the time are not downloaded.
+    /// a deleted record is reported to onChildRemoved without its value when its tombstone arrives
+    /// @param path the path of the collection, like users or foods
+    /// @param since the time to listen from, by the clock of the database server
+    /// @param clazz the class of the records
+    /// @param listener the listener to call on every change
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    /// @see #syncSince(String, long, Class, DatabaseCallback)
+    private <T> Subscription observeSince(@NotNull final String path, final long since, @NotNull final Class<T> clazz, @NotNull final ChildListener<T> listener) {
+        return observeSince(path, path, since, clazz, listener);
+    }
+
+    /// listen to the records of a collection that are written or deleted at or after a time,
+    /// when the deletes leave the tombstones of another collection, like the summaries of the carts
+    /// @param path the path of the collection
+    /// @param tombstonesOf the collection whose tombstones mark the deleted records
+    /// @param since the time to listen from, by the clock of the database server
+    /// @param clazz the class of the records
+    /// @param listener the listener to call on every change
+    /// @return a subscription to call unsubscribe on when the changes are no longer needed
+    private <T> Subscription observeSince(@NotNull final String path, @NotNull final String tombstonesOf, final long since, @NotNull final Class<T> clazz, @NotNull final ChildListener<T> listener) {
+        final long startAt = Math.max(0, since - SERVER_TIME_MARGIN_MILLIS);
+        final ChangesSinceListener<T> changes = new ChangesSinceListener<>(listener);
+        final Subscription records = subscribe(path + "?updatedAt>=" + startAt, path,
+                readData(path).orderByChild("updatedAt").startAt(startAt), clazz, changes.records);
+        final Subscription tombstones = subscribe(TOMBSTONES_PATH + "/" + tombstonesOf + "?since=" + startAt, TOMBSTONES_PATH + "/" + tombstonesOf,
+                readData(TOMBSTONES_PATH + "/" + tombstonesOf).orderByValue().startAt(startAt), Long.class, changes.tombstones);
+        return () -> {
+            records.unsubscribe();
+            tombstones.unsubscribe();
+        };
+    }
+
+    /// joins the listener of the records that changed since a time and the listener of their tombstones into one listener
+    /// @see #observeSince(String, long, Class, ChildListener)
+    private static class ChangesSinceListener<T> {
+        private final ChildListener<T> listener;
+
+        /// the number of the two listeners that didn't report their first children yet
+        private int loading = 2;
+
+        private boolean failed = false;
+
+        ChangesSinceListener(ChildListener<T> listener) {
+            this.listener = listener;
+        }
+
+        final ChildListener<T> records = new ChildListener<T>() {
+            @Override
+            public void onChildAdded(String key, T object) {
+                if (!failed) listener.onChildAdded(key, object);
+            }
+
+            @Override
+            public void onChildChanged(String key, T object) {
+                if (!failed) listener.onChildChanged(key, object);
+            }
+
+            @Override
+            public void onChildRemoved(String key, T object) {
+                if (!failed) listener.onChildRemoved(key, object);
+            }
+
+            @Override
+            public void onLoaded() {
+                loaded();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                fail(e);
+            }
+        };
+
+        final ChildListener<Long> tombstones = new ChildListener<Long>() {
+            @Override
+            public void onChildAdded(String key, Long removedAt) {
+                if (!failed) listener.onChildRemoved(key, null);
+            }
+
+            @Override
+            public void onChildChanged(String key, Long removedAt) {
+                if (!failed) listener.onChildRemoved(key, null);
+            }
+
+            @Override
+            public void onChildRemoved(String key, Long removedAt) {
+                /// the record was written again, the records listener reports it
+            }
+
+            @Override
+            public void onLoaded() {
+                loaded();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                fail(e);
+            }
+        };
+
+        private void loaded() {
+            if (--loading == 0 && !failed) {
+                listener.onLoaded();
+            }
+        }
+
+        private void fail(Exception e) {
+            if (failed) return;
+            failed = true;
+            listener.onFailed(e);
+        }
+    }
+
+    /// get the shared publisher of a path, or create it </br>
+    /// the publishers are kept after their last subscriber cancels, they only hold the items while someone subscribes
+    /// @param path the path of the list
+    /// @param source the listener of the list, used when the publisher is created
+    /// @return the publisher of the path
+    /// @see CollectionPublisher
+    @SuppressWarnings("unchecked")
+    private synchronized <T> CollectionPublisher<T> publisher(@NotNull final String path, @NotNull final CollectionPublisher.Source<T> source) {
+        CollectionPublisher<T> publisher = (CollectionPublisher<T>) publishers.get(path);
+        if (publisher == null) {
+            publisher = new CollectionPublisher<>(source);
+            publishers.put(path, publisher);
+        }
+        return publisher;
+    }
+
+    /// get the shared publisher of the changes of a path since a time, or create it </br>
+    /// the screens take their own time before their first page, so every screen asks for another time.
+    /// a publisher that listens from up to SHARED_CHECKPOINT_MILLIS before the time is shared,
+    /// its subscribers also get the records that changed between its time and theirs, which their pages already have.
+    /// a screen that asks for an older time gets a new publisher, and the next screens share that one
+    /// @param path the path of the list
+    /// @param since the time the subscriber needs the changes from
+    /// @param source the listener of the changes since a time, used when the publisher is created
+    /// @return the publisher of the changes of the path
+    /// @see #publisher(String, CollectionPublisher.Source)
+    @SuppressWarnings("unchecked")
+    private synchronized <T> CollectionPublisher<T> publisherSince(@NotNull final String path, final long since, @NotNull final LongFunction<CollectionPublisher.Source<T>> source) {
+        CollectionPublisher<T> publisher = (CollectionPublisher<T>) publishers.get(path);
+        Long checkpoint = publisherCheckpoints.get(path);
+        if (publisher == null || checkpoint == null || checkpoint > since || since - checkpoint > SHARED_CHECKPOINT_MILLIS) {
+            /// the subscribers of the replaced publisher keep it until they cancel
+            publisher = new CollectionPublisher<>(source.apply(since));
+            publishers.put(path, publisher);
+            publisherCheckpoints.put(path, since);
+        }
+        return publisher;
+    }
+
+    // endregion live updates
+
+    // public methods to interact with the database
+
+    // region User Section
+
+    /// generate a new id for a new user in the database
+    /// @return a new id for the user
+    /// @see #generateNewId(String)
+    /// @see User
+    @Override
+    public String generateUserId() {
+        return generateNewId(USERS_PATH);
+    }
+
+    /// create a new user in the database
+    /// the email is claimed in the email index in a transaction first, so two users can't register the same email,
+    /// then the user and its email index entry are written together in a single update
+    /// @param user the user object to create
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive void
+    ///            if the operation fails, the callback will receive an exception,
+    ///            an EmailExistsException if the email already belongs to another user
+    /// @see DatabaseCallback
+    /// @see User
+    @Override
+    public void createNewUser(@NotNull final User user, @Nullable final DatabaseCallback<Void> callback) {
+        claimUserEmail(user.getId(), user.getEmail(), new DatabaseCallback<EmailClaim>() {
+            @Override
+            public void onCompleted(EmailClaim claim) {
+                commitNewUser(user, claim, callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// write a new user whose email was already claimed </br>
+    /// if the write fails, a claim that was made for this user is released so the email can be used again
+    private void commitNewUser(@NotNull final User user, @NotNull final EmailClaim claim, @Nullable final DatabaseCallback<Void> callback) {
+        final DatabaseCallback<Void> commit = new DatabaseCallback<Void>() {
+            @Override
+            public void onCompleted(Void object) {
+                rememberUser(user);
+                if (callback == null) return;
+                callback.onCompleted(null);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (claim == EmailClaim.CLAIMED) {
+                    releaseEmail(user.getEmail(), user.getId());
+                }
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        };
+        getExistingIds(USERS_PATH, Collections.singletonList(user.getId()), new DatabaseCallback<Set<String>>() {
+            @Override
+            public void onCompleted(Set<String> existing) {
+                newBatch().createUser(user, !existing.contains(user.getId())).commit(commit);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                commit.onFailed(e);
+            }
+        });
+    }
+
+    /// get a user from the database
+    /// @param uid the id of the user to get
+    /// @param callback the callback to call when the operation is completed
+    ///               the callback will receive the user object
+    ///             if the operation fails, the callback will receive an exception
+    /// @see DatabaseCallback
+    /// @see User
+    @Override
+    public void getUser(@NotNull final String uid, @NotNull final DatabaseCallback<User> callback) {
+        getData(USERS_PATH + "/" + uid, User.class, new DatabaseCallback<User>() {
+            @Override
+            public void onCompleted(User user) {
+                rememberUser(user);
+                callback.onCompleted(user);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// get all the users from the database
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive a list of user objects
+    ///            if the operation fails, the callback will receive an exception
+    /// @see DatabaseCallback
+    /// @see List
+    /// @see User
+    @Override
+    public void getUserList(@NotNull final DatabaseCallback<List<User>> callback) {
+        getDataList(USERS_PATH, User.class, new DatabaseCallback<List<User>>() {
+            @Override
+            public void onCompleted(List<User> users) {
+                for (User user : users) {
+                    rememberUser(user);
+                }
+                callback.onCompleted(users);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// get a page of the users from the database, ordered by id
+    /// @param afterKey the cursor of the previous page, null to get the first page
+    /// @param pageSize the maximum number of users in the page
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the page of users
+    /// @see Page#getNextKey()
+    @Override
+    public void getUserPage(@Nullable final String afterKey, final int pageSize, @NotNull final DatabaseCallback<Page<User>> callback) {
+        getDataPage(USERS_PATH, User.class, afterKey, pageSize, callback);
+    }
+
+    /// listen to the users that are written or deleted at or after a time, only those users are downloaded
+    /// @param since the time to listen from, by the clock of the database server
+    /// @param listener the listener to call with every added, changed and removed user
+    /// @return a subscription to call unsubscribe on when the screen no longer shows the users
+    /// @see #observeSince(String, long, Class, ChildListener)
+    @Override
+    public Subscription observeUsers(final long since, @NotNull final ChildListener<User> listener) {
+        return observeSince(USERS_PATH, since, User.class, listener);
+    }
+
+    /// the users that are written or deleted at or after a time as Flow publishers, shared by the screens
+    /// @param since the time to listen from, by the clock of the database server
+    /// @return the publisher of the changes of the users
+    /// @see #publisherSince(String, long, LongFunction)
+    @Override
+    public CollectionPublisher<User> publishUsers(final long since) {
+        return publisherSince(USERS_PATH, since, checkpoint -> listener -> observeUsers(checkpoint, listener));
+    }
+
+    /// delete a user from the database
+    /// the email index entry of the user is removed in the same update
+    /// @param uid the user id to delete
+    /// @param callback the callback to call when the operation is completed
+    @Override
+    public void deleteUser(@NotNull final String uid, @Nullable final DatabaseCallback<Void> callback) {
+        getUser(uid, new DatabaseCallback<User>() {
+            @Override
+            public void onCompleted(User user) {
+                WriteBatch batch = newBatch();
+                if (user != null) {
+                    batch.deleteUser(user);
+                } else {
+                    batch.delete(USERS_PATH + "/" + uid);
+                    batch.tombstone(USERS_PATH, uid);
+                }
+                forgetUser(uid);
+                batch.commit(callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /// get a user by email and password
+    /// the user id is looked up in the email index, so only a single user is downloaded
+    /// @param email the email of the user
+    /// @param password the password of the user
+    /// @param callback the callback to call when the operation is completed
+    ///            the callback will receive the user object, or null if the email or password is wrong
+    ///          if the operation fails, the callback will receive an exception
+    /// @see DatabaseCallback
+    /// @see User
+    @Override
+    public void getUserByEmailAndPassword(@NotNull final String email, @NotNull final String password, @NotNull final DatabaseCallback<User> callback) {
+        getUserIdByEmail(email, new DatabaseCallback<String>() {
+            @Override
+            public void onCompleted(String uid) {
+                if (uid == null) {
+                    callback.onCompleted(null);
+                    return;
+                }
+                getUser(uid, new DatabaseCallback<User>() {
+                    @Override
+                    public void onCompleted(User user) {
+                        if (user != null && Objects.equals(user.getPassword(), password)) {
+                            callback.onCompleted(user);
+                            return;
+                        }
+                        callback.onCompleted(null);
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        callback.onFailed(e);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// check if an email already exists in the database
+    /// @param email the email to check
+    /// @param callback the callback to call when the operation is completed
+    @Override
+    public void checkIfEmailExists(@NotNull final String email, @NotNull final DatabaseCallback<Boolean> callback) {
+        getUserIdByEmail(email, new DatabaseCallback<String>() {
+            @Override
+            public void onCompleted(String uid) {
+                callback.onCompleted(uid != null);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// update a user in the database </br>
+    /// only the fields that are different from the last version of the user that was read are written,
+    /// together with the next version number, in a single small update.
+    /// a new email is claimed in the email index first, like in createNewUser, and the old one is released after the update,
+    /// so an email that belongs to another user fails with an EmailExistsException.
+    /// the database rules (database.rules.json) accept a new version only if it is the stored version + 1,
+    /// so an update that is based on an old version of the user is rejected,
+    /// and then the changed fields are applied to the current user in a transaction.
+    /// a user that was not read before is written in a transaction
+    /// @param user the user object with the new data, its version is set to the new version
+    /// @param callback the callback to call when the operation is completed
+    @Override
+    public void updateUser(@NotNull final User user, @Nullable final DatabaseCallback<Void> callback) {
+        final User base = getLastKnownUser(user.getId());
+        if (base == null) {
+            updateUserInTransaction(user, null, callback);
+            return;
+        }
+        final Map<String, Object> changes = diffUser(base, user);
+        if (changes.isEmpty()) {
+            user.setVersion(base.getVersion());
+            if (callback == null) return;
+            callback.onCompleted(null);
+            return;
+        }
+        final long version = base.getVersion() + 1;
+        final boolean emailChanged = changes.containsKey("email");
+        claimUserEmail(user.getId(), emailChanged ? user.getEmail() : null, new DatabaseCallback<EmailClaim>() {
+            @Override
+            public void onCompleted(EmailClaim claim) {
+                newBatch().patchUser(user.getId(), changes, version).commit(new DatabaseCallback<Void>() {
+                    @Override
+                    public void onCompleted(Void object) {
+                        if (emailChanged) {
+                            releaseOldEmail(user.getId(), base.getEmail(), user.getEmail());
+                        }
+                        user.setVersion(version);
+                        rememberUser(user);
+                        cache.put(USERS_PATH + "/" + user.getId(), user, User.class);
+                        if (callback == null) return;
+                        callback.onCompleted(null);
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        if (claim == EmailClaim.CLAIMED) {
+                            releaseEmail(user.getEmail(), user.getId());
+                        }
+                        /// the connection failed, retrying in a transaction would fail the same way
+                        if (Resilience.isTransient(e)) {
+                            if (callback == null) return;
+                            callback.onFailed(e);
+                            return;
+                        }
+                        Log.w(TAG, "Update of user " + user.getId() + " was rejected, updating in a transaction", e);
+                        updateUserInTransaction(user, changes, callback);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// update a user in a transaction, and then move its email index entry </br>
+    /// the fallback of updateUser, when the last version of the user is unknown or was changed by someone else.
+    /// a new email is claimed before the transaction, and the old one is released after it
+    /// @param user the user object with the new data
+    /// @param changes the fields to change in the current user, null to write all the fields of the user
+    /// @param callback the callback to call when the operation is completed
+    /// @see #updateUser(User, DatabaseCallback)
+    private void updateUserInTransaction(@NotNull final User user, @Nullable final Map<String, Object> changes, @Nullable final DatabaseCallback<Void> callback) {
+        /// the email of the caller may be older than the committed one, so the index moves only if this update changes the email
+        final boolean emailChanged = changes == null || changes.containsKey("email");
+        final String newEmail = changes == null ? user.getEmail() : (String) changes.get("email");
+        claimUserEmail(user.getId(), emailChanged ? newEmail : null, new DatabaseCallback<EmailClaim>() {
+            @Override
+            public void onCompleted(EmailClaim claim) {
+                /// the email stored in the database before the transaction replaced the user
+                final String[] previousEmail = new String[1];
+                runTransaction(USERS_PATH + "/" + user.getId(), User.class, currentUser -> {
+                    previousEmail[0] = currentUser != null ? currentUser.getEmail() : null;
+                    User next = currentUser != null && changes != null ? applyUserChanges(currentUser, changes) : new User(user);
+                    next.setVersion((currentUser != null ? currentUser.getVersion() : user.getVersion()) + 1);
+                    return next;
+                }, new DatabaseCallback<User>() {
+                    @Override
+                    public void onCompleted(User object) {
+                        if (object != null) {
+                            user.setVersion(object.getVersion());
+                            rememberUser(object);
+                        }
+                        if (emailChanged) {
+                            releaseOldEmail(user.getId(), previousEmail[0], object != null ? object.getEmail() : null);
+                        }
+                        if (callback != null) {
+                            callback.onCompleted(null);
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        forgetUser(user.getId());
+                        if (claim == EmailClaim.CLAIMED) {
+                            releaseEmail(newEmail, user.getId());
+                        }
+                        if (callback != null) {
+                            callback.onFailed(e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /// the fields of a user that are different from another version of the user
+    /// @param base the last known version of the user
+    /// @param user the user with the new data
+    /// @return the names of the changed fields in the database and their new values, without the version
+    @NotNull
+    private static Map<String, Object> diffUser(@NotNull final User base, @NotNull final User user) {
+        Map<String, Object> before = base.toMap();
+        Map<String, Object> changes = new HashMap<>();
+        for (Map.Entry<String, Object> field : user.toMap().entrySet()) {
+            if (field.getKey().equals("version") || field.getKey().equals("id")) continue;
+            if (!Objects.equals(before.get(field.getKey()), field.getValue())) {
+                changes.put(field.getKey(), field.getValue());
+            }
+        }
+        return changes;
+    }
+
+    /// a copy of a user with changed fields
+    /// @param user the current user
+    /// @param changes the changed fields, by their names in the database
+    /// @see #diffUser(User, User)
+    @NotNull
+    private static User applyUserChanges(@NotNull final User user, @NotNull final Map<String, Object> changes) {
+        User next = new User(user);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            Object value = change.getValue();
+            switch (change.getKey()) {
+                case "email":
+                    next.setEmail((String) value);
+                    break;
+                case "password":
+                    next.setPassword((String) value);
+                    break;
+                case "firstName":
+                    next.setFirstName((String) value);
+                    break;
+                case "lastName":
+                    next.setLastName((String) value);
+                    break;
+                case "phone":
+                    next.setPhone((String) value);
+                    break;
+                case "admin":
+                    next.setAdmin(Boolean.TRUE.equals(value));
+                    break;
+                default:
+                    /// fullName is computed from the first and last name
+                    break;
+            }
+        }
+        return next;
+    }
+
+    /// keep a copy of the last version of a user, to compare the next update to
+    private void rememberUser(@Nullable final User user) {
+        if (user == null || user.getId() == null) return;
+        synchronized (lastKnownUsers) {
+            lastKnownUsers.put(user.getId(), new User(user));
+        }
+    }
+
+    @Nullable
+    private User getLastKnownUser(@NotNull final String uid) {
+        synchronized (lastKnownUsers) {
+            return lastKnownUsers.get(uid);
+        }
+    }
+
+    private void forgetUser(@NotNull final String uid) {
+        synchronized (lastKnownUsers) {
+            lastKnownUsers.remove(uid);
+        }
+    }
+
+    /// build the email index for all the users that are already in the database </br>
+    /// users created before the index existed can't log in until this runs once,
+    /// the lookups of emails that are not in the index run it if it never ran.
+    /// an email that is already in the index, or that an earlier user in the list has too, keeps its owner,
+    /// the other users with that email are skipped and logged, they have to change their email to log in
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the number of users that were indexed
+    /// @see #ensureEmailIndex(DatabaseCallback)
+    @Override
+    public void migrateUsersByEmailIndex(@Nullable final DatabaseCallback<Integer> callback) {
+        getUserList(new DatabaseCallback<List<User>>() {
+            @Override
+            public void onCompleted(List<User> users) {
+                fetch(USERS_BY_EMAIL_PATH).addOnCompleteListener(read -> {
+                    if (!read.isSuccessful()) {
+                        if (callback != null) {
+                            callback.onFailed(read.getException());
+                        }
+                        return;
+                    }
+                    indexUserEmails(users, read.getResult(), callback);
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /// write the index entries of the users whose email is not claimed yet
+    /// @param users all the users
+    /// @param index the email index as it is now
+    /// @param callback the callback to call with the number of users that were indexed
+    /// @see #migrateUsersByEmailIndex(DatabaseCallback)
+    private void indexUserEmails(@NotNull final List<User> users, @NotNull final DataSnapshot index, @Nullable final DatabaseCallback<Integer> callback) {
+        Map<String, String> owners = new HashMap<>();
+        for (DataSnapshot entry : index.getChildren()) {
+            owners.put(entry.getKey(), entry.getValue(String.class));
+        }
+        WriteBatch batch = newBatch();
+        List<String> skipped = new ArrayList<>();
+        int count = 0;
+        for (User user : users) {
+            if (user == null || user.getEmail() == null) continue;
+            String key = encodeEmailKey(user.getEmail());
+            String owner = owners.get(key);
+            if (owner == null) {
+                batch.put(USERS_BY_EMAIL_PATH + "/" + key, user.getId());
+                owners.put(key, user.getId());
+                count++;
+            } else if (!owner.equals(user.getId())) {
+                skipped.add(user.getId() + " (" + user.getEmail() + " belongs to " + owner + ")");
+            }
+        }
+        if (!skipped.isEmpty()) {
+            Log.w(TAG, "Skipped " + skipped.size() + " users whose email belongs to another user: " + skipped);
+        }
+        batch.put(MIGRATIONS_PATH + "/" + USERS_BY_EMAIL_PATH, true);
+        final int indexed = count;
+        Log.d(TAG, "Indexing " + indexed + " user emails");
+        batch.commit(new DatabaseCallback<Void>() {
+            @Override
+            public void onCompleted(Void object) {
+                if (callback != null) {
+                    callback.onCompleted(indexed);
+                }
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /// run the migration of the email index if it never ran </br>
+    /// concurrent calls wait for the same migration, and after it ran once only a small flag is read
+    /// @param callback the callback to call with true if the migration ran now, false if it already ran before
+    private void ensureEmailIndex(@NotNull final DatabaseCallback<Boolean> callback) {
+        getData(MIGRATIONS_PATH + "/" + USERS_BY_EMAIL_PATH, Boolean.class, false, new DatabaseCallback<Boolean>() {
+            @Override
+            public void onCompleted(Boolean migrated) {
+                if (Boolean.TRUE.equals(migrated)) {
+                    callback.onCompleted(false);
+                    return;
+                }
+                final Task<Integer> migration;
+                synchronized (DatabaseService.this) {
+                    if (emailIndexMigration == null) {
+                        final TaskCompletionSource<Integer> source = new TaskCompletionSource<>();
+                        emailIndexMigration = source.getTask();
+                        migrateUsersByEmailIndex(new DatabaseCallback<Integer>() {
+                            @Override
+                            public void onCompleted(Integer count) {
+                                synchronized (DatabaseService.this) {
+                                    emailIndexMigration = null;
+                                }
+                                source.setResult(count);
+                            }
+
+                            @Override
+                            public void onFailed(Exception e) {
+                                synchronized (DatabaseService.this) {
+                                    emailIndexMigration = null;
+                                }
+                                source.setException(e);
+                            }
+                        });
+                    }
+                    migration = emailIndexMigration;
+                }
+                migration.addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        callback.onCompleted(true);
+                    } else {
+                        callback.onFailed(task.getException());
+                    }
+                });
             }
 
             @Override
             public void onFailed(Exception e) {
-
+                callback.onFailed(e);
             }
         });
     }
 
-    /// check if an email already exists in the database
-    /// @param email the email to check
+    /// get the id of the user that owns an email from the email index
+    /// @param email the email to look up, in any case
     /// @param callback the callback to call when the operation is completed
-    public void checkIfEmailExists(@NotNull final String email, @NotNull final DatabaseCallback<Boolean> callback) {
-        getUserList(new DatabaseCallback<List<User>>() {
+    ///              the callback will receive the user id, or null if no user has this email
+    /// if the index has no entry and the index was never migrated, the migration runs once and the index is read again
+    /// @see #ensureEmailIndex(DatabaseCallback)
+    private void getUserIdByEmail(@NotNull final String email, @NotNull final DatabaseCallback<String> callback) {
+        final String path = USERS_BY_EMAIL_PATH + "/" + encodeEmailKey(email);
+        getData(path, String.class, false, new DatabaseCallback<String>() {
             @Override
-            public void onCompleted(List<User> users) {
-                for (User user : users) {
-                    if (Objects.equals(user.getEmail(), email)) {
-                        callback.onCompleted(true);
-                        return;
-                    }
+            public void onCompleted(String uid) {
+                if (uid != null) {
+                    callback.onCompleted(uid);
+                    return;
                 }
-                callback.onCompleted(false);
+                ensureEmailIndex(new DatabaseCallback<Boolean>() {
+                    @Override
+                    public void onCompleted(Boolean migrated) {
+                        if (!migrated) {
+                            callback.onCompleted(null);
+                            return;
+                        }
+                        getData(path, String.class, false, callback);
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        callback.onFailed(e);
+                    }
+                });
             }
 
             @Override
             public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// the result of claiming an email in the email index
+    /// @see #claimEmail(String, String, DatabaseCallback)
+    private enum EmailClaim {
+        /// the email had no owner, and now belongs to the user
+        CLAIMED,
+        /// the email already belonged to the user, or there was no email to claim
+        OWNED
+    }
+
+    /// claim the email of a user before the user is written with it </br>
+    /// the index is migrated first if it never was, so the emails of old users can't be claimed by others
+    /// @param uid the id of the user
+    /// @param email the email to claim, null to claim nothing
+    /// @param callback the callback to call with the claim,
+    ///              or with an EmailExistsException if the email belongs to another user
+    private void claimUserEmail(@NotNull final String uid, @Nullable final String email, @NotNull final DatabaseCallback<EmailClaim> callback) {
+        if (email == null) {
+            callback.onCompleted(EmailClaim.OWNED);
+            return;
+        }
+        ensureEmailIndex(new DatabaseCallback<Boolean>() {
+            @Override
+            public void onCompleted(Boolean migrated) {
+                claimEmail(email, uid, new DatabaseCallback<EmailClaim>() {
+                    @Override
+                    public void onCompleted(EmailClaim claim) {
+                        if (claim == null) {
+                            Log.d(TAG, "Email " + email + " already belongs to another user");
+                            callback.onFailed(new EmailExistsException(email));
+                            return;
+                        }
+                        callback.onCompleted(claim);
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        callback.onFailed(e);
+                    }
+                });
+            }
 
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
             }
         });
     }
 
-    public void updateUser(@NotNull final User user, @Nullable final DatabaseCallback<Void> callback) {
-        runTransaction(USERS_PATH + "/" + user.getId(), User.class, currentUser -> user, new DatabaseCallback<User>() {
+    /// claim an email in the email index for a user, in a transaction </br>
+    /// two users that register the same email at the same time can't both get it,
+    /// and the database rules (database.rules.json) reject a write that gives a claimed email to another user
+    /// @param email the email to claim
+    /// @param uid the id of the user that claims it
+    /// @param callback the callback to call with the claim, null if the email belongs to another user
+    private void claimEmail(@NotNull final String email, @NotNull final String uid, @NotNull final DatabaseCallback<EmailClaim> callback) {
+        final String path = USERS_BY_EMAIL_PATH + "/" + encodeEmailKey(email);
+        final MetricsRegistry.Sample sample = metrics.start("transaction", path);
+        readData(path).runTransaction(new Transaction.Handler() {
+            @NonNull
             @Override
-            public void onCompleted(User object) {
-                if (callback != null) {
-                    callback.onCompleted(null);
+            public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                if (currentData.getValue(String.class) != null) {
+                    return Transaction.abort();
                 }
+                currentData.setValue(uid);
+                return Transaction.success(currentData);
             }
 
             @Override
-            public void onFailed(Exception e) {
-                if (callback != null) {
-                    callback.onFailed(e);
+            public void onComplete(@Nullable DatabaseError error, boolean committed, @Nullable DataSnapshot currentData) {
+                cache.invalidate(path);
+                if (error != null) {
+                    Log.e(TAG, "Failed to claim email", error.toException());
+                    sample.fail();
+                    callback.onFailed(error.toException());
+                    return;
+                }
+                sample.finish(0, currentData != null ? estimateSize(currentData) : 0);
+                if (committed) {
+                    callback.onCompleted(EmailClaim.CLAIMED);
+                    return;
                 }
+                String owner = currentData != null ? currentData.getValue(String.class) : null;
+                callback.onCompleted(uid.equals(owner) ? EmailClaim.OWNED : null);
             }
         });
     }
 
+    /// remove an email from the email index, only if it still belongs to the user </br>
+    /// used after the user stopped using the email, or when the write of a user that claimed it failed
+    /// @param email the email to release, may be null
+    /// @param uid the id of the user that owns it
+    private void releaseEmail(@Nullable final String email, @NotNull final String uid) {
+        if (email == null) return;
+        runTransaction(USERS_BY_EMAIL_PATH + "/" + encodeEmailKey(email), String.class,
+                owner -> uid.equals(owner) ? null : owner, new DatabaseCallback<String>() {
+                    @Override
+                    public void onCompleted(String owner) {
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        Log.w(TAG, "Failed to release email " + email + " of user " + uid, e);
+                    }
+                });
+    }
+
+    /// release the email a user had before an update, if the update changed it
+    /// @param uid the id of the user
+    /// @param oldEmail the email before the update, may be null
+    /// @param newEmail the email after the update, may be null
+    private void releaseOldEmail(@NotNull final String uid, @Nullable final String oldEmail, @Nullable final String newEmail) {
+        if (oldEmail == null || (newEmail != null && encodeEmailKey(oldEmail).equals(encodeEmailKey(newEmail)))) return;
+        releaseEmail(oldEmail, uid);
+    }
+
+    /// encode an email so it can be used as a key in the database </br>
+    /// emails are compared case-insensitively, and the characters that are not allowed in keys ('.', '#', '$', '[', ']', '/') are escaped
+    /// @param email the email to encode
+    /// @return the encoded email
+    private static String encodeEmailKey(@NotNull final String email) {
+        return email.trim().toLowerCase(Locale.ROOT)
+                .replace("%", "%25")
+                .replace(".", "%2E")
+                .replace("#", "%23")
+                .replace("$", "%24")
+                .replace("[", "%5B")
+                .replace("]", "%5D")
+                .replace("/", "%2F");
+    }
+
 
     // endregion User Section
 
@@ -345,8 +2537,38 @@ public class DatabaseService {
     ///             if the operation fails, the callback will receive an exception
     /// @see DatabaseCallback
     /// @see Food
+    @Override
     public void createNewFood(@NotNull final Food food, @Nullable final DatabaseCallback<Void> callback) {
-        writeData(FOODS_PATH + "/" + food.getId(), food, callback);
+        createNewFoods(Collections.singletonList(food), callback);
+    }
+
+    /// create many foods in a single multi-path update, with their images and the change of the food counter </br>
+    /// foods whose id already exists are replaced and not counted again, so importing the same file twice doesn't change the counter
+    /// @param foods the foods to create, keep the list small enough for one update (a few MB)
+    /// @param callback the callback to call when the operation is completed
+    @Override
+    public void createNewFoods(@NotNull final List<Food> foods, @Nullable final DatabaseCallback<Void> callback) {
+        List<String> ids = new ArrayList<>(foods.size());
+        for (Food food : foods) {
+            ids.add(food.getId());
+        }
+        getExistingIds(FOODS_PATH, ids, new DatabaseCallback<Set<String>>() {
+            @Override
+            public void onCompleted(Set<String> existing) {
+                WriteBatch batch = newBatch();
+                for (Food food : foods) {
+                    /// only a food that is not in the database, and not earlier in the list, is counted
+                    batch.createFood(food, existing.add(food.getId()));
+                }
+                batch.commit(callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
     }
 
     /// get a food from the database
@@ -356,6 +2578,7 @@ public class DatabaseService {
     ///              if the operation fails, the callback will receive an exception
     /// @see DatabaseCallback
     /// @see Food
+    @Override
     public void getFood(@NotNull final String foodId, @NotNull final DatabaseCallback<Food> callback) {
         getData(FOODS_PATH + "/" + foodId, Food.class, callback);
     }
@@ -367,14 +2590,83 @@ public class DatabaseService {
     /// @see DatabaseCallback
     /// @see List
     /// @see Food
+    @Override
     public void getFoodList(@NotNull final DatabaseCallback<List<Food>> callback) {
         getDataList(FOODS_PATH, Food.class, callback);
     }
 
+    /// get all the foods from the database in batches </br>
+    /// the first stream downloads all the foods and keeps them as a local copy,
+    /// the next streams download only the foods that changed since then, and deliver the local copy
+    /// @param batchSize the number of foods in each batch
+    /// @param callback the callback to call with every batch of foods
+    /// @see DatabaseStreamCallback
+    /// @see #syncSince(String, long, Class, DatabaseCallback)
+    @Override
+    public void streamFoodList(final int batchSize, @NotNull final DatabaseStreamCallback<Food> callback) {
+        if (!foodStore.isSynced()) {
+            getDataListStream(FOODS_PATH, Food.class, batchSize, new DatabaseStreamCallback<Food>() {
+                private final Map<String, Food> foods = new LinkedHashMap<>();
+                /// the foods that are written after the read have a later updatedAt, and the deleted ones a later tombstone
+                private long checkpoint = 0;
+
+                @Override
+                public void onItem(Food food) {
+                    foods.put(food.getId(), food);
+                    checkpoint = Math.max(checkpoint, food.getUpdatedAtMillis());
+                    callback.onItem(food);
+                }
+
+                @Override
+                public void onBatch(List<Food> objects) {
+                    callback.onBatch(objects);
+                }
+
+                @Override
+                public void onComplete(int count) {
+                    foodStore.apply(new SyncResult<>(foods, new HashSet<>(), checkpoint, true));
+                    callback.onComplete(count);
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    callback.onFailed(e);
+                }
+            });
+            return;
+        }
+        syncList(FOODS_PATH, Food.class, foodStore, new DatabaseCallback<List<Food>>() {
+            @Override
+            public void onCompleted(List<Food> foods) {
+                for (int start = 0; start < foods.size(); start += batchSize) {
+                    deliverBatch(foods.subList(start, Math.min(start + batchSize, foods.size())), callback);
+                }
+                callback.onComplete(foods.size());
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// get a page of the foods from the database, ordered by id
+    /// @param afterKey the cursor of the previous page, null to get the first page
+    /// @param pageSize the maximum number of foods in the page
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the page of foods
+    /// @see Page#getNextKey()
+    @Override
+    public void getFoodPage(@Nullable final String afterKey, final int pageSize, @NotNull final DatabaseCallback<Page<Food>> callback) {
+        getDataPage(FOODS_PATH, Food.class, afterKey, pageSize, callback);
+    }
+
     /// generate a new id for a new food in the database
     /// @return a new id for the food
     /// @see #generateNewId(String)
     /// @see Food
+    @Override
     public String generateFoodId() {
         return generateNewId(FOODS_PATH);
     }
@@ -382,8 +2674,126 @@ public class DatabaseService {
     /// delete a food from the database
     /// @param foodId the id of the food to delete
     /// @param callback the callback to call when the operation is completed
+    @Override
     public void deleteFood(@NotNull final String foodId, @Nullable final DatabaseCallback<Void> callback) {
-        deleteData(FOODS_PATH + "/" + foodId, callback);
+        getExistingIds(FOODS_PATH, Collections.singletonList(foodId), new DatabaseCallback<Set<String>>() {
+            @Override
+            public void onCompleted(Set<String> existing) {
+                WriteBatch batch = newBatch();
+                if (existing.contains(foodId)) {
+                    batch.deleteFood(foodId);
+                } else {
+                    /// the food was already deleted, it is not subtracted from the counter again
+                    batch.delete(FOOD_IMAGES_PATH + "/" + foodId);
+                }
+                batch.commit(callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// get some foods from the database, the foods are read in parallel
+    /// @param foodIds the ids of the foods to get
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the foods that exist, in the order of the ids
+    @Override
+    public void getFoodsByIds(@NotNull final List<String> foodIds, @NotNull final DatabaseCallback<List<Food>> callback) {
+        getDataByIds(FOODS_PATH, foodIds, Food.class, callback);
+    }
+
+    /// listen to the foods that are written or deleted at or after a time, only those foods are downloaded
+    /// @param since the time to listen from, by the clock of the database server
+    /// @param listener the listener to call with every added, changed and removed food
+    /// @return a subscription to call unsubscribe on when the screen no longer shows the foods
+    /// @see #observeSince(String, long, Class, ChildListener)
+    @Override
+    public Subscription observeFoods(final long since, @NotNull final ChildListener<Food> listener) {
+        return observeSince(FOODS_PATH, since, Food.class, listener);
+    }
+
+    /// the foods that are written or deleted at or after a time as Flow publishers, shared by the screens
+    /// @param since the time to listen from, by the clock of the database server
+    /// @return the publisher of the changes of the foods
+    /// @see #publisherSince(String, long, LongFunction)
+    @Override
+    public CollectionPublisher<Food> publishFoods(final long since) {
+        return publisherSince(FOODS_PATH, since, checkpoint -> listener -> observeFoods(checkpoint, listener));
+    }
+
+    /// get the image of a food from the database </br>
+    /// foods that were not migrated yet still have the image inside the food, so it is read from there
+    /// @param foodId the id of the food
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the base64 image, or null if the food has no image
+    /// @see #migrateFoodImages(DatabaseCallback)
+    @Override
+    public void getFoodImage(@NotNull final String foodId, @NotNull final DatabaseCallback<String> callback) {
+        getData(FOOD_IMAGES_PATH + "/" + foodId, String.class, new DatabaseCallback<String>() {
+            @Override
+            public void onCompleted(String image) {
+                if (image != null) {
+                    callback.onCompleted(image);
+                    return;
+                }
+                getData(FOODS_PATH + "/" + foodId + "/imageBase64", String.class, callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /// move the images of the foods that are already in the database to the food images path </br>
+    /// until this runs once, reading the food list still downloads the images of the old foods
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the number of images that were moved
+    /// @see #getFoodImage(String, DatabaseCallback)
+    @Override
+    public void migrateFoodImages(@Nullable final DatabaseCallback<Integer> callback) {
+        getFoodList(new DatabaseCallback<List<Food>>() {
+            @Override
+            public void onCompleted(List<Food> foods) {
+                WriteBatch batch = newBatch();
+                int moved = 0;
+                for (Food food : foods) {
+                    if (food == null || food.getImageBase64() == null) continue;
+                    batch.put(FOOD_IMAGES_PATH + "/" + food.getId(), food.getImageBase64());
+                    batch.delete(FOODS_PATH + "/" + food.getId() + "/imageBase64");
+                    moved++;
+                }
+                final int count = moved;
+                Log.d(TAG, "Moving " + count + " food images");
+                batch.commit(new DatabaseCallback<Void>() {
+                    @Override
+                    public void onCompleted(Void object) {
+                        if (callback != null) {
+                            callback.onCompleted(count);
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        if (callback != null) {
+                            callback.onFailed(e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
     }
 
     // endregion food section
@@ -391,14 +2801,27 @@ public class DatabaseService {
     // region cart section
 
     /// create a new cart in the database
+    /// the cart and its entry in the user carts index are written together in a single update
     /// @param cart the cart object to create
     /// @param callback the callback to call when the operation is completed
     ///               the callback will receive void
     ///              if the operation fails, the callback will receive an exception
     /// @see DatabaseCallback
     /// @see Cart
+    @Override
     public void createNewCart(@NotNull final Cart cart, @Nullable final DatabaseCallback<Void> callback) {
-        writeData(CARTS_PATH + "/" + cart.getId(), cart, callback);
+        getExistingIds(CARTS_PATH, Collections.singletonList(cart.getId()), new DatabaseCallback<Set<String>>() {
+            @Override
+            public void onCompleted(Set<String> existing) {
+                newBatch().createCart(cart, !existing.contains(cart.getId())).commit(callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback == null) return;
+                callback.onFailed(e);
+            }
+        });
     }
 
     /// get a cart from the database
@@ -408,6 +2831,7 @@ public class DatabaseService {
     ///               if the operation fails, the callback will receive an exception
     /// @see DatabaseCallback
     /// @see Cart
+    @Override
     public void getCart(@NotNull final String cartId, @NotNull final DatabaseCallback<Cart> callback) {
         getData(CARTS_PATH + "/" + cartId, Cart.class, callback);
     }
@@ -416,19 +2840,133 @@ public class DatabaseService {
     /// @param callback the callback to call when the operation is completed
     ///               the callback will receive a list of cart objects
     ///
+    @Override
     public void getCartList(@NotNull final DatabaseCallback<List<Cart>> callback) {
         getDataList(CARTS_PATH, Cart.class, callback);
     }
 
-    /// get all the carts of a specific user from the database
+    /// get the summaries of all the carts from the database
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the list of cart summaries
+    /// @see CartSummary
+    @Override
+    public void getCartSummaryList(@NotNull final DatabaseCallback<List<CartSummary>> callback) {
+        getDataList(CART_SUMMARIES_PATH, CartSummary.class, callback);
+    }
+
+    /// get a page of the cart summaries from the database, ordered by cart id
+    /// @param afterKey the cursor of the previous page, null to get the first page
+    /// @param pageSize the maximum number of carts in the page
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the page of cart summaries
+    /// @see Page#getNextKey()
+    @Override
+    public void getCartSummaryPage(@Nullable final String afterKey, final int pageSize, @NotNull final DatabaseCallback<Page<CartSummary>> callback) {
+        getDataPage(CART_SUMMARIES_PATH, CartSummary.class, afterKey, pageSize, callback);
+    }
+
+    /// listen to the summaries of the carts that are written or deleted at or after a time, only those summaries are downloaded </br>
+    /// the deleted carts are found by the tombstones of the carts
+    /// @param since the time to listen from, by the clock of the database server
+    /// @param listener the listener to call with every added, changed and removed cart summary
+    /// @return a subscription to call unsubscribe on when the screen no longer shows the carts
+    /// @see #observeSince(String, String, long, Class, ChildListener)
+    @Override
+    public Subscription observeCartSummaries(final long since, @NotNull final ChildListener<CartSummary> listener) {
+        return observeSince(CART_SUMMARIES_PATH, CARTS_PATH, since, CartSummary.class, listener);
+    }
+
+    /// listen to the carts of a specific user being added and removed </br>
+    /// the user carts index is observed, and the summary of every added cart is read by its id
+    /// @param uid the id of the user to listen to the carts of
+    /// @param listener the listener to call with every added and removed cart summary
+    /// @return a subscription to call unsubscribe on when the screen no longer shows the carts
+    /// @see Subscription
+    @Override
+    public Subscription observeUserCartSummaries(@NotNull final String uid, @NotNull final ChildListener<CartSummary> listener) {
+        return subscribe(USER_CARTS_PATH + "/" + uid, Boolean.class, new ChildListener<Boolean>() {
+            /// the summaries that were read, to report them when they are removed
+            private final Map<String, CartSummary> summaries = new HashMap<>();
+
+            /// the number of summaries that are being read
+            private int reading = 0;
+
+            /// true after the index reported its first children, they are loaded when their summaries are read
+            private boolean indexLoaded = false, loaded = false;
+
+            @Override
+            public void onChildAdded(String cartId, Boolean object) {
+                reading++;
+                getData(CART_SUMMARIES_PATH + "/" + cartId, CartSummary.class, new DatabaseCallback<CartSummary>() {
+                    @Override
+                    public void onCompleted(CartSummary summary) {
+                        reading--;
+                        if (summary != null) {
+                            summaries.put(cartId, summary);
+                            listener.onChildAdded(cartId, summary);
+                        }
+                        checkLoaded();
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        reading--;
+                        listener.onFailed(e);
+                    }
+                });
+            }
+
+            @Override
+            public void onLoaded() {
+                indexLoaded = true;
+                checkLoaded();
+            }
+
+            private void checkLoaded() {
+                if (loaded || !indexLoaded || reading > 0) return;
+                loaded = true;
+                listener.onLoaded();
+            }
+
+            @Override
+            public void onChildChanged(String cartId, Boolean object) {
+                /// the index only holds true, so there is nothing to change
+            }
+
+            @Override
+            public void onChildRemoved(String cartId, Boolean object) {
+                CartSummary summary = summaries.remove(cartId);
+                if (summary != null) {
+                    listener.onChildRemoved(cartId, summary);
+                }
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                listener.onFailed(e);
+            }
+        });
+    }
+
+    /// the summaries of the carts of a specific user as Flow publishers, shared by all the subscribers
+    /// @param uid the id of the user to publish the carts of
+    /// @return the publisher of the carts of the user
+    /// @see CollectionPublisher
+    @Override
+    public CollectionPublisher<CartSummary> publishUserCarts(@NotNull final String uid) {
+        return publisher(USER_CARTS_PATH + "/" + uid, listener -> observeUserCartSummaries(uid, listener));
+    }
+
+    /// get the summaries of the carts of a specific user from the database
+    /// the cart ids are read from the user carts index, and only the summaries of those carts are downloaded
     /// @param uid the id of the user to get the carts for
     /// @param callback the callback to call when the operation is completed
-    public void getUserCartList(@NotNull String uid, @NotNull final DatabaseCallback<List<Cart>> callback) {
-        getCartList(new DatabaseCallback<>() {
+    @Override
+    public void getUserCartSummaryList(@NotNull String uid, @NotNull final DatabaseCallback<List<CartSummary>> callback) {
+        getKeys(USER_CARTS_PATH + "/" + uid, new DatabaseCallback<List<String>>() {
             @Override
-            public void onCompleted(List<Cart> carts) {
-                carts.removeIf(cart -> !Objects.equals(cart.getUid(), uid));
-                callback.onCompleted(carts);
+            public void onCompleted(List<String> cartIds) {
+                getDataByIds(CART_SUMMARIES_PATH, cartIds, CartSummary.class, callback);
             }
 
             @Override
@@ -438,20 +2976,169 @@ public class DatabaseService {
         });
     }
 
-
     /// generate a new id for a new cart in the database
     /// @return a new id for the cart
     /// @see #generateNewId(String)
     /// @see Cart
+    @Override
     public String generateCartId() {
         return generateNewId(CARTS_PATH);
     }
 
     /// delete a cart from the database
+    /// the entry of the cart in the user carts index is removed in the same update
     /// @param cartId the id of the cart to delete
     /// @param callback the callback to call when the operation is completed
+    @Override
     public void deleteCart(@NotNull final String cartId, @Nullable final DatabaseCallback<Void> callback) {
-        deleteData(CARTS_PATH + "/" + cartId, callback);
+        getCart(cartId, new DatabaseCallback<Cart>() {
+            @Override
+            public void onCompleted(Cart cart) {
+                WriteBatch batch = newBatch();
+                if (cart != null) {
+                    batch.deleteCart(cart);
+                } else {
+                    batch.delete(CARTS_PATH + "/" + cartId);
+                    batch.delete(CART_SUMMARIES_PATH + "/" + cartId);
+                    batch.tombstone(CARTS_PATH, cartId);
+                }
+                batch.commit(callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /// build the user carts index for all the carts that are already in the database </br>
+    /// carts created before the index existed are not listed in getUserCartSummaryList until this runs once
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the number of carts that were indexed
+    /// @see #getUserCartSummaryList(String, DatabaseCallback)
+    @Override
+    public void migrateUserCartsIndex(@Nullable final DatabaseCallback<Integer> callback) {
+        getCartList(new DatabaseCallback<List<Cart>>() {
+            @Override
+            public void onCompleted(List<Cart> carts) {
+                WriteBatch batch = newBatch();
+                for (Cart cart : carts) {
+                    if (cart == null || cart.getUid() == null) continue;
+                    batch.put(USER_CARTS_PATH + "/" + cart.getUid() + "/" + cart.getId(), true);
+                }
+                Log.d(TAG, "Indexing " + batch.size() + " user carts");
+                batch.commit(new DatabaseCallback<Void>() {
+                    @Override
+                    public void onCompleted(Void object) {
+                        if (callback != null) {
+                            callback.onCompleted(batch.size());
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        if (callback != null) {
+                            callback.onFailed(e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /// rewrite the carts that were saved with a copy of the food for every unit as cart lines </br>
+    /// old carts are read as lines already, so this only makes them smaller in the database
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the number of carts that were rewritten
+    /// @see Cart#setFoods(List)
+    @Override
+    public void migrateCartItems(@Nullable final DatabaseCallback<Integer> callback) {
+        getCartList(new DatabaseCallback<List<Cart>>() {
+            @Override
+            public void onCompleted(List<Cart> carts) {
+                WriteBatch batch = newBatch();
+                for (Cart cart : carts) {
+                    if (cart == null) continue;
+                    batch.put(CARTS_PATH + "/" + cart.getId(), cart);
+                }
+                Log.d(TAG, "Rewriting " + batch.size() + " carts");
+                batch.commit(new DatabaseCallback<Void>() {
+                    @Override
+                    public void onCompleted(Void object) {
+                        if (callback != null) {
+                            callback.onCompleted(batch.size());
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        if (callback != null) {
+                            callback.onFailed(e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /// write the summaries of the carts that are already in the database </br>
+    /// carts created before the summaries existed are not shown in the lists of carts until this runs once
+    /// @param callback the callback to call when the operation is completed
+    ///              the callback will receive the number of summaries that were written
+    /// @see CartSummary
+    @Override
+    public void migrateCartSummaries(@Nullable final DatabaseCallback<Integer> callback) {
+        getCartList(new DatabaseCallback<List<Cart>>() {
+            @Override
+            public void onCompleted(List<Cart> carts) {
+                WriteBatch batch = newBatch();
+                long now = System.currentTimeMillis();
+                for (Cart cart : carts) {
+                    if (cart == null) continue;
+                    batch.put(CART_SUMMARIES_PATH + "/" + cart.getId(), new CartSummary(cart, now));
+                }
+                Log.d(TAG, "Writing " + batch.size() + " cart summaries");
+                batch.commit(new DatabaseCallback<Void>() {
+                    @Override
+                    public void onCompleted(Void object) {
+                        if (callback != null) {
+                            callback.onCompleted(batch.size());
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        if (callback != null) {
+                            callback.onFailed(e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (callback != null) {
+                    callback.onFailed(e);
+                }
+            }
+        });
     }
 
     // endregion cart section
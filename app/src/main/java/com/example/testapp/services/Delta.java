@@ -0,0 +1,69 @@
+package com.example.testapp.services;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/// a single change in a list of data in the database
+/// @param <T> the type of the items in the list
+/// @see CollectionPublisher#deltas()
+public class Delta<T> {
+
+    public enum Type {ADDED, CHANGED, REMOVED}
+
+    private final Type type;
+
+    /// the key of the item that changed
+    private final String key;
+
+    /// the new value of the item, or its last value if it was removed
+    @Nullable
+    private final T value;
+
+    public Delta(@NonNull Type type, @NonNull String key, @Nullable T value) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+    }
+
+    @NonNull
+    public Type getType() {
+        return type;
+    }
+
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    @Nullable
+    public T getValue() {
+        return value;
+    }
+
+    /// combine this change with a later change of the same item,
+    /// so a subscriber that is behind gets a single change for every item
+    /// @param next the later change
+    /// @return the change that has the same result as both changes, or null if they cancel each other
+    @Nullable
+    Delta<T> merge(@NonNull Delta<T> next) {
+        if (type == Type.ADDED) {
+            /// added and removed before the subscriber saw it
+            if (next.type == Type.REMOVED) return null;
+            return new Delta<>(Type.ADDED, key, next.value);
+        }
+        if (type == Type.REMOVED && next.type == Type.ADDED) {
+            return new Delta<>(Type.CHANGED, key, next.value);
+        }
+        return next;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Delta{" +
+                "type=" + type +
+                ", key='" + key + '\'' +
+                ", value=" + value +
+                '}';
+    }
+}
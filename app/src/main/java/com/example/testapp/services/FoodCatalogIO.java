@@ -0,0 +1,457 @@
+package com.example.testapp.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.example.testapp.models.Food;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/// imports and exports the food catalog as a JSON or CSV file </br>
+/// the files are read and written as streams: an import holds one chunk of foods at a time
+/// and writes it in a single batch before it reads the next one, and an export holds one page of foods,
+/// so the memory stays the same for a catalog of any size.
+/// the work runs on a background thread, the progress and the result are delivered on the main thread.
+/// the JSON file is an array of foods, the CSV file has a header line with the names of the columns,
+/// both use the fields id, name, price and imageBase64. foods without an id get a new one
+/// @see DatabaseRepository#createNewFoods(List, DatabaseService.DatabaseCallback)
+public class FoodCatalogIO {
+
+    private static final String TAG = "FoodCatalogIO";
+
+    /// the formats of the files
+    public enum Format {
+        JSON, CSV;
+
+        /// get the format of a file by its name or its mime type, JSON if it is not CSV
+        @NonNull
+        public static Format of(@Nullable String nameOrType) {
+            if (nameOrType != null && nameOrType.toLowerCase(Locale.ROOT).contains("csv")) {
+                return CSV;
+            }
+            return JSON;
+        }
+    }
+
+    /// listener of the progress of an import or an export
+    public interface ProgressListener {
+        /// called on the main thread after every chunk or page
+        /// @param count the number of foods that were imported or exported so far
+        void onProgress(long count);
+    }
+
+    /// the maximum number of foods in a batch of an import
+    private static final int CHUNK_SIZE = 500;
+
+    /// the maximum size of the foods in a batch of an import, the images make most of it
+    private static final long CHUNK_BYTES = 4 * 1024 * 1024;
+
+    /// the number of foods read in every page of an export
+    private static final int PAGE_SIZE = 200;
+
+    /// the columns of the CSV file, and the fields of the JSON objects
+    private static final String[] COLUMNS = {"id", "name", "price", "imageBase64"};
+
+    /// the characters that a key of the database can't have, the ids of the file are used as keys
+    private static final String INVALID_ID_CHARS = "/.#$[]";
+
+    /// the maximum length of a key of the database, in UTF-8 bytes
+    private static final int MAX_ID_BYTES = 768;
+
+    /// one thread for all the imports and exports, they run one after the other
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FoodCatalogIO");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final DatabaseRepository repository;
+
+    /// the reads and writes of the import and export, they must not slow down the screens
+    private final DatabaseFutures futures;
+
+    public FoodCatalogIO(@NonNull DatabaseRepository repository) {
+        this.repository = repository;
+        this.futures = repository.futures().withTimeout(1, TimeUnit.MINUTES).withPriority(RequestScheduler.Priority.BACKGROUND);
+    }
+
+    /// import foods from a file, the foods with an id that already exists are replaced </br>
+    /// the chunks that were written before a failure or a cancel stay in the database
+    /// @param in the file, it is closed when the import ends
+    /// @param format the format of the file
+    /// @param progress the listener of the progress, may be null
+    /// @return a future of the number of foods that were imported, cancel it to stop the import after the current chunk
+    @NonNull
+    public CompletableFuture<Long> importFoods(@NonNull InputStream in, @NonNull Format format, @Nullable ProgressListener progress) {
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try (Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                Chunker chunker = new Chunker(result, progress);
+                if (format == Format.CSV) {
+                    readCsv(reader, chunker);
+                } else {
+                    readJson(reader, chunker);
+                }
+                chunker.flush();
+                complete(result, chunker.count, null);
+            } catch (Exception e) {
+                Log.e(TAG, "Import failed", e);
+                complete(result, 0, e);
+            }
+        });
+        return result;
+    }
+
+    /// export all the foods to a file, one page of foods at a time
+    /// @param out the file, it is closed when the export ends
+    /// @param format the format of the file
+    /// @param includeImages true to read and write the image of every food, the export is much larger and slower
+    /// @param progress the listener of the progress, may be null
+    /// @return a future of the number of foods that were exported, cancel it to stop the export after the current page
+    @NonNull
+    public CompletableFuture<Long> exportFoods(@NonNull OutputStream out, @NonNull Format format, boolean includeImages, @Nullable ProgressListener progress) {
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            long count = 0;
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                FoodWriter foodWriter = format == Format.CSV ? new CsvFoodWriter(writer) : new JsonFoodWriter(writer);
+                foodWriter.begin();
+                String afterKey = null;
+                do {
+                    if (result.isDone()) return;
+                    Page<Food> page = futures.getFoodPage(afterKey, PAGE_SIZE).get();
+                    List<String> images = includeImages ? readImages(page.getItems()) : null;
+                    for (int i = 0; i < page.getItems().size(); i++) {
+                        foodWriter.write(page.getItems().get(i), images != null ? images.get(i) : null);
+                    }
+                    writer.flush();
+                    count += page.getItems().size();
+                    reportProgress(progress, count);
+                    afterKey = page.getNextKey();
+                } while (afterKey != null);
+                foodWriter.end();
+                complete(result, count, null);
+            } catch (Exception e) {
+                Log.e(TAG, "Export failed", e);
+                complete(result, count, e);
+            }
+        });
+        return result;
+    }
+
+    // region import
+
+    /// collects the foods of an import into chunks, and writes every full chunk before more foods are read
+    private class Chunker {
+        final CompletableFuture<Long> result;
+        final ProgressListener progress;
+        final List<Food> chunk = new ArrayList<>(CHUNK_SIZE);
+        long chunkBytes, count;
+
+        Chunker(CompletableFuture<Long> result, ProgressListener progress) {
+            this.result = result;
+            this.progress = progress;
+        }
+
+        void add(@NonNull Food food) throws Exception {
+            if (food.getId() == null || food.getId().isEmpty()) {
+                food.setId(repository.generateFoodId());
+            }
+            chunk.add(food);
+            chunkBytes += food.getImageBase64() != null ? food.getImageBase64().length() : 0;
+            if (chunk.size() >= CHUNK_SIZE || chunkBytes >= CHUNK_BYTES) {
+                flush();
+            }
+        }
+
+        /// write the chunk and wait for it, so the next chunk is read only after this one is in the database
+        void flush() throws Exception {
+            if (result.isDone()) throw new IOException("Import cancelled");
+            if (chunk.isEmpty()) return;
+            futures.createNewFoods(new ArrayList<>(chunk)).get();
+            count += chunk.size();
+            chunk.clear();
+            chunkBytes = 0;
+            reportProgress(progress, count);
+        }
+    }
+
+    /// read an array of foods
+    private static void readJson(@NonNull Reader in, @NonNull Chunker chunker) throws Exception {
+        JsonReader reader = new JsonReader(in);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Food food = new Food();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        food.setId(reader.nextString());
+                        break;
+                    case "name":
+                        food.setName(reader.nextString());
+                        break;
+                    case "price":
+                        food.setPrice(reader.nextDouble());
+                        break;
+                    case "imageBase64":
+                        food.setImageBase64(reader.nextString());
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            chunker.add(validate(food, chunker.count + chunker.chunk.size() + 1));
+        }
+        reader.endArray();
+    }
+
+    /// read the lines of a CSV file, the columns are found by the names in the header line
+    private static void readCsv(@NonNull Reader reader, @NonNull Chunker chunker) throws Exception {
+        List<String> header = readCsvRecord(reader);
+        if (header == null) return;
+        int[] columns = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i] = header.indexOf(COLUMNS[i]);
+        }
+        if (columns[1] < 0 || columns[2] < 0) {
+            throw new IOException("The CSV header must have the columns name and price");
+        }
+        List<String> record;
+        while ((record = readCsvRecord(reader)) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) continue;
+            long index = chunker.count + chunker.chunk.size() + 1;
+            Food food = new Food();
+            food.setId(column(record, columns[0]));
+            food.setName(column(record, columns[1]));
+            try {
+                food.setPrice(Double.parseDouble(column(record, columns[2])));
+            } catch (NumberFormatException | NullPointerException e) {
+                throw new IOException("Invalid price of food " + index, e);
+            }
+            food.setImageBase64(column(record, columns[3]));
+            chunker.add(validate(food, index));
+        }
+    }
+
+    /// read a line of a CSV file, quoted fields may have commas, quotes ("") and line breaks
+    /// @return the fields of the line, or null at the end of the file
+    @Nullable
+    @VisibleForTesting
+    static List<String> readCsvRecord(@NonNull Reader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false, read = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            read = true;
+            if (quoted) {
+                if (c != '"') {
+                    field.append((char) c);
+                    continue;
+                }
+                reader.mark(1);
+                if (reader.read() == '"') {
+                    field.append('"');
+                } else {
+                    reader.reset();
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!read) return null;
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Nullable
+    private static String column(@NonNull List<String> record, int column) {
+        if (column < 0 || column >= record.size() || record.get(column).isEmpty()) return null;
+        return record.get(column);
+    }
+
+    /// @param index the number of the food in the file, for the error message
+    @NonNull
+    @VisibleForTesting
+    static Food validate(@NonNull Food food, long index) throws IOException {
+        if (food.getId() != null && !isValidId(food.getId())) {
+            throw new IOException("Food " + index + " has an invalid id, an id can't have the characters " + INVALID_ID_CHARS);
+        }
+        if (food.getName() == null || food.getName().trim().isEmpty()) {
+            throw new IOException("Food " + index + " has no name");
+        }
+        if (food.getPrice() < 0 || Double.isNaN(food.getPrice()) || Double.isInfinite(food.getPrice())) {
+            throw new IOException("Food " + index + " has an invalid price");
+        }
+        return food;
+    }
+
+    /// check if an id can be a key of the database </br>
+    /// the ids are written as path segments, so an id with a slash would write the food somewhere else
+    private static boolean isValidId(@NonNull String id) {
+        if (id.getBytes(StandardCharsets.UTF_8).length > MAX_ID_BYTES) return false;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (INVALID_ID_CHARS.indexOf(c) >= 0 || c < 0x20 || c == 0x7f) return false;
+        }
+        return true;
+    }
+
+    // endregion import
+
+    // region export
+
+    /// writes the foods of an export in a format
+    private interface FoodWriter {
+        void begin() throws IOException;
+
+        void write(@NonNull Food food, @Nullable String imageBase64) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    private static class JsonFoodWriter implements FoodWriter {
+        private final JsonWriter writer;
+
+        JsonFoodWriter(Writer writer) {
+            this.writer = new JsonWriter(writer);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            writer.beginArray();
+        }
+
+        @Override
+        public void write(@NonNull Food food, @Nullable String imageBase64) throws IOException {
+            writer.beginObject();
+            writer.name("id").value(food.getId());
+            writer.name("name").value(food.getName());
+            writer.name("price").value(food.getPrice());
+            if (imageBase64 != null) {
+                writer.name("imageBase64").value(imageBase64);
+            }
+            writer.endObject();
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.endArray();
+            writer.flush();
+        }
+    }
+
+    @VisibleForTesting
+    static class CsvFoodWriter implements FoodWriter {
+        private final Writer writer;
+
+        CsvFoodWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(@NonNull Food food, @Nullable String imageBase64) throws IOException {
+            writer.write(quote(food.getId()));
+            writer.write(',');
+            writer.write(quote(food.getName()));
+            writer.write(',');
+            writer.write(Double.toString(food.getPrice()));
+            writer.write(',');
+            writer.write(quote(imageBase64));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.flush();
+        }
+
+        /// quote a field if it has a comma, a quote or a line break
+        @NonNull
+        private static String quote(@Nullable String value) {
+            if (value == null) return "";
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    /// read the images of a page of foods at the same time
+    /// @return the images, in the order of the foods, null for a food without an image
+    @NonNull
+    private List<String> readImages(@NonNull List<Food> foods) throws ExecutionException, InterruptedException {
+        List<CompletableFuture<String>> images = new ArrayList<>(foods.size());
+        for (Food food : foods) {
+            images.add(futures.getFoodImage(food.getId()));
+        }
+        return DatabaseFutures.allAsList(images).get();
+    }
+
+    // endregion export
+
+    private static void reportProgress(@Nullable ProgressListener progress, long count) {
+        if (progress == null) return;
+        mainHandler.post(() -> progress.onProgress(count));
+    }
+
+    /// complete the future on the main thread, like the futures of DatabaseFutures
+    private static void complete(@NonNull CompletableFuture<Long> result, long count, @Nullable Exception e) {
+        mainHandler.post(() -> {
+            if (e != null) {
+                result.completeExceptionally(e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                result.complete(count);
+            }
+        });
+    }
+}
@@ -0,0 +1,453 @@
+package com.example.testapp.services;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartSummary;
+import com.example.testapp.models.Food;
+import com.example.testapp.models.User;
+import com.example.testapp.services.DatabaseService.ChildListener;
+import com.example.testapp.services.DatabaseService.DatabaseCallback;
+import com.example.testapp.services.DatabaseService.Subscription;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/// a backend that keeps all the data in memory </br>
+/// nothing is saved, so it is used for tests and for generating load without Firebase.
+/// the callbacks are posted to the main thread like the other backends.
+/// the models are copied when they are written and when they are returned, like the other backends
+/// that convert them, so a caller that changes a model doesn't change the stored data
+/// @see DatabaseRepository
+/// @see DatabaseProvider.Backend#IN_MEMORY
+public class InMemoryRepository implements DatabaseRepository {
+
+    /// the data, sorted by id like the keys in Firebase
+    private final TreeMap<String, User> users = new TreeMap<>();
+    private final TreeMap<String, Food> foods = new TreeMap<>();
+    private final Map<String, String> foodImages = new HashMap<>();
+    private final TreeMap<String, Cart> carts = new TreeMap<>();
+
+    /// the summaries of the carts, updated with the carts like in the other backends
+    private final TreeMap<String, CartSummary> cartSummaries = new TreeMap<>();
+
+    /// maps a normalized email to the id of the user that owns it
+    private final Map<String, String> usersByEmail = new HashMap<>();
+
+    /// the listeners of the users, the foods and the carts
+    private final List<ChildListener<User>> userListeners = new ArrayList<>();
+    private final List<ChildListener<Food>> foodListeners = new ArrayList<>();
+    private final List<ChildListener<CartSummary>> cartSummaryListeners = new ArrayList<>();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /// the injected faults, the chance of an operation to fail and the longest delay of a result
+    /// @see #setFaults(double, long)
+    private double failureRate = 0;
+    private long maxLatencyMillis = 0;
+    private final Random random = new Random();
+
+    /// make the operations slow and flaky, to check how the app and the retries handle a bad connection </br>
+    /// a failed operation reports an IOException, a failed write was still applied,
+    /// like a write whose answer was lost on the way back
+    /// @param failureRate the chance of every operation to fail, 0 for no failures
+    /// @param maxLatencyMillis the longest delay of every result, the delays are random up to it
+    /// @see Resilience
+    public synchronized void setFaults(double failureRate, long maxLatencyMillis) {
+        this.failureRate = failureRate;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    // region private helpers
+
+    private <T> void deliver(@Nullable final DatabaseCallback<T> callback, @Nullable final T result) {
+        if (callback == null) return;
+        long latency = maxLatencyMillis > 0 ? (long) (random.nextDouble() * maxLatencyMillis) : 0;
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            mainHandler.postDelayed(() -> callback.onFailed(new IOException("Injected fault")), latency);
+            return;
+        }
+        mainHandler.postDelayed(() -> callback.onCompleted(result), latency);
+    }
+
+    private static String generateId() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static String normalizeEmail(@NonNull String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /// copies of models, in the same order
+    private static <T> List<T> copyAll(@NonNull Collection<T> items, @NonNull UnaryOperator<T> copy) {
+        List<T> copies = new ArrayList<>(items.size());
+        for (T item : items) {
+            copies.add(copy.apply(item));
+        }
+        return copies;
+    }
+
+    /// a copy of a model that may be null
+    @Nullable
+    private static <T> T copyOrNull(@Nullable T item, @NonNull UnaryOperator<T> copy) {
+        return item != null ? copy.apply(item) : null;
+    }
+
+    /// get a page of a sorted map, with copies of the items
+    private static <T> Page<T> page(@NonNull TreeMap<String, T> map, @Nullable String afterKey, int pageSize, @NonNull UnaryOperator<T> copy) {
+        Map<String, T> tail = afterKey != null ? map.tailMap(afterKey, false) : map;
+        List<T> items = new ArrayList<>(pageSize);
+        String lastKey = null;
+        boolean hasMore = false;
+        for (Map.Entry<String, T> entry : tail.entrySet()) {
+            if (items.size() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            items.add(copy.apply(entry.getValue()));
+            lastKey = entry.getKey();
+        }
+        return new Page<>(items, hasMore ? lastKey : null);
+    }
+
+    private enum Change {ADDED, CHANGED, REMOVED}
+
+    /// report a change to listeners on the main thread
+    private <T> void notifyListeners(@NonNull List<ChildListener<T>> listeners, @NonNull Change change, @NonNull String key, @NonNull T object) {
+        List<ChildListener<T>> targets = new ArrayList<>(listeners);
+        mainHandler.post(() -> {
+            for (ChildListener<T> listener : targets) {
+                switch (change) {
+                    case ADDED:
+                        listener.onChildAdded(key, object);
+                        break;
+                    case CHANGED:
+                        listener.onChildChanged(key, object);
+                        break;
+                    case REMOVED:
+                        listener.onChildRemoved(key, object);
+                        break;
+                }
+            }
+        });
+    }
+
+    /// add a listener and report copies of the current items to it
+    private <T> Subscription addListener(@NonNull List<ChildListener<T>> listeners, @NonNull Map<String, T> current, @NonNull UnaryOperator<T> copy, @NonNull ChildListener<T> listener) {
+        listeners.add(listener);
+        Map<String, T> snapshot = new TreeMap<>();
+        for (Map.Entry<String, T> entry : current.entrySet()) {
+            snapshot.put(entry.getKey(), copy.apply(entry.getValue()));
+        }
+        mainHandler.post(() -> {
+            for (Map.Entry<String, T> entry : snapshot.entrySet()) {
+                listener.onChildAdded(entry.getKey(), entry.getValue());
+            }
+            listener.onLoaded();
+        });
+        return () -> {
+            synchronized (InMemoryRepository.this) {
+                listeners.remove(listener);
+            }
+        };
+    }
+
+    /// the items of a map that were written at or after a time
+    private static <T> Map<String, T> changedSince(@NonNull Map<String, T> items, long since, @NonNull ToLongFunction<T> updatedAt) {
+        Map<String, T> result = new TreeMap<>();
+        for (Map.Entry<String, T> entry : items.entrySet()) {
+            if (updatedAt.applyAsLong(entry.getValue()) >= since) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    // endregion private helpers
+
+    // region User Section
+
+    @Override
+    public String generateUserId() {
+        return generateId();
+    }
+
+    @Override
+    public synchronized void createNewUser(@NonNull User user, @Nullable DatabaseCallback<Void> callback) {
+        String owner = user.getEmail() != null ? usersByEmail.get(normalizeEmail(user.getEmail())) : null;
+        if (owner != null && !owner.equals(user.getId())) {
+            if (callback != null) {
+                mainHandler.post(() -> callback.onFailed(new EmailExistsException(user.getEmail())));
+            }
+            return;
+        }
+        User previous = users.put(user.getId(), new User(user));
+        releaseEmail(previous);
+        if (user.getEmail() != null) {
+            usersByEmail.put(normalizeEmail(user.getEmail()), user.getId());
+        }
+        notifyListeners(userListeners, previous != null ? Change.CHANGED : Change.ADDED, user.getId(), new User(user));
+        deliver(callback, null);
+    }
+
+    @Override
+    public synchronized void getUser(@NonNull String uid, @NonNull DatabaseCallback<User> callback) {
+        deliver(callback, copyOrNull(users.get(uid), User::new));
+    }
+
+    @Override
+    public synchronized void getUserList(@NonNull DatabaseCallback<List<User>> callback) {
+        deliver(callback, copyAll(users.values(), User::new));
+    }
+
+    @Override
+    public synchronized void getUserPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<User>> callback) {
+        deliver(callback, page(users, afterKey, pageSize, User::new));
+    }
+
+    @Override
+    public synchronized void deleteUser(@NonNull String uid, @Nullable DatabaseCallback<Void> callback) {
+        User user = users.remove(uid);
+        if (user != null) {
+            releaseEmail(user);
+            notifyListeners(userListeners, Change.REMOVED, uid, user);
+        }
+        deliver(callback, null);
+    }
+
+    @Override
+    public synchronized void getUserByEmailAndPassword(@NonNull String email, @NonNull String password, @NonNull DatabaseCallback<User> callback) {
+        String uid = usersByEmail.get(normalizeEmail(email));
+        User user = uid != null ? users.get(uid) : null;
+        if (user != null && Objects.equals(user.getPassword(), password)) {
+            deliver(callback, new User(user));
+        } else {
+            deliver(callback, null);
+        }
+    }
+
+    @Override
+    public synchronized void checkIfEmailExists(@NonNull String email, @NonNull DatabaseCallback<Boolean> callback) {
+        deliver(callback, usersByEmail.containsKey(normalizeEmail(email)));
+    }
+
+    @Override
+    public synchronized void updateUser(@NonNull User user, @Nullable DatabaseCallback<Void> callback) {
+        String owner = user.getEmail() != null ? usersByEmail.get(normalizeEmail(user.getEmail())) : null;
+        if (owner != null && !owner.equals(user.getId())) {
+            if (callback != null) {
+                mainHandler.post(() -> callback.onFailed(new EmailExistsException(user.getEmail())));
+            }
+            return;
+        }
+        User previous = users.get(user.getId());
+        if (previous != null) {
+            user.setVersion(previous.getVersion() + 1);
+        }
+        users.put(user.getId(), new User(user));
+        releaseEmail(previous);
+        if (user.getEmail() != null) {
+            usersByEmail.put(normalizeEmail(user.getEmail()), user.getId());
+        }
+        notifyListeners(userListeners, previous != null ? Change.CHANGED : Change.ADDED, user.getId(), new User(user));
+        deliver(callback, null);
+    }
+
+    @Override
+    public synchronized Subscription observeUsers(long since, @NonNull ChildListener<User> listener) {
+        return addListener(userListeners, changedSince(users, since, User::getUpdatedAtMillis), User::new, listener);
+    }
+
+    /// remove the email of a user from the index, only if the index still maps it to the user
+    private void releaseEmail(@Nullable User user) {
+        if (user == null || user.getEmail() == null) return;
+        usersByEmail.remove(normalizeEmail(user.getEmail()), user.getId());
+    }
+
+    // endregion User Section
+
+    // region food section
+
+    @Override
+    public String generateFoodId() {
+        return generateId();
+    }
+
+    @Override
+    public synchronized void createNewFood(@NonNull Food food, @Nullable DatabaseCallback<Void> callback) {
+        Food summary = new Food(food);
+        summary.setImageBase64(null);
+        Food previous = foods.put(food.getId(), summary);
+        if (food.getImageBase64() != null) {
+            foodImages.put(food.getId(), food.getImageBase64());
+        } else {
+            foodImages.remove(food.getId());
+        }
+        notifyListeners(foodListeners, previous != null ? Change.CHANGED : Change.ADDED, food.getId(), new Food(summary));
+        deliver(callback, null);
+    }
+
+    @Override
+    public synchronized void getFood(@NonNull String foodId, @NonNull DatabaseCallback<Food> callback) {
+        deliver(callback, copyOrNull(foods.get(foodId), Food::new));
+    }
+
+    @Override
+    public synchronized void getFoodList(@NonNull DatabaseCallback<List<Food>> callback) {
+        deliver(callback, copyAll(foods.values(), Food::new));
+    }
+
+    @Override
+    public synchronized void getFoodsByIds(@NonNull List<String> foodIds, @NonNull DatabaseCallback<List<Food>> callback) {
+        List<Food> result = new ArrayList<>(foodIds.size());
+        for (String foodId : foodIds) {
+            Food food = foods.get(foodId);
+            if (food != null) {
+                result.add(new Food(food));
+            }
+        }
+        deliver(callback, result);
+    }
+
+    @Override
+    public synchronized void getFoodPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<Food>> callback) {
+        deliver(callback, page(foods, afterKey, pageSize, Food::new));
+    }
+
+    @Override
+    public synchronized void deleteFood(@NonNull String foodId, @Nullable DatabaseCallback<Void> callback) {
+        Food food = foods.remove(foodId);
+        foodImages.remove(foodId);
+        if (food != null) {
+            notifyListeners(foodListeners, Change.REMOVED, foodId, food);
+        }
+        deliver(callback, null);
+    }
+
+    @Override
+    public synchronized Subscription observeFoods(long since, @NonNull ChildListener<Food> listener) {
+        return addListener(foodListeners, changedSince(foods, since, Food::getUpdatedAtMillis), Food::new, listener);
+    }
+
+    @Override
+    public synchronized void getFoodImage(@NonNull String foodId, @NonNull DatabaseCallback<String> callback) {
+        deliver(callback, foodImages.get(foodId));
+    }
+
+    // endregion food section
+
+    // region cart section
+
+    @Override
+    public String generateCartId() {
+        return generateId();
+    }
+
+    @Override
+    public synchronized void createNewCart(@NonNull Cart cart, @Nullable DatabaseCallback<Void> callback) {
+        carts.put(cart.getId(), new Cart(cart));
+        CartSummary summary = new CartSummary(cart, System.currentTimeMillis());
+        CartSummary previous = cartSummaries.put(cart.getId(), summary);
+        notifyListeners(cartSummaryListeners, previous != null ? Change.CHANGED : Change.ADDED, cart.getId(), new CartSummary(summary));
+        deliver(callback, null);
+    }
+
+    @Override
+    public synchronized void getCart(@NonNull String cartId, @NonNull DatabaseCallback<Cart> callback) {
+        deliver(callback, copyOrNull(carts.get(cartId), Cart::new));
+    }
+
+    @Override
+    public synchronized void getCartList(@NonNull DatabaseCallback<List<Cart>> callback) {
+        deliver(callback, copyAll(carts.values(), Cart::new));
+    }
+
+    @Override
+    public synchronized void deleteCart(@NonNull String cartId, @Nullable DatabaseCallback<Void> callback) {
+        carts.remove(cartId);
+        CartSummary summary = cartSummaries.remove(cartId);
+        if (summary != null) {
+            notifyListeners(cartSummaryListeners, Change.REMOVED, cartId, summary);
+        }
+        deliver(callback, null);
+    }
+
+    @Override
+    public synchronized void getCartSummaryList(@NonNull DatabaseCallback<List<CartSummary>> callback) {
+        deliver(callback, copyAll(cartSummaries.values(), CartSummary::new));
+    }
+
+    @Override
+    public synchronized void getCartSummaryPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<CartSummary>> callback) {
+        deliver(callback, page(cartSummaries, afterKey, pageSize, CartSummary::new));
+    }
+
+    @Override
+    public synchronized void getUserCartSummaryList(@NonNull String uid, @NonNull DatabaseCallback<List<CartSummary>> callback) {
+        deliver(callback, copyAll(userCartSummaries(uid).values(), CartSummary::new));
+    }
+
+    @Override
+    public synchronized Subscription observeCartSummaries(long since, @NonNull ChildListener<CartSummary> listener) {
+        return addListener(cartSummaryListeners, changedSince(cartSummaries, since, CartSummary::getUpdatedAtMillis), CartSummary::new, listener);
+    }
+
+    @Override
+    public synchronized Subscription observeUserCartSummaries(@NonNull String uid, @NonNull ChildListener<CartSummary> listener) {
+        /// only pass on the changes of the carts of this user
+        return addListener(cartSummaryListeners, userCartSummaries(uid), CartSummary::new, new ChildListener<CartSummary>() {
+            @Override
+            public void onChildAdded(String key, CartSummary summary) {
+                if (Objects.equals(summary.getUid(), uid)) listener.onChildAdded(key, summary);
+            }
+
+            @Override
+            public void onChildChanged(String key, CartSummary summary) {
+                if (Objects.equals(summary.getUid(), uid)) listener.onChildChanged(key, summary);
+            }
+
+            @Override
+            public void onChildRemoved(String key, CartSummary summary) {
+                if (Objects.equals(summary.getUid(), uid)) listener.onChildRemoved(key, summary);
+            }
+
+            @Override
+            public void onLoaded() {
+                listener.onLoaded();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                listener.onFailed(e);
+            }
+        });
+    }
+
+    /// the summaries of the carts of a user, by cart id
+    private Map<String, CartSummary> userCartSummaries(@NonNull String uid) {
+        Map<String, CartSummary> summaries = new TreeMap<>();
+        for (CartSummary summary : cartSummaries.values()) {
+            if (Objects.equals(summary.getUid(), uid)) {
+                summaries.put(summary.getId(), summary);
+            }
+        }
+        return summaries;
+    }
+
+    // endregion cart section
+}
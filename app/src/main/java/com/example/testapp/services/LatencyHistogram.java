@@ -0,0 +1,92 @@
+package com.example.testapp.services;
+
+import java.util.Arrays;
+
+/// a histogram of latencies in microseconds, with buckets like an HDR histogram </br>
+/// every power of two is split into 32 buckets of the same width, so every value is counted
+/// within about 3% of its real value, while the histogram stays small (about 1200 counters)
+/// no matter how many values are recorded.
+/// the histogram is not thread safe
+/// @see MetricsRegistry
+class LatencyHistogram {
+
+    /// the number of bits of the buckets inside a power of two, 2^5 = 32 buckets
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /// the largest value that is counted in its own bucket, about 12 days, larger values are counted as this value
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final long[] counts = new long[indexOf(MAX_VALUE) + 1];
+
+    private long totalCount, sum, min = Long.MAX_VALUE, max;
+
+    /// count a value
+    /// @param micros the latency in microseconds, negative values are counted as 0
+    void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /// get the value that a percentage of the values are not larger than
+    /// @param percentile the percentage, between 0 and 100
+    /// @return the largest value of the bucket of the percentile, but not more than the largest value that was recorded
+    long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /// the bucket of a value: values below 32 have their own bucket,
+    /// and every power of two above it is split into 32 buckets
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /// the largest value that is counted in a bucket
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.testapp.services;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.function.Function;
+
+/// the conversion of the data of a read into the result of the read, either the result or the failure </br>
+/// the conversion runs the code of the models and of the mappers, not only DataSnapshot#getValue,
+/// so it can throw any RuntimeException. every one of them is kept as the failure of the read,
+/// so a bad record can't stop the mapping thread and leave the callback without an answer
+/// @param <R> the type of the result
+/// @see DatabaseService
+final class Mapping<R> {
+
+    @Nullable
+    private final R result;
+
+    @Nullable
+    private final RuntimeException failure;
+
+    private Mapping(@Nullable R result, @Nullable RuntimeException failure) {
+        this.result = result;
+        this.failure = failure;
+    }
+
+    /// convert data with a mapper
+    /// @param source the data to convert
+    /// @param mapper the function that converts the data
+    /// @return the result of the mapper, or the exception it threw
+    @NonNull
+    static <S, R> Mapping<R> apply(@NonNull S source, @NonNull Function<? super S, ? extends R> mapper) {
+        try {
+            return new Mapping<>(mapper.apply(source), null);
+        } catch (RuntimeException e) {
+            return new Mapping<>(null, e);
+        }
+    }
+
+    boolean isSuccessful() {
+        return failure == null;
+    }
+
+    /// the result of the mapper, null if it failed or returned null
+    @Nullable
+    R getResult() {
+        return result;
+    }
+
+    /// the exception the mapper threw, null if it succeeded
+    @Nullable
+    RuntimeException getFailure() {
+        return failure;
+    }
+}
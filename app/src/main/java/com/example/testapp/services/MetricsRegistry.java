@@ -0,0 +1,193 @@
+package com.example.testapp.services;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/// the metrics of the database operations, by operation and path </br>
+/// for every operation and path it keeps a latency histogram, the number of calls, failures and cache hits,
+/// the number of children that were read and the approximate size of the data that was read or written.
+/// paths are kept to their top level path and a * for the rest (users/*), so the number of entries stays small
+/// @see #start(String, String)
+/// @see DatabaseService
+public class MetricsRegistry {
+
+    /// the instance of this class
+    /// @see #getInstance()
+    private static MetricsRegistry instance;
+
+    /// get an instance of this class
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    /// the metrics, by "operation path"
+    private final Map<String, Metrics> metrics = new TreeMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    /// the metrics of a single operation on a single path
+    private static class Metrics {
+        final String operation, path;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long failures, cacheHits, children, bytes, maxBytes;
+
+        Metrics(String operation, String path) {
+            this.operation = operation;
+            this.path = path;
+        }
+    }
+
+    /// a single call of an operation, that is measured from start until it finishes or fails
+    public class Sample {
+        private final String operation, path;
+        private final long startedAt = SystemClock.elapsedRealtimeNanos();
+        private boolean done = false;
+
+        private Sample(String operation, String path) {
+            this.operation = operation;
+            this.path = path;
+        }
+
+        /// the operation succeeded
+        /// @param children the number of children that were read, 0 for writes
+        /// @param bytes the approximate size of the data that was read or written
+        public void finish(long children, long bytes) {
+            record(false, children, bytes);
+        }
+
+        /// the operation failed
+        public void fail() {
+            record(true, 0, 0);
+        }
+
+        /// the operation failed, but it was answered with cached data </br>
+        /// it is counted as a cache hit, not as a failure
+        public void servedStale() {
+            synchronized (MetricsRegistry.this) {
+                if (done) return;
+                done = true;
+                get(operation, path).cacheHits++;
+            }
+        }
+
+        private void record(boolean failed, long children, long bytes) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(SystemClock.elapsedRealtimeNanos() - startedAt);
+            synchronized (MetricsRegistry.this) {
+                if (done) return;
+                done = true;
+                Metrics m = get(operation, path);
+                m.latency.record(micros);
+                if (failed) {
+                    m.failures++;
+                }
+                m.children += children;
+                m.bytes += bytes;
+                m.maxBytes = Math.max(m.maxBytes, bytes);
+            }
+        }
+    }
+
+    /// the metrics of an operation on a path at a point in time
+    public static class OperationStats {
+        public final String operation, path;
+
+        /// the number of calls that went to the database, including the failed ones
+        public final long count;
+
+        public final long failures, cacheHits;
+
+        /// latency percentiles and the largest latency, in milliseconds
+        public final double p50, p95, p99, max;
+
+        /// the total number of children and bytes of all the calls, and the largest size of a single call
+        public final long children, bytes, maxBytes;
+
+        private OperationStats(Metrics m) {
+            operation = m.operation;
+            path = m.path;
+            count = m.latency.getTotalCount();
+            failures = m.failures;
+            cacheHits = m.cacheHits;
+            p50 = m.latency.getValueAtPercentile(50) / 1000.0;
+            p95 = m.latency.getValueAtPercentile(95) / 1000.0;
+            p99 = m.latency.getValueAtPercentile(99) / 1000.0;
+            max = m.latency.getMax() / 1000.0;
+            children = m.children;
+            bytes = m.bytes;
+            maxBytes = m.maxBytes;
+        }
+    }
+
+    /// start measuring a call of an operation
+    /// @param operation the name of the operation, like "list" or "update"
+    /// @param path the path of the operation
+    /// @return the sample to finish or fail when the call completes
+    public Sample start(@NonNull String operation, @NonNull String path) {
+        return new Sample(operation, normalizePath(path));
+    }
+
+    /// count a call of an operation that was answered from the cache, without going to the database
+    public synchronized void recordCacheHit(@NonNull String operation, @NonNull String path) {
+        get(operation, normalizePath(path)).cacheHits++;
+    }
+
+    /// get the metrics of all the operations, ordered by operation and path
+    public synchronized List<OperationStats> getStats() {
+        List<OperationStats> stats = new ArrayList<>(metrics.size());
+        for (Metrics m : metrics.values()) {
+            stats.add(new OperationStats(m));
+        }
+        return stats;
+    }
+
+    /// forget all the metrics
+    public synchronized void reset() {
+        metrics.clear();
+    }
+
+    /// the metrics as a text table, to show or log
+    @NonNull
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-22s %6s %4s %5s %8s %8s %8s %7s %9s%n",
+                "operation path", "calls", "err", "cache", "p50ms", "p95ms", "p99ms", "rows", "avg KB"));
+        for (OperationStats s : getStats()) {
+            builder.append(String.format(Locale.ROOT, "%-22s %6d %4d %5d %8.1f %8.1f %8.1f %7d %9.1f%n",
+                    s.operation + " " + s.path, s.count, s.failures, s.cacheHits, s.p50, s.p95, s.p99,
+                    s.count == 0 ? 0 : s.children / s.count,
+                    s.count == 0 ? 0 : s.bytes / 1024.0 / s.count));
+        }
+        return builder.toString();
+    }
+
+    private Metrics get(String operation, String path) {
+        String key = operation + " " + path;
+        Metrics m = metrics.get(key);
+        if (m == null) {
+            m = new Metrics(operation, path);
+            metrics.put(key, m);
+        }
+        return m;
+    }
+
+    /// keep the top level path of a path or a query, users/abc and users?limitToFirst=21 are users/* and users
+    @NonNull
+    private static String normalizePath(@NonNull String path) {
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        int slash = path.indexOf('/');
+        return slash >= 0 ? path.substring(0, slash) + "/*" : path;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.testapp.services;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/// a single page of a list read from the database
+/// @param <T> the type of the items in the page
+/// @see DatabaseService#getUserPage(String, int, DatabaseService.DatabaseCallback)
+public class Page<T> {
+
+    /// the items of the page, ordered by their key
+    private final List<T> items;
+
+    /// the key to continue after to get the next page, null if this is the last page
+    @Nullable
+    private final String nextKey;
+
+    public Page(@NonNull List<T> items, @Nullable String nextKey) {
+        this.items = items;
+        this.nextKey = nextKey;
+    }
+
+    @NonNull
+    public List<T> getItems() {
+        return items;
+    }
+
+    /// the cursor to pass as afterKey to get the next page
+    /// @return the key of the last item of this page, or null if there are no more pages
+    @Nullable
+    public String getNextKey() {
+        return nextKey;
+    }
+
+    public boolean hasMore() {
+        return nextKey != null;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.testapp.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/// decides when the reads of the database start, by their priority </br>
+/// every priority has its own lane with a limit of requests that run at the same time.
+/// a lane waits while a higher lane has requests running or waiting, so a read the user is waiting on
+/// doesn't compete with prefetches and refreshes. a request that waited longer than the limit of its lane
+/// starts anyway, so the lower lanes are never starved.
+/// the requests start on the thread that submits them or that finishes the previous request
+/// @see Priority
+/// @see DatabaseRepository#withPriority(Priority, Runnable)
+public class RequestScheduler {
+
+    /// the lanes, from the highest priority to the lowest
+    public enum Priority {
+        /// a read the user is waiting on, like the screen that was just opened
+        INTERACTIVE(6, 0),
+        /// the default, lists and refreshes
+        NORMAL(4, 1_000),
+        /// work the user doesn't wait on, like images, prefetches and migrations
+        BACKGROUND(2, 3_000);
+
+        /// the number of requests of the lane that run at the same time
+        final int maxConcurrency;
+
+        /// the longest time a request waits for the higher lanes before it starts anyway
+        final long maxWaitMillis;
+
+        Priority(int maxConcurrency, long maxWaitMillis) {
+            this.maxConcurrency = maxConcurrency;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+    }
+
+    /// a request to run when its lane allows it
+    public interface Request {
+        /// start the request
+        /// @param done call it once when the request completes, successfully or not, to free the place in the lane
+        void start(@NonNull Runnable done);
+    }
+
+    private static class Queued {
+        final Request request;
+        final Priority priority;
+        final long enqueuedAt = SystemClock.elapsedRealtime();
+
+        Queued(Request request, Priority priority) {
+            this.request = request;
+            this.priority = priority;
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /// the requests that wait, by lane, in the order they were submitted
+    private final Map<Priority, ArrayDeque<Queued>> queues = new EnumMap<>(Priority.class);
+
+    /// the number of requests that run, by lane
+    private final Map<Priority, Integer> running = new EnumMap<>(Priority.class);
+
+    /// true when a check of the waiting requests is posted, for the ones that wait too long
+    private boolean checkScheduled = false;
+
+    public RequestScheduler() {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            running.put(priority, 0);
+        }
+    }
+
+    /// run a request when its lane allows it, right away if the lane is free
+    /// @param priority the lane of the request
+    /// @param request the request
+    public void submit(@NonNull Priority priority, @NonNull Request request) {
+        synchronized (this) {
+            queues.get(priority).add(new Queued(request, priority));
+        }
+        dispatch();
+    }
+
+    /// the state of the lanes, to show in the diagnostics
+    @NonNull
+    public synchronized String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (Priority priority : Priority.values()) {
+            if (builder.length() > 0) builder.append(", ");
+            builder.append(String.format(Locale.ROOT, "%s %d/%d running, %d waiting",
+                    priority.name().toLowerCase(Locale.ROOT), running.get(priority), priority.maxConcurrency, queues.get(priority).size()));
+        }
+        return builder.toString();
+    }
+
+    // region private helpers
+
+    /// start all the requests that their lane allows
+    private void dispatch() {
+        List<Queued> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            for (Priority priority : Priority.values()) {
+                ArrayDeque<Queued> queue = queues.get(priority);
+                while (!queue.isEmpty() && running.get(priority) < priority.maxConcurrency
+                        && (!isDeferred(priority) || now - queue.peek().enqueuedAt >= priority.maxWaitMillis)) {
+                    ready.add(queue.poll());
+                    running.put(priority, running.get(priority) + 1);
+                }
+            }
+            scheduleCheck(now);
+        }
+        for (Queued queued : ready) {
+            start(queued);
+        }
+    }
+
+    /// check if a lane waits for the higher lanes
+    private boolean isDeferred(@NonNull Priority priority) {
+        for (Priority higher : Priority.values()) {
+            if (higher == priority) return false;
+            if (running.get(higher) > 0 || !queues.get(higher).isEmpty()) return true;
+        }
+        return false;
+    }
+
+    /// post a dispatch for when the first deferred request waited the limit of its lane
+    private void scheduleCheck(long now) {
+        if (checkScheduled) return;
+        long delay = Long.MAX_VALUE;
+        for (Priority priority : Priority.values()) {
+            Queued first = queues.get(priority).peek();
+            if (first == null || running.get(priority) >= priority.maxConcurrency) continue;
+            delay = Math.min(delay, Math.max(0, first.enqueuedAt + priority.maxWaitMillis - now));
+        }
+        if (delay == Long.MAX_VALUE) return;
+        checkScheduled = true;
+        mainHandler.postDelayed(() -> {
+            synchronized (this) {
+                checkScheduled = false;
+            }
+            dispatch();
+        }, delay);
+    }
+
+    private void start(@NonNull Queued queued) {
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        Runnable done = () -> {
+            if (!finished.compareAndSet(false, true)) return;
+            synchronized (this) {
+                running.put(queued.priority, running.get(queued.priority) - 1);
+            }
+            dispatch();
+        };
+        try {
+            queued.request.start(done);
+        } catch (RuntimeException e) {
+            done.run();
+            throw e;
+        }
+    }
+
+    // endregion private helpers
+}
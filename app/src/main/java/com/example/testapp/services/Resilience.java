@@ -0,0 +1,224 @@
+package com.example.testapp.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.testapp.services.DatabaseService.DatabaseCallback;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/// retries and circuit breakers for the operations of a database backend </br>
+/// an operation that fails with a transient failure (IOException or TimeoutException) is run again after a delay
+/// that grows with decorrelated jitter, so many clients that failed together don't retry together.
+/// writes are run again only if they are idempotent, running them twice must have the same result as running them once.
+/// <p>
+/// every top level path (users, foods, ...) has a circuit breaker:
+/// after too many failures in a row the circuit opens and the reads of that path fail at once
+/// with a CircuitOpenException, so the caller can use cached data instead of waiting for the database.
+/// after a while a single read is let through, and the circuit closes again if it succeeds.
+/// <p>
+/// the operations are not tied to Firebase, so the retries can be checked against
+/// an InMemoryRepository with injected faults
+/// @see Policy
+/// @see InMemoryRepository#setFaults(double, long)
+public class Resilience {
+
+    private static final String TAG = "Resilience";
+
+    /// the settings of the retries and the circuit breakers
+    public static class Policy {
+
+        /// 3 attempts, 100ms to 2s between them, the circuit opens after 5 failures for 10s
+        public static final Policy DEFAULT = new Policy(3, 100, 2_000, 5, 10_000);
+
+        /// a single attempt, and the circuits never open
+        public static final Policy NONE = new Policy(1, 0, 0, Integer.MAX_VALUE, 0);
+
+        /// the number of times an operation is run, including the first time
+        final int maxAttempts;
+
+        /// the shortest and the longest delay before running an operation again
+        final long baseDelayMillis, maxDelayMillis;
+
+        /// the number of failures in a row that open a circuit
+        final int failureThreshold;
+
+        /// how long a circuit stays open before a read is let through
+        final long openMillis;
+
+        public Policy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, int failureThreshold, long openMillis) {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+            if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) throw new IllegalArgumentException("invalid delays");
+            this.maxAttempts = maxAttempts;
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+        }
+    }
+
+    /// the failure of a read of a path whose circuit is open
+    public static class CircuitOpenException extends Exception {
+        public CircuitOpenException(@NonNull String circuit) {
+            super("Circuit of " + circuit + " is open");
+        }
+    }
+
+    /// the circuit breaker of a single top level path
+    private static class Circuit {
+        /// the number of failures in a row
+        int failures = 0;
+
+        /// the time the circuit opened, 0 while it is closed
+        long openedAt = 0;
+
+        /// true while the read that checks if the path works again is running
+        boolean probing = false;
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Policy policy;
+
+    private final Random random;
+
+    /// the circuits, by top level path
+    private final Map<String, Circuit> circuits = new HashMap<>();
+
+    public Resilience(@NonNull Policy policy) {
+        this(policy, new Random());
+    }
+
+    /// @param random the source of the jitter, a seeded one makes the delays repeatable
+    public Resilience(@NonNull Policy policy, @NonNull Random random) {
+        this.policy = policy;
+        this.random = random;
+    }
+
+    /// check if a failure may pass if the operation is run again
+    public static boolean isTransient(@NonNull Exception e) {
+        return e instanceof IOException || e instanceof TimeoutException;
+    }
+
+    /// read data with retries, through the circuit breaker of the path
+    /// @param path the path that is read, its top level path selects the circuit
+    /// @param operation the read, it calls the callback it gets once
+    /// @param callback the callback to call with the result, or with the last failure
+    public <T> void read(@NonNull String path, @NonNull Consumer<DatabaseCallback<T>> operation, @NonNull DatabaseCallback<T> callback) {
+        String circuit = circuitOf(path);
+        if (!allowRequest(circuit)) {
+            callback.onFailed(new CircuitOpenException(circuit));
+            return;
+        }
+        attempt(path, circuit, true, operation, callback, 1, policy.baseDelayMillis);
+    }
+
+    /// write data, with retries only if running the write again is safe </br>
+    /// writes don't go through the circuit breakers, but their results are counted by them
+    /// @param path the path that is written
+    /// @param idempotent true if running the write twice has the same result as running it once,
+    ///                   like setting a value, false for increments and other writes that depend on the current value
+    /// @param operation the write, it calls the callback it gets once
+    /// @param callback the callback to call with the result, or with the last failure
+    public <T> void write(@NonNull String path, boolean idempotent, @NonNull Consumer<DatabaseCallback<T>> operation, @NonNull DatabaseCallback<T> callback) {
+        attempt(path, circuitOf(path), idempotent, operation, callback, 1, policy.baseDelayMillis);
+    }
+
+    /// check if the circuit of a path is open
+    public synchronized boolean isOpen(@NonNull String path) {
+        Circuit circuit = circuits.get(circuitOf(path));
+        return circuit != null && circuit.openedAt != 0;
+    }
+
+    // region private helpers
+
+    private <T> void attempt(@NonNull String path, @NonNull String circuit, boolean retryable, @NonNull Consumer<DatabaseCallback<T>> operation,
+                             @NonNull DatabaseCallback<T> callback, int attempt, long previousDelay) {
+        operation.accept(new DatabaseCallback<T>() {
+            @Override
+            public void onCompleted(T object) {
+                onSuccess(circuit);
+                callback.onCompleted(object);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (!isTransient(e)) {
+                    /// the database answered, the path works
+                    onSuccess(circuit);
+                    callback.onFailed(e);
+                    return;
+                }
+                onFailure(circuit);
+                if (!retryable || attempt >= policy.maxAttempts || isOpen(circuit)) {
+                    callback.onFailed(e);
+                    return;
+                }
+                long delay = nextDelay(previousDelay);
+                Log.w(TAG, "Attempt " + attempt + " of " + path + " failed, retrying in " + delay + "ms", e);
+                mainHandler.postDelayed(() -> attempt(path, circuit, true, operation, callback, attempt + 1, delay), delay);
+            }
+        });
+    }
+
+    /// the next delay with decorrelated jitter: a random delay between the base delay and 3 times the previous delay
+    private synchronized long nextDelay(long previousDelay) {
+        long upper = Math.min(policy.maxDelayMillis, Math.max(policy.baseDelayMillis, previousDelay * 3));
+        if (upper <= policy.baseDelayMillis) return policy.baseDelayMillis;
+        return policy.baseDelayMillis + (long) (random.nextDouble() * (upper - policy.baseDelayMillis));
+    }
+
+    /// the top level path of a path or a query, like "users" for "users/abc" or "users?limitToFirst=21"
+    @NonNull
+    private static String circuitOf(@NonNull String path) {
+        int end = path.length();
+        int slash = path.indexOf('/');
+        int query = path.indexOf('?');
+        if (slash >= 0) end = slash;
+        if (query >= 0 && query < end) end = query;
+        return path.substring(0, end);
+    }
+
+    private synchronized boolean allowRequest(@NonNull String name) {
+        Circuit circuit = circuits.get(name);
+        if (circuit == null || circuit.openedAt == 0) return true;
+        if (circuit.probing || SystemClock.elapsedRealtime() - circuit.openedAt < policy.openMillis) return false;
+        /// half open, let a single read check if the path works again
+        circuit.probing = true;
+        return true;
+    }
+
+    private synchronized void onSuccess(@NonNull String name) {
+        Circuit circuit = circuits.get(name);
+        if (circuit == null) return;
+        if (circuit.openedAt != 0) {
+            Log.i(TAG, "Circuit of " + name + " closed");
+        }
+        circuits.remove(name);
+    }
+
+    private synchronized void onFailure(@NonNull String name) {
+        Circuit circuit = circuits.get(name);
+        if (circuit == null) {
+            circuit = new Circuit();
+            circuits.put(name, circuit);
+        }
+        circuit.failures++;
+        if (circuit.probing || (circuit.openedAt == 0 && circuit.failures >= policy.failureThreshold)) {
+            Log.w(TAG, "Circuit of " + name + " opened after " + circuit.failures + " failures");
+            circuit.openedAt = SystemClock.elapsedRealtime();
+            circuit.probing = false;
+        }
+    }
+
+    // endregion private helpers
+}
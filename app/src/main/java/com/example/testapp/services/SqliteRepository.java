@@ -0,0 +1,529 @@
+package com.example.testapp.services;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.testapp.models.Cart;
+import com.example.testapp.models.CartItem;
+import com.example.testapp.models.CartSummary;
+import com.example.testapp.models.Food;
+import com.example.testapp.models.User;
+import com.example.testapp.services.DatabaseService.DatabaseCallback;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/// a backend that saves the data in a local SQLite database </br>
+/// the lookups of the app use indexes: users by email, carts by uid and cart foods by food id.
+/// the queries run on a single background thread and the callbacks are called on the main thread
+/// @see DatabaseRepository
+/// @see DatabaseProvider.Backend#SQLITE
+public class SqliteRepository implements DatabaseRepository {
+
+    private static final String DATABASE_NAME = "testapp.db";
+    /// version 2 removed the images from the foods of the carts,
+    /// version 3 replaced the foods of the carts with cart items,
+    /// version 4 added the summary columns to the carts,
+    /// version 5 added the version and the time of the last write to the users
+    /// @see DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)
+    private static final int DATABASE_VERSION = 5;
+
+    private static final String USERS_TABLE = "users";
+    private static final String FOODS_TABLE = "foods";
+    private static final String CARTS_TABLE = "carts";
+    private static final String CART_ITEMS_TABLE = "cart_items";
+    /// the table of the foods of the carts before version 3
+    private static final String LEGACY_CART_FOODS_TABLE = "cart_foods";
+
+    private final DatabaseHelper helper;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "SqliteRepository"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public SqliteRepository(@NonNull Context context) {
+        this.helper = new DatabaseHelper(context.getApplicationContext());
+    }
+
+    /// creates the tables and the indexes of the database
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        DatabaseHelper(@NonNull Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            db.setForeignKeyConstraintsEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + USERS_TABLE + " (" +
+                    "id TEXT PRIMARY KEY, " +
+                    "email TEXT, " +
+                    "password TEXT, " +
+                    "first_name TEXT, " +
+                    "last_name TEXT, " +
+                    "phone TEXT, " +
+                    "is_admin INTEGER NOT NULL DEFAULT 0, " +
+                    "version INTEGER NOT NULL DEFAULT 0, " +
+                    "updated_at INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE INDEX idx_users_email ON " + USERS_TABLE + " (email COLLATE NOCASE)");
+
+            db.execSQL("CREATE TABLE " + FOODS_TABLE + " (" +
+                    "id TEXT PRIMARY KEY, " +
+                    "name TEXT, " +
+                    "price REAL NOT NULL DEFAULT 0, " +
+                    "image_base64 TEXT)");
+
+            db.execSQL("CREATE TABLE " + CARTS_TABLE + " (" +
+                    "id TEXT PRIMARY KEY, " +
+                    "title TEXT, " +
+                    "uid TEXT, " +
+                    "item_count INTEGER NOT NULL DEFAULT 0, " +
+                    "total_price REAL NOT NULL DEFAULT 0, " +
+                    "updated_at INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE INDEX idx_carts_uid ON " + CARTS_TABLE + " (uid)");
+
+            createCartItemsTable(db);
+        }
+
+        private static void createCartItemsTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + CART_ITEMS_TABLE + " (" +
+                    "cart_id TEXT NOT NULL REFERENCES " + CARTS_TABLE + "(id) ON DELETE CASCADE, " +
+                    "food_id TEXT NOT NULL, " +
+                    "quantity INTEGER NOT NULL, " +
+                    "price REAL NOT NULL DEFAULT 0, " +
+                    "position INTEGER NOT NULL, " +
+                    "PRIMARY KEY (cart_id, food_id))");
+            db.execSQL("CREATE INDEX idx_cart_items_food_id ON " + CART_ITEMS_TABLE + " (food_id)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 3) {
+                /// group the copies of the same food in a cart into a single item
+                createCartItemsTable(db);
+                db.execSQL("INSERT INTO " + CART_ITEMS_TABLE + " (cart_id, food_id, quantity, price, position) " +
+                        "SELECT cart_id, food_id, COUNT(*), MAX(price), MIN(position) FROM " + LEGACY_CART_FOODS_TABLE +
+                        " WHERE food_id IS NOT NULL GROUP BY cart_id, food_id");
+                db.execSQL("DROP TABLE " + LEGACY_CART_FOODS_TABLE);
+            }
+            if (oldVersion < 4) {
+                /// the summary columns of the existing carts are computed from their items
+                db.execSQL("ALTER TABLE " + CARTS_TABLE + " ADD COLUMN item_count INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + CARTS_TABLE + " ADD COLUMN total_price REAL NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + CARTS_TABLE + " ADD COLUMN updated_at INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("UPDATE " + CARTS_TABLE + " SET " +
+                        "item_count = (SELECT COALESCE(SUM(quantity), 0) FROM " + CART_ITEMS_TABLE + " WHERE cart_id = " + CARTS_TABLE + ".id), " +
+                        "total_price = (SELECT COALESCE(SUM(quantity * price), 0) FROM " + CART_ITEMS_TABLE + " WHERE cart_id = " + CARTS_TABLE + ".id)");
+            }
+            if (oldVersion < 5) {
+                /// the existing users start at version 0, written at an unknown time
+                db.execSQL("ALTER TABLE " + USERS_TABLE + " ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + USERS_TABLE + " ADD COLUMN updated_at INTEGER NOT NULL DEFAULT 0");
+            }
+        }
+    }
+
+    // region private helpers
+
+    /// run a query on the background thread and call the callback on the main thread with the result
+    private <T> void execute(@NonNull Callable<T> query, @Nullable DatabaseCallback<T> callback) {
+        executor.execute(() -> {
+            try {
+                T result = query.call();
+                if (callback != null) mainHandler.post(() -> callback.onCompleted(result));
+            } catch (Exception e) {
+                if (callback != null) mainHandler.post(() -> callback.onFailed(e));
+            }
+        });
+    }
+
+    private static String generateId() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static ContentValues toValues(@NonNull User user) {
+        ContentValues values = new ContentValues();
+        values.put("id", user.getId());
+        values.put("email", user.getEmail() != null ? user.getEmail().trim() : null);
+        values.put("password", user.getPassword());
+        values.put("first_name", user.getFirstName());
+        values.put("last_name", user.getLastName());
+        values.put("phone", user.getPhone());
+        values.put("is_admin", user.isAdmin() ? 1 : 0);
+        values.put("version", user.getVersion());
+        values.put("updated_at", System.currentTimeMillis());
+        return values;
+    }
+
+    private static User readUser(@NonNull Cursor cursor) {
+        User user = new User(
+                cursor.getString(cursor.getColumnIndexOrThrow("id")),
+                cursor.getString(cursor.getColumnIndexOrThrow("email")),
+                cursor.getString(cursor.getColumnIndexOrThrow("password")),
+                cursor.getString(cursor.getColumnIndexOrThrow("first_name")),
+                cursor.getString(cursor.getColumnIndexOrThrow("last_name")),
+                cursor.getString(cursor.getColumnIndexOrThrow("phone")),
+                cursor.getInt(cursor.getColumnIndexOrThrow("is_admin")) != 0);
+        user.setVersion(cursor.getLong(cursor.getColumnIndexOrThrow("version")));
+        user.setUpdatedAt(cursor.getLong(cursor.getColumnIndexOrThrow("updated_at")));
+        return user;
+    }
+
+    private static ContentValues toValues(@NonNull Food food) {
+        ContentValues values = new ContentValues();
+        values.put("id", food.getId());
+        values.put("name", food.getName());
+        values.put("price", food.getPrice());
+        values.put("image_base64", food.getImageBase64());
+        return values;
+    }
+
+    /// read a food without its image
+    private static Food readFood(@NonNull Cursor cursor) {
+        return new Food(
+                cursor.getString(cursor.getColumnIndexOrThrow("id")),
+                cursor.getString(cursor.getColumnIndexOrThrow("name")),
+                cursor.getDouble(cursor.getColumnIndexOrThrow("price")),
+                null);
+    }
+
+    private List<User> queryUsers(@Nullable String selection, @Nullable String[] args, @Nullable String limit) {
+        List<User> users = new ArrayList<>();
+        try (Cursor cursor = helper.getReadableDatabase().query(USERS_TABLE, null, selection, args, null, null, "id", limit)) {
+            while (cursor.moveToNext()) {
+                users.add(readUser(cursor));
+            }
+        }
+        return users;
+    }
+
+    /// the columns of a food without the image, so lists don't load the images
+    private static final String[] FOOD_SUMMARY_COLUMNS = {"id", "name", "price"};
+
+    private List<Food> queryFoods(@Nullable String selection, @Nullable String[] args, @Nullable String limit) {
+        List<Food> foods = new ArrayList<>();
+        try (Cursor cursor = helper.getReadableDatabase().query(FOODS_TABLE, FOOD_SUMMARY_COLUMNS, selection, args, null, null, "id", limit)) {
+            while (cursor.moveToNext()) {
+                foods.add(readFood(cursor));
+            }
+        }
+        return foods;
+    }
+
+    /// read carts with their items, in two queries instead of one query per cart
+    private List<Cart> queryCarts(@Nullable String selection, @Nullable String[] args, @Nullable String limit) {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Map<String, Cart> carts = new LinkedHashMap<>();
+        try (Cursor cursor = db.query(CARTS_TABLE, null, selection, args, null, null, "id", limit)) {
+            while (cursor.moveToNext()) {
+                String id = cursor.getString(cursor.getColumnIndexOrThrow("id"));
+                carts.put(id, new Cart(id,
+                        cursor.getString(cursor.getColumnIndexOrThrow("title")),
+                        new ArrayList<>(),
+                        cursor.getString(cursor.getColumnIndexOrThrow("uid"))));
+            }
+        }
+        if (carts.isEmpty()) return new ArrayList<>();
+
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < carts.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        String[] cartIds = carts.keySet().toArray(new String[0]);
+        try (Cursor cursor = db.query(CART_ITEMS_TABLE, null, "cart_id IN (" + placeholders + ")", cartIds,
+                null, null, "cart_id, position")) {
+            while (cursor.moveToNext()) {
+                Cart cart = carts.get(cursor.getString(cursor.getColumnIndexOrThrow("cart_id")));
+                if (cart != null) cart.getItems().add(new CartItem(
+                        cursor.getString(cursor.getColumnIndexOrThrow("food_id")),
+                        cursor.getInt(cursor.getColumnIndexOrThrow("quantity")),
+                        cursor.getDouble(cursor.getColumnIndexOrThrow("price"))));
+            }
+        }
+        return new ArrayList<>(carts.values());
+    }
+
+    /// the columns of a cart that are shown in the lists, the items are not read
+    private static final String[] CART_SUMMARY_COLUMNS = {"id", "title", "uid", "item_count", "total_price", "updated_at"};
+
+    private List<CartSummary> queryCartSummaries(@Nullable String selection, @Nullable String[] args, @Nullable String limit) {
+        List<CartSummary> summaries = new ArrayList<>();
+        try (Cursor cursor = helper.getReadableDatabase().query(CARTS_TABLE, CART_SUMMARY_COLUMNS, selection, args, null, null, "id", limit)) {
+            while (cursor.moveToNext()) {
+                summaries.add(new CartSummary(
+                        cursor.getString(cursor.getColumnIndexOrThrow("id")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("title")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("uid")),
+                        cursor.getInt(cursor.getColumnIndexOrThrow("item_count")),
+                        cursor.getDouble(cursor.getColumnIndexOrThrow("total_price")),
+                        cursor.getLong(cursor.getColumnIndexOrThrow("updated_at"))));
+            }
+        }
+        return summaries;
+    }
+
+    /// a page is read with one extra row to know if there is a next page
+    private static <T> Page<T> toPage(@NonNull List<T> items, int pageSize, @NonNull Function<T, String> keyOf) {
+        if (items.size() <= pageSize) return new Page<>(items, null);
+        List<T> pageItems = new ArrayList<>(items.subList(0, pageSize));
+        return new Page<>(pageItems, keyOf.apply(pageItems.get(pageSize - 1)));
+    }
+
+    private static String pageSelection(@Nullable String afterKey) {
+        return afterKey != null ? "id > ?" : null;
+    }
+
+    private static String[] pageArgs(@Nullable String afterKey) {
+        return afterKey != null ? new String[]{afterKey} : null;
+    }
+
+    // endregion private helpers
+
+    // region User Section
+
+    @Override
+    public String generateUserId() {
+        return generateId();
+    }
+
+    @Override
+    public void createNewUser(@NonNull User user, @Nullable DatabaseCallback<Void> callback) {
+        execute(() -> {
+            saveUser(user);
+            return null;
+        }, callback);
+    }
+
+    @Override
+    public void getUser(@NonNull String uid, @NonNull DatabaseCallback<User> callback) {
+        execute(() -> {
+            List<User> users = queryUsers("id = ?", new String[]{uid}, "1");
+            return users.isEmpty() ? null : users.get(0);
+        }, callback);
+    }
+
+    @Override
+    public void getUserList(@NonNull DatabaseCallback<List<User>> callback) {
+        execute(() -> queryUsers(null, null, null), callback);
+    }
+
+    @Override
+    public void getUserPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<User>> callback) {
+        execute(() -> toPage(queryUsers(pageSelection(afterKey), pageArgs(afterKey), String.valueOf(pageSize + 1)),
+                pageSize, User::getId), callback);
+    }
+
+    @Override
+    public void deleteUser(@NonNull String uid, @Nullable DatabaseCallback<Void> callback) {
+        execute(() -> {
+            helper.getWritableDatabase().delete(USERS_TABLE, "id = ?", new String[]{uid});
+            return null;
+        }, callback);
+    }
+
+    @Override
+    public void getUserByEmailAndPassword(@NonNull String email, @NonNull String password, @NonNull DatabaseCallback<User> callback) {
+        execute(() -> {
+            List<User> users = queryUsers("email = ? COLLATE NOCASE", new String[]{email.trim()}, "1");
+            if (users.isEmpty()) return null;
+            User user = users.get(0);
+            return Objects.equals(user.getPassword(), password) ? user : null;
+        }, callback);
+    }
+
+    @Override
+    public void checkIfEmailExists(@NonNull String email, @NonNull DatabaseCallback<Boolean> callback) {
+        execute(() -> !queryUsers("email = ? COLLATE NOCASE", new String[]{email.trim()}, "1").isEmpty(), callback);
+    }
+
+    @Override
+    public void updateUser(@NonNull User user, @Nullable DatabaseCallback<Void> callback) {
+        execute(() -> {
+            /// the next version of the stored user, like the versions of the other backends
+            List<User> stored = queryUsers("id = ?", new String[]{user.getId()}, "1");
+            if (!stored.isEmpty()) {
+                user.setVersion(stored.get(0).getVersion() + 1);
+            }
+            saveUser(user);
+            return null;
+        }, callback);
+    }
+
+    /// write a user, on the background thread </br>
+    /// the queries run one at a time, so no other user can take the email between the check and the write
+    /// @throws EmailExistsException if the email belongs to another user
+    private void saveUser(@NonNull User user) throws EmailExistsException {
+        if (user.getEmail() != null && !queryUsers("email = ? COLLATE NOCASE AND id != ?",
+                new String[]{user.getEmail().trim(), user.getId()}, "1").isEmpty()) {
+            throw new EmailExistsException(user.getEmail());
+        }
+        helper.getWritableDatabase().insertWithOnConflict(USERS_TABLE, null, toValues(user), SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // endregion User Section
+
+    // region food section
+
+    @Override
+    public String generateFoodId() {
+        return generateId();
+    }
+
+    @Override
+    public void createNewFood(@NonNull Food food, @Nullable DatabaseCallback<Void> callback) {
+        execute(() -> {
+            helper.getWritableDatabase().insertWithOnConflict(FOODS_TABLE, null, toValues(food), SQLiteDatabase.CONFLICT_REPLACE);
+            return null;
+        }, callback);
+    }
+
+    @Override
+    public void getFood(@NonNull String foodId, @NonNull DatabaseCallback<Food> callback) {
+        execute(() -> {
+            List<Food> foods = queryFoods("id = ?", new String[]{foodId}, "1");
+            return foods.isEmpty() ? null : foods.get(0);
+        }, callback);
+    }
+
+    @Override
+    public void getFoodList(@NonNull DatabaseCallback<List<Food>> callback) {
+        execute(() -> queryFoods(null, null, null), callback);
+    }
+
+    @Override
+    public void getFoodsByIds(@NonNull List<String> foodIds, @NonNull DatabaseCallback<List<Food>> callback) {
+        execute(() -> {
+            Map<String, Food> foods = new LinkedHashMap<>();
+            for (String foodId : foodIds) {
+                List<Food> found = queryFoods("id = ?", new String[]{foodId}, "1");
+                if (!found.isEmpty()) foods.put(foodId, found.get(0));
+            }
+            return new ArrayList<>(foods.values());
+        }, callback);
+    }
+
+    @Override
+    public void getFoodPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<Food>> callback) {
+        execute(() -> toPage(queryFoods(pageSelection(afterKey), pageArgs(afterKey), String.valueOf(pageSize + 1)),
+                pageSize, Food::getId), callback);
+    }
+
+    @Override
+    public void deleteFood(@NonNull String foodId, @Nullable DatabaseCallback<Void> callback) {
+        execute(() -> {
+            helper.getWritableDatabase().delete(FOODS_TABLE, "id = ?", new String[]{foodId});
+            return null;
+        }, callback);
+    }
+
+    @Override
+    public void getFoodImage(@NonNull String foodId, @NonNull DatabaseCallback<String> callback) {
+        execute(() -> {
+            try (Cursor cursor = helper.getReadableDatabase().query(FOODS_TABLE, new String[]{"image_base64"},
+                    "id = ?", new String[]{foodId}, null, null, null, "1")) {
+                return cursor.moveToFirst() ? cursor.getString(0) : null;
+            }
+        }, callback);
+    }
+
+    // endregion food section
+
+    // region cart section
+
+    @Override
+    public String generateCartId() {
+        return generateId();
+    }
+
+    @Override
+    public void createNewCart(@NonNull Cart cart, @Nullable DatabaseCallback<Void> callback) {
+        execute(() -> {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                ContentValues values = new ContentValues();
+                values.put("id", cart.getId());
+                values.put("title", cart.getTitle());
+                values.put("uid", cart.getUid());
+                values.put("item_count", cart.getItemCount());
+                values.put("total_price", cart.getTotalPrice());
+                values.put("updated_at", System.currentTimeMillis());
+                db.insertWithOnConflict(CARTS_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                db.delete(CART_ITEMS_TABLE, "cart_id = ?", new String[]{cart.getId()});
+                List<CartItem> items = cart.getItems();
+                for (int i = 0; i < items.size(); i++) {
+                    CartItem item = items.get(i);
+                    ContentValues itemValues = new ContentValues();
+                    itemValues.put("cart_id", cart.getId());
+                    itemValues.put("food_id", item.getFoodId());
+                    itemValues.put("quantity", item.getQuantity());
+                    itemValues.put("price", item.getPrice());
+                    itemValues.put("position", i);
+                    db.insert(CART_ITEMS_TABLE, null, itemValues);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return null;
+        }, callback);
+    }
+
+    @Override
+    public void getCart(@NonNull String cartId, @NonNull DatabaseCallback<Cart> callback) {
+        execute(() -> {
+            List<Cart> carts = queryCarts("id = ?", new String[]{cartId}, "1");
+            return carts.isEmpty() ? null : carts.get(0);
+        }, callback);
+    }
+
+    @Override
+    public void getCartList(@NonNull DatabaseCallback<List<Cart>> callback) {
+        execute(() -> queryCarts(null, null, null), callback);
+    }
+
+    @Override
+    public void deleteCart(@NonNull String cartId, @Nullable DatabaseCallback<Void> callback) {
+        execute(() -> {
+            /// the items of the cart are deleted by ON DELETE CASCADE
+            helper.getWritableDatabase().delete(CARTS_TABLE, "id = ?", new String[]{cartId});
+            return null;
+        }, callback);
+    }
+
+    @Override
+    public void getCartSummaryList(@NonNull DatabaseCallback<List<CartSummary>> callback) {
+        execute(() -> queryCartSummaries(null, null, null), callback);
+    }
+
+    @Override
+    public void getCartSummaryPage(@Nullable String afterKey, int pageSize, @NonNull DatabaseCallback<Page<CartSummary>> callback) {
+        execute(() -> toPage(queryCartSummaries(pageSelection(afterKey), pageArgs(afterKey), String.valueOf(pageSize + 1)),
+                pageSize, CartSummary::getId), callback);
+    }
+
+    @Override
+    public void getUserCartSummaryList(@NonNull String uid, @NonNull DatabaseCallback<List<CartSummary>> callback) {
+        execute(() -> queryCartSummaries("uid = ?", new String[]{uid}, null), callback);
+    }
+
+    // endregion cart section
+}
@@ -0,0 +1,54 @@
+package com.example.testapp.services;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.Set;
+
+/// the records of a collection that changed after a checkpoint
+/// @param <T> the type of the records
+/// @see DatabaseService#syncSince(String, long, Class, DatabaseService.DatabaseCallback)
+/// @see SyncStore
+public class SyncResult<T> {
+
+    /// the records that were written after the checkpoint, by key
+    private final Map<String, T> changed;
+
+    /// the keys of the records that were deleted after the checkpoint
+    private final Set<String> removed;
+
+    /// the latest server time of the changes, to pass as lastSyncTime to the next sync
+    private final long checkpoint;
+
+    /// true if the whole collection was read, and every record that is not in changed doesn't exist
+    private final boolean full;
+
+    public SyncResult(@NonNull Map<String, T> changed, @NonNull Set<String> removed, long checkpoint, boolean full) {
+        this.changed = changed;
+        this.removed = removed;
+        this.checkpoint = checkpoint;
+        this.full = full;
+    }
+
+    @NonNull
+    public Map<String, T> getChanged() {
+        return changed;
+    }
+
+    @NonNull
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.testapp.services;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/// a local copy of a collection that is kept up to date with the changes since the last sync </br>
+/// the first sync reads the whole collection, and every sync after it merges only the records
+/// that changed or were deleted after the checkpoint of the previous one
+/// @param <T> the type of the records
+/// @see DatabaseService#syncSince(String, long, Class, DatabaseService.DatabaseCallback)
+public class SyncStore<T> {
+
+    /// the records, ordered by key like the pages of the collection
+    private final Map<String, T> records = new TreeMap<>();
+
+    /// the checkpoint of the last sync, -1 before the first sync
+    private long lastSyncTime = -1;
+
+    /// @return the time to sync since, -1 if the store was never synced and the whole collection has to be read
+    public synchronized long getLastSyncTime() {
+        return lastSyncTime;
+    }
+
+    public synchronized boolean isSynced() {
+        return lastSyncTime >= 0;
+    }
+
+    /// merge the result of a sync into the store
+    /// @param result the records that changed since getLastSyncTime()
+    public synchronized void apply(@NonNull SyncResult<T> result) {
+        if (result.isFull()) {
+            records.clear();
+        }
+        for (String key : result.getRemoved()) {
+            records.remove(key);
+        }
+        records.putAll(result.getChanged());
+        lastSyncTime = Math.max(lastSyncTime, result.getCheckpoint());
+    }
+
+    /// @return a copy of the records, ordered by key
+    @NonNull
+    public synchronized List<T> getRecords() {
+        return new ArrayList<>(records.values());
+    }
+
+    /// forget the records, the next sync reads the whole collection
+    public synchronized void clear() {
+        records.clear();
+        lastSyncTime = -1;
+    }
+}
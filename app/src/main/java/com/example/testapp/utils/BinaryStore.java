@@ -0,0 +1,239 @@
+package com.example.testapp.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/// Utility class for a small key value store in a binary file
+/// Every record has a key, the version of the format of its value and the value as bytes,
+/// so a record that was written by an older or newer version of the app can be read or ignored
+/// The file is read once, memory mapped, and kept in memory
+/// Every change writes the whole file to a temporary file in the background and renames it over the old one,
+/// so the file is always either the old one or the new one, never a part of them
+/// The file:
+/// magic, format version, number of records, the records (key, version, value), CRC32 of everything before it
+public class BinaryStore {
+
+    private static final String TAG = "BinaryStore";
+
+    /// The first bytes of the file, "TASB"
+    private static final int MAGIC = 0x54415342;
+
+    /// The version of the layout of the file, not of the records
+    private static final int FORMAT_VERSION = 1;
+
+    /// The size of the magic, the format version and the number of records
+    private static final int HEADER_BYTES = 12;
+
+    /// The size of the CRC32 at the end of the file
+    private static final int CHECKSUM_BYTES = 8;
+
+    /// One thread for the writes of all the stores, they are written in the order of the changes
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "BinaryStore");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    /// A record of the store
+    public static final class Record {
+        /// The version of the format of the value
+        public final int version;
+
+        @NonNull
+        public final byte[] value;
+
+        Record(int version, @NonNull byte[] value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    @NonNull
+    private final File file;
+
+    /// The records by key, null until the file is read
+    @Nullable
+    private Map<String, Record> records;
+
+    /// @param file The file of the store, it is created on the first change
+    public BinaryStore(@NonNull File file) {
+        this.file = file;
+    }
+
+    /// Get a record
+    /// @param key The key of the record
+    /// @return The record, or null if there is no record with this key
+    @Nullable
+    public synchronized Record get(@NonNull String key) {
+        return load().get(key);
+    }
+
+    /// Check if a record exists
+    /// @param key The key of the record
+    /// @return true if the record exists, false otherwise
+    public synchronized boolean contains(@NonNull String key) {
+        return load().containsKey(key);
+    }
+
+    /// Save a record, replacing the record with the same key
+    /// @param key The key of the record
+    /// @param version The version of the format of the value
+    /// @param value The value of the record
+    public synchronized void put(@NonNull String key, int version, @NonNull byte[] value) {
+        load().put(key, new Record(version, value.clone()));
+        write();
+    }
+
+    /// Remove a record
+    /// @param key The key of the record
+    public synchronized void remove(@NonNull String key) {
+        if (load().remove(key) != null) {
+            write();
+        }
+    }
+
+    /// Remove all the records
+    public synchronized void clear() {
+        load().clear();
+        write();
+    }
+
+    /// Wait until the changes that were made so far are written to the file
+    /// Don't call it on the main thread
+    public void flush() {
+        try {
+            writer.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            /// an empty task doesn't fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // region private helpers
+
+    /// Read the file, only the first time
+    @NonNull
+    private Map<String, Record> load() {
+        if (records == null) {
+            records = read(file);
+        }
+        return records;
+    }
+
+    /// Read the records of a file, a missing or broken file has no records
+    @NonNull
+    private static Map<String, Record> read(@NonNull File file) {
+        Map<String, Record> result = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + CHECKSUM_BYTES || size > Integer.MAX_VALUE) {
+                Log.w(TAG, "Ignoring " + file.getName() + " with size " + size);
+                return result;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int contentSize = (int) size - CHECKSUM_BYTES;
+            CRC32 crc = new CRC32();
+            ByteBuffer content = buffer.duplicate();
+            content.limit(contentSize);
+            crc.update(content);
+            if (crc.getValue() != buffer.getLong(contentSize)) {
+                Log.w(TAG, "Ignoring " + file.getName() + " with a wrong checksum");
+                return result;
+            }
+            buffer.limit(contentSize);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring " + file.getName() + " of an unknown format");
+                return result;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                int version = buffer.getInt();
+                byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+                result.put(new String(key, StandardCharsets.UTF_8), new Record(version, value));
+            }
+        } catch (NoSuchFileException e) {
+            return result;
+        } catch (IOException | BufferUnderflowException | NegativeArraySizeException e) {
+            Log.e(TAG, "Failed to read " + file.getName(), e);
+            result.clear();
+        }
+        return result;
+    }
+
+    /// Write the records in the background, from a copy of them taken now
+    private void write() {
+        final byte[] bytes;
+        try {
+            bytes = encode(load());
+        } catch (IOException e) {
+            /// a ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(e);
+        }
+        writer.execute(() -> {
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                try (FileOutputStream out = new FileOutputStream(temp)) {
+                    out.write(bytes);
+                    out.getFD().sync();
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write " + file.getName(), e);
+                temp.delete();
+            }
+        });
+    }
+
+    @NonNull
+    private static byte[] encode(@NonNull Map<String, Record> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(records.size());
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(entry.getValue().version);
+            out.writeInt(entry.getValue().value.length);
+            out.write(entry.getValue().value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // endregion private helpers
+}
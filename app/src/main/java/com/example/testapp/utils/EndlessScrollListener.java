@@ -0,0 +1,34 @@
+package com.example.testapp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/// Scroll listener that asks for more items when the recycler view nears the end of its list
+/// Used to load the next page of a paged list
+/// @see RecyclerView#addOnScrollListener(RecyclerView.OnScrollListener)
+public abstract class EndlessScrollListener extends RecyclerView.OnScrollListener {
+
+    /// how many items before the end of the list the next page is requested
+    private static final int VISIBLE_THRESHOLD = 5;
+
+    private final LinearLayoutManager layoutManager;
+
+    public EndlessScrollListener(@NonNull LinearLayoutManager layoutManager) {
+        this.layoutManager = layoutManager;
+    }
+
+    /// Called also with dy = 0 after a layout, so a first page that doesn't fill the screen loads the next one
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy < 0) return;
+        int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
+        if (lastVisibleItem + VISIBLE_THRESHOLD >= layoutManager.getItemCount()) {
+            onLoadMore();
+        }
+    }
+
+    /// Load the next page
+    /// Called repeatedly while scrolling near the end, so implementations must ignore calls while a page is loading
+    protected abstract void onLoadMore();
+}
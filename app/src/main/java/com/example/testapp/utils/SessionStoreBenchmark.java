@@ -0,0 +1,92 @@
+package com.example.testapp.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.testapp.models.User;
+import com.example.testapp.services.MetricsRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Utility class to compare the cold read of the session from shared preferences and from the session store
+/// Every read is cold: shared preferences are read from a copy of the file under a name that was never opened,
+/// because the process keeps every opened preferences file in memory, and the store is read by a new BinaryStore
+/// Every read is also recorded in the metrics, as coldRead sessionPrefs and coldRead sessionStore
+/// @see SharedPreferencesUtil
+/// @see BinaryStore
+public class SessionStoreBenchmark {
+
+    /// The name of the preferences file that every cold read copies
+    private static final String PREFS_NAME = "session_benchmark";
+
+    /// The file of the store that every cold read reads
+    private static final String STORE_FILE = "session_benchmark.bin";
+
+    /// The number of the next copy of the preferences file, the names are never used twice in the process
+    private static final AtomicInteger nextCopy = new AtomicInteger();
+
+    /// Run the benchmark, don't call it on the main thread
+    /// @param context The context to use
+    /// @param user The user to save and read, or null to use a sample user
+    /// @param iterations The number of cold reads of each store
+    /// @return The average time of a cold read of each store, as text
+    /// @throws IOException if the files of the benchmark can't be written
+    @NonNull
+    public static String run(@NonNull Context context, @Nullable User user, int iterations) throws IOException {
+        if (user == null) {
+            user = new User("benchmark", "benchmark@example.com", "password", "Bench", "Mark", "0500000000", false);
+        }
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+        SharedPreferences source = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        source.edit().putString(SharedPreferencesUtil.USER_KEY, SharedPreferencesUtil.gson.toJson(user)).commit();
+        File prefsDir = new File(context.getDataDir(), "shared_prefs");
+        File sourceFile = new File(prefsDir, PREFS_NAME + ".xml");
+        if (!sourceFile.exists()) {
+            throw new IOException("The preferences file is not in " + prefsDir);
+        }
+
+        File storeFile = new File(context.getCacheDir(), STORE_FILE);
+        BinaryStore writer = new BinaryStore(storeFile);
+        writer.put(SharedPreferencesUtil.USER_KEY, SharedPreferencesUtil.USER_RECORD_VERSION, SharedPreferencesUtil.encodeUser(user));
+        writer.flush();
+
+        long prefsNanos = 0, storeNanos = 0;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                String name = PREFS_NAME + "_" + nextCopy.getAndIncrement();
+                Files.copy(sourceFile.toPath(), new File(prefsDir, name + ".xml").toPath(), StandardCopyOption.REPLACE_EXISTING);
+                MetricsRegistry.Sample sample = metrics.start("coldRead", "sessionPrefs");
+                long startedAt = SystemClock.elapsedRealtimeNanos();
+                String json = context.getSharedPreferences(name, Context.MODE_PRIVATE).getString(SharedPreferencesUtil.USER_KEY, null);
+                SharedPreferencesUtil.gson.fromJson(json, User.class);
+                prefsNanos += SystemClock.elapsedRealtimeNanos() - startedAt;
+                sample.finish(1, json != null ? json.length() : 0);
+                context.deleteSharedPreferences(name);
+
+                sample = metrics.start("coldRead", "sessionStore");
+                startedAt = SystemClock.elapsedRealtimeNanos();
+                BinaryStore.Record record = new BinaryStore(storeFile).get(SharedPreferencesUtil.USER_KEY);
+                if (record != null) {
+                    SharedPreferencesUtil.decodeUser(record);
+                }
+                storeNanos += SystemClock.elapsedRealtimeNanos() - startedAt;
+                sample.finish(1, record != null ? record.value.length : 0);
+            }
+        } finally {
+            context.deleteSharedPreferences(PREFS_NAME);
+            storeFile.delete();
+        }
+        return String.format(Locale.ROOT, "Cold read of the session: shared preferences %.3f ms, session store %.3f ms (average of %d)",
+                prefsNanos / 1e6 / iterations, storeNanos / 1e6 / iterations, iterations);
+    }
+}
@@ -2,22 +2,77 @@ package com.example.testapp.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.example.testapp.models.User;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 
 /// Utility class for shared preferences operations
 /// Contains methods for saving and retrieving data from shared preferences
 /// Also contains methods for clearing and removing data from shared preferences
+/// The session (the signed in user) is saved in a binary store instead of shared preferences,
+/// and is kept in memory after it is read once, so reading it again doesn't read a file
 /// @see SharedPreferences
+/// @see BinaryStore
 public class SharedPreferencesUtil {
 
+    private static final String TAG = "SharedPreferencesUtil";
+
     /// The name of the shared preferences file
     /// @see Context#getSharedPreferences(String, int)
     private static final String PREF_NAME = "com.example.testapp.PREFERENCE_FILE_KEY";
 
+    /// The name of the file of the session store
+    /// @see Context#getFilesDir()
+    private static final String SESSION_FILE = "session.bin";
+
+    /// The key of the signed in user
+    static final String USER_KEY = "user";
+
+    /// The version of the format of the user record
+    /// @see #encodeUser(User)
+    static final int USER_RECORD_VERSION = 1;
+
+    /// The key of the record that marks that the user of shared preferences was moved to the session store
+    private static final String LEGACY_MOVED_KEY = "legacyMoved";
+
+    /// The Gson instance of all the objects saved in shared preferences, Gson is thread safe
+    static final Gson gson = new GsonBuilder()
+            .disableHtmlEscaping()
+            .create();
+
+    /// The session in memory
+    /// @see Session
+    private static final class Session {
+        /// The signed in user, null if no user is signed in
+        @Nullable
+        final User user;
+
+        Session(@Nullable User user) {
+            this.user = user;
+        }
+    }
+
+    /// The session that was read from shared preferences, null if it was not read yet
+    /// @see #getSession(Context)
+    /// @see #invalidateSession()
+    private static volatile Session session;
+
+    /// The store of the session, null until it is used
+    /// @see #getSessionStore(Context)
+    private static BinaryStore sessionStore;
+
     /// Save a string to shared preferences
     /// @param context The context to use
     /// @param key The key to save the string with
@@ -66,7 +121,7 @@ public class SharedPreferencesUtil {
 
     // Add more methods for other data types as needed
 
-    /// Clear all data from shared preferences
+    /// Clear all data from shared preferences and the session store
     /// @param context The context to use
     /// @see SharedPreferences.Editor#clear()
     public static void clear(Context context) {
@@ -74,6 +129,10 @@ public class SharedPreferencesUtil {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.clear();
         editor.apply();
+        BinaryStore store = getSessionStore(context);
+        store.clear();
+        store.put(LEGACY_MOVED_KEY, 1, new byte[0]);
+        session = new Session(null);
     }
 
     /// Remove a specific key from shared preferences
@@ -98,7 +157,6 @@ public class SharedPreferencesUtil {
     }
 
     private static <T> void saveObject(Context context, String key, T object) {
-        Gson gson = new Gson();
         String json = gson.toJson(object);
         saveString(context, key, json);
     }
@@ -108,44 +166,160 @@ public class SharedPreferencesUtil {
         if (json == null) {
             return null;
         }
-        Gson gson = new Gson();
         return gson.fromJson(json, type);
     }
 
+    /// Get the store of the session
+    /// @param context The context to use
+    /// @return The store of the session
+    private static synchronized BinaryStore getSessionStore(Context context) {
+        if (sessionStore == null) {
+            sessionStore = new BinaryStore(new File(context.getApplicationContext().getFilesDir(), SESSION_FILE));
+        }
+        return sessionStore;
+    }
+
+    /// Get the session, read from the session store only the first time
+    /// @param context The context to use
+    /// @return The session in memory
+    private static Session getSession(Context context) {
+        Session current = session;
+        if (current != null) {
+            return current;
+        }
+        synchronized (SharedPreferencesUtil.class) {
+            if (session == null) {
+                session = new Session(readUser(context));
+            }
+            return session;
+        }
+    }
+
+    /// Read the user from the session store
+    /// A user that was saved in shared preferences by an older version of the app is moved to the session store
+    /// @param context The context to use
+    /// @return The user, or null if no user is logged in
+    @Nullable
+    private static User readUser(Context context) {
+        BinaryStore store = getSessionStore(context);
+        if (!store.contains(LEGACY_MOVED_KEY)) {
+            User legacy = getObject(context, USER_KEY, User.class);
+            if (legacy != null) {
+                store.put(USER_KEY, USER_RECORD_VERSION, encodeUser(legacy));
+                remove(context, USER_KEY);
+            }
+            store.put(LEGACY_MOVED_KEY, 1, new byte[0]);
+        }
+        BinaryStore.Record record = store.get(USER_KEY);
+        return record != null ? decodeUser(record) : null;
+    }
+
+    /// Encode a user as the value of the user record
+    /// @param user The user to encode
+    /// @return The value of the record, in the format of USER_RECORD_VERSION
+    /// @see #decodeUser(BinaryStore.Record)
+    @NonNull
+    static byte[] encodeUser(@NonNull User user) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, user.getId());
+            writeString(out, user.getEmail());
+            writeString(out, user.getPassword());
+            writeString(out, user.getFirstName());
+            writeString(out, user.getLastName());
+            writeString(out, user.getPhone());
+            out.writeBoolean(user.isAdmin());
+            out.writeLong(user.getVersion());
+            out.writeLong(user.getUpdatedAtMillis());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            /// a ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /// Decode the user record
+    /// A record of a newer version, written by a newer version of the app, is ignored
+    /// @param record The user record
+    /// @return The user, or null if the record can't be read
+    /// @see #encodeUser(User)
+    @Nullable
+    static User decodeUser(@NonNull BinaryStore.Record record) {
+        if (record.version > USER_RECORD_VERSION) {
+            Log.w(TAG, "Ignoring a user record of version " + record.version);
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.value));
+            User user = new User(readString(in), readString(in), readString(in), readString(in), readString(in), readString(in), in.readBoolean());
+            user.setVersion(in.readLong());
+            user.setUpdatedAt(in.readLong());
+            return user;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read the user record", e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /// Forget the session in memory, the next read of the session reads it from the session store again
+    /// saveUser, signOutUser and clear update the session, call this only if the store was changed in another way
+    public static void invalidateSession() {
+        session = null;
+    }
+
     // Add more utility methods as needed
 
-    /// Save a user object to shared preferences
+    /// Save a user object to the session store
     /// @param context The context to use
     /// @param user The user object to save
     /// @see User
     public static void saveUser(Context context, User user) {
-        saveObject(context, "user", user);
+        if (user != null) {
+            getSessionStore(context).put(USER_KEY, USER_RECORD_VERSION, encodeUser(user));
+        } else {
+            getSessionStore(context).remove(USER_KEY);
+        }
+        /// a copy, so changes to the user that are not saved don't change the session
+        session = new Session(user != null ? new User(user) : null);
     }
 
-    /// Get the user object from shared preferences
+    /// Get the user object from the session store
+    /// A copy of the session user is returned, save the changes with saveUser
     /// @param context The context to use
-    /// @return The user object stored in shared preferences
+    /// @return The user object stored in the session store, or null if no user is logged in
     /// @see User
-    /// @see #isUserLoggedIn(Context)
+    /// @see #saveUser(Context, User)
     public static User getUser(Context context) {
-        if (!isUserLoggedIn(context)) {
-            return null;
-        }
-        return getObject(context, "user", User.class);
+        User user = getSession(context).user;
+        return user != null ? new User(user) : null;
     }
 
-    /// Sign out the user by removing user data from shared preferences
+    /// Sign out the user by removing user data from the session store
     /// @param context The context to use
     public static void signOutUser(Context context) {
-        remove(context, "user");
+        getSessionStore(context).remove(USER_KEY);
+        session = new Session(null);
     }
 
-    /// Check if a user is logged in by checking if the user id is present in shared preferences
+    /// Check if a user is logged in
     /// @param context The context to use
     /// @return true if the user is logged in, false otherwise
-    /// @see #contains(Context, String)
     public static boolean isUserLoggedIn(Context context) {
-        return contains(context, "user");
+        return getSession(context).user != null;
     }
 
     /// Get the user id of the logged in user
@@ -153,7 +327,7 @@ public class SharedPreferencesUtil {
     /// @return The user id of the logged in user, or null if no user is logged in
     @Nullable
     public static String getUserId(Context context) {
-        User user = getUser(context);
+        User user = getSession(context).user;
         if (user != null) {
             return user.getId();
         }
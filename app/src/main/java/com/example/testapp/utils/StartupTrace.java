@@ -0,0 +1,93 @@
+package com.example.testapp.utils;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/// Utility class to trace the start of the app
+/// Keeps the start and end of every phase of the start, in milliseconds since the process started,
+/// and marks every phase as an async section of the system trace, so it shows in Perfetto
+/// @see Trace#beginAsyncSection(String, int)
+public class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+
+    /// A phase of the start
+    private static class Phase {
+        final int cookie;
+        final long startedAt;
+        long endedAt = -1;
+
+        Phase(int cookie, long startedAt) {
+            this.cookie = cookie;
+            this.startedAt = startedAt;
+        }
+    }
+
+    /// The phases, in the order they started
+    private static final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    /// Get the time since the process started
+    /// @return the time in milliseconds
+    /// @see Process#getStartElapsedRealtime()
+    public static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+
+    /// Start a phase, a phase that already started is not started again
+    /// @param phase the name of the phase
+    public static synchronized void begin(@NonNull String phase) {
+        if (phases.containsKey(phase)) return;
+        int cookie = phases.size();
+        phases.put(phase, new Phase(cookie, sinceProcessStart()));
+        Trace.beginAsyncSection(phase, cookie);
+    }
+
+    /// End a phase that was started
+    /// @param phase the name of the phase
+    public static synchronized void end(@NonNull String phase) {
+        Phase p = phases.get(phase);
+        if (p == null || p.endedAt >= 0) return;
+        p.endedAt = sinceProcessStart();
+        Trace.endAsyncSection(phase, p.cookie);
+        Log.d(TAG, String.format(Locale.ROOT, "%s took %d ms, ended %d ms after the process started", phase, p.endedAt - p.startedAt, p.endedAt));
+    }
+
+    /// Run some work as a phase
+    /// @param phase the name of the phase
+    /// @param work the work to run
+    /// @return the result of the work
+    public static <T> T trace(@NonNull String phase, @NonNull Supplier<T> work) {
+        begin(phase);
+        try {
+            return work.get();
+        } finally {
+            end(phase);
+        }
+    }
+
+    /// Get the phases as text, to log or show
+    /// @return a line for every phase with its start, end and duration
+    @NonNull
+    public static synchronized String report() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase p = entry.getValue();
+            if (builder.length() > 0) builder.append('\n');
+            if (p.endedAt < 0) {
+                builder.append(String.format(Locale.ROOT, "%s: started at %d ms, not ended", entry.getKey(), p.startedAt));
+            } else {
+                builder.append(String.format(Locale.ROOT, "%s: %d ms (%d - %d ms)", entry.getKey(), p.endedAt - p.startedAt, p.startedAt, p.endedAt));
+            }
+        }
+        return builder.toString();
+    }
+}
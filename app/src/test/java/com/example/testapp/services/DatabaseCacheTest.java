@@ -0,0 +1,147 @@
+package com.example.testapp.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import com.example.testapp.models.Food;
+import com.example.testapp.models.User;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class DatabaseCacheTest {
+
+    private long now = 1000;
+
+    private final DatabaseCache cache = new DatabaseCache(() -> now);
+
+    @Test
+    public void returnsACopyOfTheCachedValue() {
+        Food food = new Food("f1", "Pizza", 12, null);
+        cache.put("foods/f1", food, Food.class);
+        food.setName("changed after put");
+
+        Food cached = cache.get("foods/f1", Food.class);
+        assertNotNull(cached);
+        assertEquals("Pizza", cached.getName());
+        cached.setName("changed after get");
+        assertEquals("Pizza", cache.get("foods/f1", Food.class).getName());
+    }
+
+    @Test
+    public void theItemsOfAListAreCopied() {
+        List<Food> foods = new ArrayList<>(Arrays.asList(new Food("f1", "Pizza", 12, null)));
+        cache.put("foods", foods, Food.class);
+        foods.get(0).setName("changed after put");
+
+        List<?> cached = cache.get("foods", List.class);
+        assertNotNull(cached);
+        assertNotSame(foods, cached);
+        assertEquals("Pizza", ((Food) cached.get(0)).getName());
+    }
+
+    @Test
+    public void anEntryExpiresAfterTheTimeToLiveOfItsType() {
+        cache.put("users/u1", user("u1"), User.class);
+        cache.put("foods/f1", new Food("f1", "Pizza", 12, null), Food.class);
+
+        now += TimeUnit.MINUTES.toMillis(5) - 1;
+        assertNotNull(cache.get("users/u1", User.class));
+        now += 1;
+        assertNull(cache.get("users/u1", User.class));
+        assertNotNull(cache.get("foods/f1", Food.class));
+        now += TimeUnit.MINUTES.toMillis(5);
+        assertNull(cache.get("foods/f1", Food.class));
+    }
+
+    @Test
+    public void typesWithoutATimeToLiveExpireAfterAMinute() {
+        cache.put("counters/users", 7L, Long.class);
+
+        now += TimeUnit.MINUTES.toMillis(1) - 1;
+        assertEquals(Long.valueOf(7), cache.get("counters/users", Long.class));
+        now += 1;
+        assertNull(cache.get("counters/users", Long.class));
+    }
+
+    @Test
+    public void anExpiredEntryIsStillStale() {
+        cache.put("users/u1", user("u1"), User.class);
+        now += TimeUnit.HOURS.toMillis(1);
+
+        assertNull(cache.get("users/u1", User.class));
+        User stale = cache.getStale("users/u1", User.class);
+        assertNotNull(stale);
+        assertEquals("u1", stale.getId());
+    }
+
+    @Test
+    public void anEntryOfAnotherClassIsAMiss() {
+        cache.put("users/u1", user("u1"), User.class);
+
+        assertNull(cache.get("users/u1", Food.class));
+        assertNull(cache.getStale("users/u1", Food.class));
+    }
+
+    @Test
+    public void putOfNullRemovesTheEntry() {
+        cache.put("users/u1", user("u1"), User.class);
+        cache.put("users/u1", null, User.class);
+
+        assertNull(cache.getStale("users/u1", User.class));
+    }
+
+    @Test
+    public void invalidateRemovesThePathAndThePathsAboveAndBelowIt() {
+        cache.put("carts", new ArrayList<>(), Food.class);
+        cache.put("carts/c1", "c1", String.class);
+        cache.put("carts/c1/title", "title", String.class);
+        cache.put("carts/c2", "c2", String.class);
+        cache.put("carts/c10", "c10", String.class);
+
+        cache.invalidate("carts/c1");
+
+        assertNull(cache.getStale("carts", List.class));
+        assertNull(cache.getStale("carts/c1", String.class));
+        assertNull(cache.getStale("carts/c1/title", String.class));
+        assertEquals("c2", cache.get("carts/c2", String.class));
+        assertEquals("c10", cache.get("carts/c10", String.class));
+    }
+
+    @Test
+    public void theLeastRecentlyUsedEntryIsEvicted() {
+        for (int i = 0; i < 500; i++) {
+            cache.put("foods/f" + i, "food " + i, String.class);
+        }
+        /// f0 is used, so f1 is the least recently used
+        cache.get("foods/f0", String.class);
+        cache.put("foods/f500", "food 500", String.class);
+
+        assertEquals("food 0", cache.get("foods/f0", String.class));
+        assertNull(cache.getStale("foods/f1", String.class));
+        assertEquals("food 500", cache.get("foods/f500", String.class));
+    }
+
+    @Test
+    public void countsTheHitsAndTheMisses() {
+        cache.put("users/u1", user("u1"), User.class);
+        cache.get("users/u1", User.class);
+        cache.get("users/u2", User.class);
+        now += TimeUnit.HOURS.toMillis(1);
+        cache.get("users/u1", User.class);
+        cache.clear();
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    private static User user(String id) {
+        return new User(id, id + "@example.com", "password", "First", "Last", "0500000000", false);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.testapp.services;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DatabasePathsTest {
+
+    @Test
+    public void aPathOverlapsItself() {
+        assertTrue(DatabasePaths.overlaps("carts/c1", "carts/c1"));
+    }
+
+    @Test
+    public void aPathOverlapsThePathsAboveAndBelowIt() {
+        assertTrue(DatabasePaths.overlaps("carts/c1", "carts"));
+        assertTrue(DatabasePaths.overlaps("carts", "carts/c1/items/0"));
+        assertTrue(DatabasePaths.overlaps("carts/c1/title", "carts/c1"));
+    }
+
+    @Test
+    public void siblingsDoNotOverlap() {
+        assertFalse(DatabasePaths.overlaps("carts/c1", "carts/c2"));
+        assertFalse(DatabasePaths.overlaps("carts/c1/title", "carts/c1/items"));
+        assertFalse(DatabasePaths.overlaps("userCarts/u1/c1", "carts/c1"));
+    }
+
+    @Test
+    public void aPathWithTheSamePrefixDoesNotOverlap() {
+        assertFalse(DatabasePaths.overlaps("carts/c1", "carts/c10"));
+        assertFalse(DatabasePaths.overlaps("carts", "cartSummaries"));
+        assertFalse(DatabasePaths.overlaps("counters/users", "counters/usersByEmail/x"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.testapp.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.testapp.models.Food;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FoodCatalogIOTest {
+
+    @Test
+    public void readsTheFieldsOfALine() throws IOException {
+        Reader reader = new StringReader("id,name,price\r\nf1,Pizza,12.5\n");
+
+        assertEquals(Arrays.asList("id", "name", "price"), FoodCatalogIO.readCsvRecord(reader));
+        assertEquals(Arrays.asList("f1", "Pizza", "12.5"), FoodCatalogIO.readCsvRecord(reader));
+        assertNull(FoodCatalogIO.readCsvRecord(reader));
+    }
+
+    @Test
+    public void theLastLineMayHaveNoLineBreak() throws IOException {
+        Reader reader = new StringReader("f1,Pizza,12.5");
+
+        assertEquals(Arrays.asList("f1", "Pizza", "12.5"), FoodCatalogIO.readCsvRecord(reader));
+        assertNull(FoodCatalogIO.readCsvRecord(reader));
+    }
+
+    @Test
+    public void readsEmptyFields() throws IOException {
+        Reader reader = new StringReader(",Pizza,,\n\n");
+
+        assertEquals(Arrays.asList("", "Pizza", "", ""), FoodCatalogIO.readCsvRecord(reader));
+        assertEquals(Collections.singletonList(""), FoodCatalogIO.readCsvRecord(reader));
+        assertNull(FoodCatalogIO.readCsvRecord(reader));
+    }
+
+    @Test
+    public void quotedFieldsMayHaveCommasQuotesAndLineBreaks() throws IOException {
+        Reader reader = new StringReader("f1,\"Pizza, \"\"large\"\"\r\nwith olives\",12\nf2,Soup,3\n");
+
+        assertEquals(Arrays.asList("f1", "Pizza, \"large\"\r\nwith olives", "12"), FoodCatalogIO.readCsvRecord(reader));
+        assertEquals(Arrays.asList("f2", "Soup", "3"), FoodCatalogIO.readCsvRecord(reader));
+    }
+
+    @Test
+    public void readsTheLinesThatWereWritten() throws IOException {
+        StringWriter out = new StringWriter();
+        FoodCatalogIO.CsvFoodWriter writer = new FoodCatalogIO.CsvFoodWriter(out);
+        writer.begin();
+        writer.write(new Food("f1", "Pizza, \"large\"\nwith olives", 12.5, null), "aW1hZ2U=");
+        writer.write(new Food("f2", "Soup", 3, null), null);
+        writer.end();
+
+        Reader reader = new StringReader(out.toString());
+        assertEquals(Arrays.asList("id", "name", "price", "imageBase64"), FoodCatalogIO.readCsvRecord(reader));
+        assertEquals(Arrays.asList("f1", "Pizza, \"large\"\nwith olives", "12.5", "aW1hZ2U="), FoodCatalogIO.readCsvRecord(reader));
+        assertEquals(Arrays.asList("f2", "Soup", "3.0", ""), FoodCatalogIO.readCsvRecord(reader));
+        assertNull(FoodCatalogIO.readCsvRecord(reader));
+    }
+
+    @Test
+    public void validFoodsAreReturned() throws IOException {
+        Food food = new Food("food-1_א", "Pizza", 0, null);
+
+        assertSame(food, FoodCatalogIO.validate(food, 1));
+        Food withoutId = new Food(null, "Soup", 3, null);
+        assertSame(withoutId, FoodCatalogIO.validate(withoutId, 2));
+    }
+
+    @Test
+    public void rejectsIdsThatAreNotDatabaseKeys() {
+        List<String> ids = Arrays.asList("a/b", "a.b", "a#b", "a$b", "a[b", "a]b", "a\nb", "a\u007fb", repeat('x', 769));
+        for (String id : ids) {
+            assertInvalid(new Food(id, "Pizza", 1, null), "invalid id");
+        }
+    }
+
+    @Test
+    public void anIdMayHaveUpTo768Bytes() throws IOException {
+        FoodCatalogIO.validate(new Food(repeat('x', 768), "Pizza", 1, null), 1);
+        /// every א is 2 bytes
+        assertInvalid(new Food(repeat('א', 385), "Pizza", 1, null), "invalid id");
+    }
+
+    @Test
+    public void rejectsFoodsWithoutAName() {
+        assertInvalid(new Food("f1", null, 1, null), "no name");
+        assertInvalid(new Food("f1", "  ", 1, null), "no name");
+    }
+
+    @Test
+    public void rejectsInvalidPrices() {
+        assertInvalid(new Food("f1", "Pizza", -1, null), "invalid price");
+        assertInvalid(new Food("f1", "Pizza", Double.NaN, null), "invalid price");
+        assertInvalid(new Food("f1", "Pizza", Double.POSITIVE_INFINITY, null), "invalid price");
+    }
+
+    private static void assertInvalid(Food food, String reason) {
+        try {
+            FoodCatalogIO.validate(food, 7);
+            fail("Food " + food.getId() + " is valid");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Food 7 "));
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.testapp.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void anEmptyHistogramIsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void smallValuesHaveTheirOwnBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+
+        for (long value = 0; value < 32; value++) {
+            assertEquals(value, histogram.getValueAtPercentile((value + 1) * 100.0 / 32));
+        }
+    }
+
+    @Test
+    public void largeValuesAreCountedWithinTheWidthOfTheirBucket() {
+        for (long value = 32; value < 10_000_000; value = value * 17 / 16 + 1) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            /// a larger value, so the percentile is not limited by the largest value
+            histogram.record(value * 2);
+
+            long counted = histogram.getValueAtPercentile(50);
+            assertTrue(value + " was counted as " + counted, counted >= value);
+            assertTrue(value + " was counted as " + counted, counted <= value + value / 32);
+        }
+    }
+
+    @Test
+    public void thePercentileIsNotLargerThanTheLargestValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_001);
+
+        assertEquals(1_000_001, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesOfManyValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        /// 127 is the largest value of its bucket, so it is counted as itself
+        for (int i = 0; i < 99; i++) {
+            histogram.record(127);
+        }
+        histogram.record(50_000);
+
+        assertEquals(127, histogram.getValueAtPercentile(50));
+        assertEquals(127, histogram.getValueAtPercentile(99));
+        assertEquals(50_000, histogram.getValueAtPercentile(99.9));
+        assertEquals(127, histogram.getMin());
+        assertEquals(50_000, histogram.getMax());
+        assertEquals((99 * 127 + 50_000) / 100.0, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void valuesOutOfRangeAreLimited() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals((1L << 40) - 1, histogram.getMax());
+        assertEquals((1L << 40) - 1, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void resetForgetsTheValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1234);
+        histogram.reset();
+
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.testapp.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MappingTest {
+
+    @Test
+    public void keepsTheResultOfTheMapper() {
+        Mapping<Integer> mapping = Mapping.apply("12", Integer::parseInt);
+
+        assertTrue(mapping.isSuccessful());
+        assertEquals(Integer.valueOf(12), mapping.getResult());
+        assertNull(mapping.getFailure());
+    }
+
+    @Test
+    public void aNullResultIsASuccess() {
+        Mapping<String> mapping = Mapping.apply("ignored", source -> null);
+
+        assertTrue(mapping.isSuccessful());
+        assertNull(mapping.getResult());
+    }
+
+    @Test
+    public void keepsAnyRuntimeExceptionAsTheFailure() {
+        IllegalStateException thrown = new IllegalStateException("bad record");
+        Mapping<String> mapping = Mapping.apply("ignored", source -> {
+            throw thrown;
+        });
+
+        assertFalse(mapping.isSuccessful());
+        assertSame(thrown, mapping.getFailure());
+        assertNull(mapping.getResult());
+    }
+
+    @Test
+    public void keepsTheExceptionsOfTheModels() {
+        Mapping<Integer> nullPointer = Mapping.apply("ignored", source -> ((String) null).length());
+        Mapping<Integer> badNumber = Mapping.apply("not a number", Integer::parseInt);
+
+        assertTrue(nullPointer.getFailure() instanceof NullPointerException);
+        assertTrue(badNumber.getFailure() instanceof NumberFormatException);
+    }
+}
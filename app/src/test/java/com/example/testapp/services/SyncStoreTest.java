@@ -0,0 +1,93 @@
+package com.example.testapp.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class SyncStoreTest {
+
+    @Test
+    public void aNewStoreIsNotSynced() {
+        SyncStore<String> store = new SyncStore<>();
+
+        assertFalse(store.isSynced());
+        assertEquals(-1, store.getLastSyncTime());
+        assertTrue(store.getRecords().isEmpty());
+    }
+
+    @Test
+    public void aFullSyncReplacesTheRecords() {
+        SyncStore<String> store = new SyncStore<>();
+        store.apply(result(records("b", "B", "old", "Old"), keys(), 100, true));
+        store.apply(result(records("c", "C", "a", "A"), keys(), 200, true));
+
+        assertTrue(store.isSynced());
+        assertEquals(200, store.getLastSyncTime());
+        /// ordered by key, like the pages
+        assertEquals(Arrays.asList("A", "C"), store.getRecords());
+    }
+
+    @Test
+    public void aSyncSinceMergesTheChangesAndTheRemovedKeys() {
+        SyncStore<String> store = new SyncStore<>();
+        store.apply(result(records("a", "A", "b", "B", "c", "C"), keys(), 100, true));
+        store.apply(result(records("b", "B2", "d", "D"), keys("c", "unknown"), 150, false));
+
+        assertEquals(Arrays.asList("A", "B2", "D"), store.getRecords());
+        assertEquals(150, store.getLastSyncTime());
+    }
+
+    @Test
+    public void aRecordThatWasRemovedAndWrittenAgainIsKept() {
+        SyncStore<String> store = new SyncStore<>();
+        store.apply(result(records("a", "A"), keys(), 100, true));
+        store.apply(result(records("a", "A2"), keys("a"), 150, false));
+
+        assertEquals(Collections.singletonList("A2"), store.getRecords());
+    }
+
+    @Test
+    public void theCheckpointDoesNotGoBack() {
+        SyncStore<String> store = new SyncStore<>();
+        store.apply(result(records("a", "A"), keys(), 200, true));
+        store.apply(result(records(), keys(), 150, false));
+
+        assertEquals(200, store.getLastSyncTime());
+    }
+
+    @Test
+    public void clearForgetsTheRecordsAndTheCheckpoint() {
+        SyncStore<String> store = new SyncStore<>();
+        store.apply(result(records("a", "A"), keys(), 200, true));
+        store.clear();
+
+        assertFalse(store.isSynced());
+        assertTrue(store.getRecords().isEmpty());
+    }
+
+    private static SyncResult<String> result(Map<String, String> changed, Set<String> removed, long checkpoint, boolean full) {
+        return new SyncResult<>(changed, removed, checkpoint, full);
+    }
+
+    /// @param keysAndValues a key, its value, the next key and so on
+    private static Map<String, String> records(String... keysAndValues) {
+        Map<String, String> records = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            records.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return records;
+    }
+
+    private static Set<String> keys(String... keys) {
+        return new HashSet<>(Arrays.asList(keys));
+    }
+}
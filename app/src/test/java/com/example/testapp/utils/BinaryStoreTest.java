@@ -0,0 +1,147 @@
+package com.example.testapp.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class BinaryStoreTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        dir = Files.createTempDirectory("BinaryStoreTest").toFile();
+        file = new File(dir, "store.bin");
+    }
+
+    @After
+    public void deleteFile() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void aMissingFileHasNoRecords() {
+        BinaryStore store = new BinaryStore(file);
+
+        assertNull(store.get("session"));
+        assertFalse(store.contains("session"));
+    }
+
+    @Test
+    public void readsTheRecordsThatWereWritten() {
+        BinaryStore writer = new BinaryStore(file);
+        writer.put("session", 2, bytes("user 1"));
+        writer.put("מפתח", 1, new byte[0]);
+        writer.flush();
+
+        BinaryStore reader = new BinaryStore(file);
+        BinaryStore.Record session = reader.get("session");
+        assertNotNull(session);
+        assertEquals(2, session.version);
+        assertArrayEquals(bytes("user 1"), session.value);
+        BinaryStore.Record empty = reader.get("מפתח");
+        assertNotNull(empty);
+        assertEquals(0, empty.value.length);
+    }
+
+    @Test
+    public void putReplacesTheRecordWithTheSameKey() {
+        BinaryStore writer = new BinaryStore(file);
+        writer.put("session", 1, bytes("old"));
+        writer.put("session", 2, bytes("new"));
+        writer.flush();
+
+        BinaryStore.Record record = new BinaryStore(file).get("session");
+        assertNotNull(record);
+        assertEquals(2, record.version);
+        assertArrayEquals(bytes("new"), record.value);
+    }
+
+    @Test
+    public void aChangeOfThePutArrayIsNotSaved() {
+        BinaryStore store = new BinaryStore(file);
+        byte[] value = bytes("abc");
+        store.put("session", 1, value);
+        value[0] = 'x';
+
+        assertArrayEquals(bytes("abc"), store.get("session").value);
+    }
+
+    @Test
+    public void removeAndClearAreWritten() {
+        BinaryStore writer = new BinaryStore(file);
+        writer.put("a", 1, bytes("1"));
+        writer.put("b", 1, bytes("2"));
+        writer.remove("a");
+        writer.flush();
+
+        BinaryStore reader = new BinaryStore(file);
+        assertFalse(reader.contains("a"));
+        assertTrue(reader.contains("b"));
+
+        writer.clear();
+        writer.flush();
+        assertFalse(new BinaryStore(file).contains("b"));
+    }
+
+    @Test
+    public void aChangedByteIsFoundByTheChecksum() throws IOException {
+        BinaryStore writer = new BinaryStore(file);
+        writer.put("session", 1, bytes("user 1"));
+        writer.flush();
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            long position = out.length() - 9;
+            out.seek(position);
+            int last = out.read();
+            out.seek(position);
+            out.write(last ^ 1);
+        }
+
+        assertNull(new BinaryStore(file).get("session"));
+    }
+
+    @Test
+    public void aCutFileHasNoRecords() throws IOException {
+        BinaryStore writer = new BinaryStore(file);
+        writer.put("session", 1, bytes("user 1"));
+        writer.flush();
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 3);
+        }
+
+        assertNull(new BinaryStore(file).get("session"));
+    }
+
+    @Test
+    public void aFileOfAnotherFormatHasNoRecords() throws IOException {
+        Files.write(file.toPath(), bytes("not a store, just some text"));
+
+        assertNull(new BinaryStore(file).get("session"));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}